@@ -0,0 +1,92 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pl.craftserve.pvp.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.craftserve.pvp.ArmorFormula;
+import pl.craftserve.pvp.ArmorTable;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ArmorTable} lookups compared to evaluating its formula directly,
+ * for hits spread over realistic armor, toughness and damage.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ArmorBenchmark {
+    private static final int HITS = 1024;
+    private static final double PER_POINT = 0.04D;
+    private static final double MAXIMUM_REDUCTION = 0.8D;
+
+    @Param({"LEGACY", "MODERN"})
+    private ArmorFormula formula;
+
+    private ArmorTable table;
+
+    private final double[] armor = new double[HITS];
+    private final double[] toughness = new double[HITS];
+    private final double[] damage = new double[HITS];
+    private int hit;
+
+    @Setup
+    public void setUp() {
+        this.table = ArmorTable.compile(this.formula, PER_POINT, MAXIMUM_REDUCTION, 30, 20, 64D);
+
+        Random random = new Random(0L);
+        for (int i = 0; i < HITS; i++) {
+            this.armor[i] = random.nextInt(21);
+            this.toughness[i] = random.nextInt(13);
+            this.damage[i] = 1D + random.nextDouble() * 20D;
+        }
+    }
+
+    @Benchmark
+    public double table() {
+        int hit = this.next();
+        return this.table.getFactor(this.armor[hit], this.toughness[hit], this.damage[hit]);
+    }
+
+    @Benchmark
+    public double formula() {
+        int hit = this.next();
+        return this.formula.getFactor(this.armor[hit], this.toughness[hit], this.damage[hit],
+                PER_POINT, MAXIMUM_REDUCTION);
+    }
+
+    private int next() {
+        int hit = this.hit;
+        this.hit = (hit + 1) & (HITS - 1);
+        return hit;
+    }
+}
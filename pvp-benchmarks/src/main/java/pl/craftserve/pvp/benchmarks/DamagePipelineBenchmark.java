@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pl.craftserve.pvp.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.craftserve.pvp.DamageInjector;
+import pl.craftserve.pvp.DamagePipeline;
+import pl.craftserve.pvp.DamageProfile;
+import pl.craftserve.pvp.DamageTransformer;
+import pl.craftserve.pvp.EntityAccessor;
+import pl.craftserve.pvp.Injector;
+import pl.craftserve.pvp.ProfileStage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link DamagePipeline} per hit, run with {@code -prof gc} to see
+ * allocations. A hit changing the damage also includes Bukkit boxing the
+ * new damage into the event's modifier map, twice since it is reset too.
+ *
+ * Equipment is read from the stubs through {@link EntityAccessor#API}, so
+ * the item stack mirrors CraftBukkit would create for it are not measured.
+ * On a server the NMS adapters read equipment from the entity handle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DamagePipelineBenchmark {
+    private static final double DAMAGE = 7D;
+
+    private DamageProfile profile;
+    private DamagePipeline pipeline;
+    private EntityDamageByEntityEvent unchangedHit;
+    private EntityDamageByEntityEvent modifiedHit;
+
+    private final int weapon = Material.DIAMOND_SWORD.ordinal();
+    private final int[] armor = {
+            Material.DIAMOND_HELMET.ordinal(),
+            Material.NETHERITE_CHESTPLATE.ordinal(),
+            Material.DIAMOND_LEGGINGS.ordinal(),
+            Material.DIAMOND_BOOTS.ordinal(),
+    };
+
+    @Setup
+    public void setUp() throws Injector.InjectException {
+        DamageInjector injector = new DamageInjector();
+        injector.inject(Material.DIAMOND_SWORD, new DamageTransformer(1.1F,
+                ImmutableMap.of(Material.NETHERITE_CHESTPLATE, 1.2F)));
+        injector.inject(Material.NETHERITE_AXE, new DamageTransformer(0.9F, null));
+        injector.inject(Material.DIAMOND_CHESTPLATE, new DamageTransformer(0.95F, null));
+        this.profile = injector.getProfile();
+
+        this.pipeline = new DamagePipeline(ImmutableList.of(new ProfileStage(injector)));
+
+        World world = Stubs.world();
+        Player victim = Stubs.player(world, Stubs.equipment(Material.AIR, Material.DIAMOND_HELMET,
+                Material.NETHERITE_CHESTPLATE, Material.DIAMOND_LEGGINGS, Material.DIAMOND_BOOTS), 0D, 64D, 0D);
+
+        // no transformers for the iron sword and worn armor, damage stays the same
+        Player unchangedAttacker = Stubs.player(world, Stubs.equipment(Material.IRON_SWORD, Material.AIR,
+                Material.AIR, Material.AIR, Material.AIR), 1D, 64D, 0D);
+        Player modifiedAttacker = Stubs.player(world, Stubs.equipment(Material.DIAMOND_SWORD, Material.AIR,
+                Material.AIR, Material.AIR, Material.AIR), 1D, 64D, 0D);
+
+        this.unchangedHit = hit(unchangedAttacker, victim);
+        this.modifiedHit = hit(modifiedAttacker, victim);
+    }
+
+    @Benchmark
+    public double unchangedHit() {
+        this.pipeline.onEntityDamageByEntity(this.unchangedHit);
+        return this.unchangedHit.getDamage();
+    }
+
+    @Benchmark
+    public double modifiedHit() {
+        EntityDamageByEntityEvent event = this.modifiedHit;
+        event.setDamage(EntityDamageEvent.DamageModifier.BASE, DAMAGE);
+        this.pipeline.onEntityDamageByEntity(event);
+        return event.getDamage();
+    }
+
+    @Benchmark
+    public float profileMultiplier() {
+        return this.profile.getMultiplier(this.weapon, this.armor);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static EntityDamageByEntityEvent hit(Player attacker, Player victim) {
+        return new EntityDamageByEntityEvent(attacker, victim, EntityDamageEvent.DamageCause.ENTITY_ATTACK, DAMAGE);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pl.craftserve.pvp.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.craftserve.pvp.AttackChargeTracker;
+import pl.craftserve.pvp.DamageContext;
+import pl.craftserve.pvp.DamagePipeline;
+import pl.craftserve.pvp.DamageStage;
+import pl.craftserve.pvp.EntityStateStore;
+import pl.craftserve.pvp.ItemTags;
+import pl.craftserve.pvp.RuleStage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rules compiled into method handles and published through the call site of
+ * {@link RuleStage}, compared to the same rules written by hand as a stage.
+ * Both run through a {@link DamagePipeline}, including resetting the damage
+ * of the event.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleBenchmark {
+    private static final double DAMAGE = 7D;
+    private static final String RULES = String.join("\n",
+            "rules:",
+            "- when: 'weapon is #swords and victim is player'",
+            "  multiply: 1.2",
+            "- when: 'armor has minecraft:netherite_chestplate and not cause is projectile'",
+            "  multiply: 0.9",
+            "- when: 'damage > 10'",
+            "  maximum: 10");
+
+    private File dataFolder;
+    private DamagePipeline compiled;
+    private DamagePipeline handWritten;
+    private EntityDamageByEntityEvent hit;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.dataFolder = Files.createTempDirectory("rules").toFile();
+        Files.write(new File(this.dataFolder, "rules.yml").toPath(), RULES.getBytes(StandardCharsets.UTF_8));
+
+        AttackChargeTracker charges = new AttackChargeTracker(Stubs.stub(Server.class),
+                Stubs.stub(BukkitScheduler.class), Stubs.stub(Plugin.class), new EntityStateStore(1));
+        RuleStage ruleStage = new RuleStage(this.dataFolder, charges);
+        ruleStage.reload();
+
+        this.compiled = new DamagePipeline(ImmutableList.of(ruleStage));
+        this.handWritten = new DamagePipeline(ImmutableList.of(new HandWrittenStage()));
+
+        World world = Stubs.world();
+        Player attacker = Stubs.player(world, Stubs.equipment(Material.DIAMOND_SWORD, Material.AIR,
+                Material.AIR, Material.AIR, Material.AIR), 1D, 64D, 0D);
+        Player victim = Stubs.player(world, Stubs.equipment(Material.AIR, Material.DIAMOND_HELMET,
+                Material.NETHERITE_CHESTPLATE, Material.DIAMOND_LEGGINGS, Material.DIAMOND_BOOTS), 0D, 64D, 0D);
+        this.hit = hit(attacker, victim);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(new File(this.dataFolder, "rules.yml").toPath());
+        Files.delete(this.dataFolder.toPath());
+    }
+
+    @Benchmark
+    public double compiled() {
+        return this.run(this.compiled);
+    }
+
+    @Benchmark
+    public double handWritten() {
+        return this.run(this.handWritten);
+    }
+
+    private double run(DamagePipeline pipeline) {
+        EntityDamageByEntityEvent event = this.hit;
+        event.setDamage(EntityDamageEvent.DamageModifier.BASE, DAMAGE);
+        pipeline.onEntityDamageByEntity(event);
+        return event.getDamage();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static EntityDamageByEntityEvent hit(Player attacker, Player victim) {
+        return new EntityDamageByEntityEvent(attacker, victim, EntityDamageEvent.DamageCause.ENTITY_ATTACK, DAMAGE);
+    }
+
+    static final class HandWrittenStage implements DamageStage {
+        private final boolean[] swords = new boolean[Material.values().length];
+        private final int netheriteChestplate = Material.NETHERITE_CHESTPLATE.ordinal();
+
+        HandWrittenStage() {
+            ItemTags.SWORDS.getValues().forEach(material -> this.swords[material.ordinal()] = true);
+        }
+
+        @Override
+        public double apply(DamageContext context, double damage) {
+            if (this.swords[context.getWeapon()] && context.getVictim() instanceof Player) {
+                damage *= 1.2D;
+            }
+
+            if (this.hasNetheriteChestplate(context) && context.getCause() != EntityDamageEvent.DamageCause.PROJECTILE) {
+                damage *= 0.9D;
+            }
+
+            return damage > 10D ? Math.min(damage, 10D) : damage;
+        }
+
+        private boolean hasNetheriteChestplate(DamageContext context) {
+            for (int armor : context.getArmor()) {
+                if (armor == this.netheriteChestplate) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
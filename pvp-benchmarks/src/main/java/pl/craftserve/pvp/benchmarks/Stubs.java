@@ -0,0 +1,127 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pl.craftserve.pvp.benchmarks;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.ExceptionMethod;
+import net.bytebuddy.implementation.FixedValue;
+import net.bytebuddy.implementation.MethodDelegation;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.EntityEquipment;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Objects;
+
+import static net.bytebuddy.matcher.ElementMatchers.isAbstract;
+import static net.bytebuddy.matcher.ElementMatchers.named;
+import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
+
+/**
+ * Bukkit interfaces implemented by generated classes returning fixed
+ * values, so calling them doesn't allocate, unlike proxies or mocks. Other
+ * methods throw.
+ */
+final class Stubs {
+    private Stubs() {
+    }
+
+    /**
+     * @return stub of which every method throws, for dependencies which are
+     * only stored.
+     */
+    static <T> T stub(Class<T> type) {
+        return create(builder(type));
+    }
+
+    static World world() {
+        return stub(World.class);
+    }
+
+    static EntityEquipment equipment(Material mainHand, Material helmet, Material chestplate,
+                                     Material leggings, Material boots) {
+        return create(builder(EntityEquipment.class)
+                .method(named("getItemInMainHand")).intercept(FixedValue.reference(new ItemStack(mainHand)))
+                .method(named("getHelmet")).intercept(FixedValue.reference(new ItemStack(helmet)))
+                .method(named("getChestplate")).intercept(FixedValue.reference(new ItemStack(chestplate)))
+                .method(named("getLeggings")).intercept(FixedValue.reference(new ItemStack(leggings)))
+                .method(named("getBoots")).intercept(FixedValue.reference(new ItemStack(boots))));
+    }
+
+    static Player player(World world, EntityEquipment equipment, double x, double y, double z) {
+        return create(livingEntity(Player.class, world, equipment, x, y, z));
+    }
+
+    private static <T extends LivingEntity> DynamicType.Builder<T> livingEntity(Class<T> type, World world,
+                                                                              EntityEquipment equipment,
+                                                                              double x, double y, double z) {
+        return builder(type)
+                .method(named("getWorld")).intercept(FixedValue.reference(world))
+                .method(named("getEquipment")).intercept(FixedValue.reference(equipment))
+                .method(named("getLocation").and(takesArguments(Location.class)))
+                .intercept(MethodDelegation.to(new Position(world, x, y, z)));
+    }
+
+    private static <T> DynamicType.Builder<T> builder(Class<T> type) {
+        return new ByteBuddy()
+                .subclass(type)
+                .method(isAbstract()).intercept(ExceptionMethod.throwing(UnsupportedOperationException.class));
+    }
+
+    private static <T> T create(DynamicType.Builder<T> builder) {
+        Class<? extends T> type = builder.make()
+                .load(Stubs.class.getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+                .getLoaded();
+
+        try {
+            return type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create stub of " + type, e);
+        }
+    }
+
+    /**
+     * Same as CraftEntity, which sets the world of the given location too.
+     */
+    public static final class Position {
+        private final World world;
+        private final double x;
+        private final double y;
+        private final double z;
+
+        Position(World world, double x, double y, double z) {
+            this.world = Objects.requireNonNull(world, "world");
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        public Location getLocation(Location location) {
+            location.setWorld(this.world);
+            location.setX(this.x);
+            location.setY(this.y);
+            location.setZ(this.z);
+            return location;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes {@link HitStatistics} of hit log segments, splitting them in
+ * halves until every task reads a single segment. Intervals between hits of
+ * an attacker are measured within a segment, its first hit in a segment has
+ * none.
+ */
+public class AnalyzeTask extends RecursiveTask<HitStatistics> {
+    private final List<File> segments;
+    private final ProfileReplay replay;
+
+    public AnalyzeTask(List<File> segments, ProfileReplay replay) {
+        this.segments = Objects.requireNonNull(segments, "segments");
+        this.replay = Objects.requireNonNull(replay, "replay");
+    }
+
+    @Override
+    protected HitStatistics compute() {
+        if (this.segments.size() > 1) {
+            int middle = this.segments.size() / 2;
+            AnalyzeTask left = new AnalyzeTask(this.segments.subList(0, middle), this.replay);
+            AnalyzeTask right = new AnalyzeTask(this.segments.subList(middle, this.segments.size()), this.replay);
+
+            left.fork();
+            HitStatistics statistics = right.compute();
+            return statistics.merge(left.join());
+        }
+
+        HitStatistics statistics = new HitStatistics();
+        if (this.segments.isEmpty()) {
+            return statistics;
+        }
+
+        HitSegment segment;
+        try {
+            segment = HitSegment.open(this.segments.get(0));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        ProfileReplay replay = this.replay.copy();
+        Map<UUID, Long> previousHits = new HashMap<>();
+        for (int record = 0; record < segment.size(); record++) {
+            long tick = segment.getTick(record);
+            Long previous = previousHits.put(segment.getAttacker(record), tick);
+            int interval = previous == null ? -1 : (int) Math.min(Integer.MAX_VALUE, tick - previous);
+
+            statistics.add(segment.getWeapon(record), segment.getFinalDamage(record),
+                    replay.apply(segment, record), interval, segment.getCharge(record));
+        }
+
+        return statistics;
+    }
+}
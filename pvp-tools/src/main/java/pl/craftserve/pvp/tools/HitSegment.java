@@ -0,0 +1,217 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp.tools;
+
+import org.bukkit.Material;
+import pl.craftserve.pvp.HitLog;
+import pl.craftserve.pvp.HitRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.UUID;
+
+/**
+ * Read-only view of a {@link HitLog} segment file, mapped into memory.
+ * Materials are translated from the ordinals of the server which recorded
+ * the segment to ordinals of {@link Material} in this build through the
+ * segment's material table.
+ */
+public final class HitSegment {
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final String serverVersion;
+    private final int[] materials;
+    private final int recordsOffset;
+    private final long created;
+    private final int size;
+
+    private HitSegment(File file, MappedByteBuffer buffer, String serverVersion, int[] materials,
+                       int recordsOffset, long created, int size) {
+        this.file = file;
+        this.buffer = buffer;
+        this.serverVersion = serverVersion;
+        this.materials = materials;
+        this.recordsOffset = recordsOffset;
+        this.created = created;
+        this.size = size;
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * @return version of the server which recorded the segment, such as
+     * {@code v1_16_R3}.
+     */
+    public String getServerVersion() {
+        return this.serverVersion;
+    }
+
+    /**
+     * @return epoch milliseconds when the segment was created.
+     */
+    public long getCreated() {
+        return this.created;
+    }
+
+    /**
+     * @return number of complete records.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param field index of the long within the record, see {@link HitRecorder}.
+     */
+    public long get(int record, int field) {
+        return this.buffer.getLong(this.recordsOffset + record * HitLog.RECORD_SIZE + field * Long.BYTES);
+    }
+
+    /**
+     * @return server tick counted since the recorder started.
+     */
+    public long getTick(int record) {
+        return this.get(record, HitRecorder.TICK);
+    }
+
+    public UUID getAttacker(int record) {
+        return new UUID(this.get(record, HitRecorder.ATTACKER_MOST), this.get(record, HitRecorder.ATTACKER_LEAST));
+    }
+
+    public UUID getVictim(int record) {
+        return new UUID(this.get(record, HitRecorder.VICTIM_MOST), this.get(record, HitRecorder.VICTIM_LEAST));
+    }
+
+    /**
+     * @return ordinal of the weapon's {@link Material}, or {@code -1} if it
+     * doesn't exist in this build.
+     */
+    public int getWeapon(int record) {
+        return this.material((int) (this.get(record, HitRecorder.WEAPON) >>> 32));
+    }
+
+    /**
+     * @return attack charge of the hit, or {@link HitRecorder#UNKNOWN} if it
+     * isn't a melee attack of a player.
+     */
+    public float getCharge(int record) {
+        return Float.intBitsToFloat((int) this.get(record, HitRecorder.WEAPON));
+    }
+
+    /**
+     * @param piece 0 for the helmet to 3 for boots.
+     * @return ordinal of the piece's {@link Material}, or {@code -1} if it
+     * doesn't exist in this build.
+     */
+    public int getArmor(int record, int piece) {
+        return this.material((int) (this.get(record, HitRecorder.ARMOR) >>> (48 - piece * 16)) & 0xFFFF);
+    }
+
+    public float getFinalDamage(int record) {
+        return Float.intBitsToFloat((int) (this.get(record, HitRecorder.DAMAGE) >>> 32));
+    }
+
+    public float getBaseDamage(int record) {
+        return Float.intBitsToFloat((int) this.get(record, HitRecorder.DAMAGE));
+    }
+
+    private int material(int recorded) {
+        return recorded >= 0 && recorded < this.materials.length ? this.materials[recorded] : -1;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", HitSegment.class.getSimpleName() + "[", "]")
+                .add("file=" + this.file)
+                .add("serverVersion=" + this.serverVersion)
+                .add("created=" + this.created)
+                .add("size=" + this.size)
+                .toString();
+    }
+
+    public static HitSegment open(File file) throws IOException {
+        Objects.requireNonNull(file, "file");
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HitLog.HEADER_SIZE) {
+                throw new IOException(file + " is too small to be a hit log segment.");
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.getLong(0) != HitLog.MAGIC) {
+            throw new IOException(file + " is not a hit log segment.");
+        } else if (buffer.getInt(HitLog.VERSION_OFFSET) != HitLog.VERSION) {
+            throw new IOException(file + " has unsupported version " + buffer.getInt(HitLog.VERSION_OFFSET) +
+                    ", expected " + HitLog.VERSION + ".");
+        } else if (buffer.getInt(HitLog.RECORD_SIZE_OFFSET) != HitLog.RECORD_SIZE) {
+            throw new IOException(file + " has unsupported record size " + buffer.getInt(HitLog.RECORD_SIZE_OFFSET) + ".");
+        }
+
+        int recordsOffset = buffer.getInt(HitLog.RECORDS_OFFSET);
+        int materialCount = buffer.getInt(HitLog.MATERIALS_OFFSET);
+        if (recordsOffset < HitLog.HEADER_SIZE || recordsOffset > buffer.capacity() || recordsOffset % Long.BYTES != 0) {
+            throw new IOException(file + " has corrupted records offset " + recordsOffset + ".");
+        } else if (materialCount < 0) {
+            throw new IOException(file + " has corrupted material count " + materialCount + ".");
+        }
+
+        String serverVersion;
+        int[] materials = new int[materialCount];
+        try {
+            buffer.position(HitLog.HEADER_SIZE).limit(recordsOffset);
+            serverVersion = readString(buffer);
+            for (int i = 0; i < materialCount; i++) {
+                String key = readString(buffer);
+                Material material = key.isEmpty() ? null : Material.matchMaterial(key);
+                materials[i] = material == null ? -1 : material.ordinal();
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " has corrupted material table.", e);
+        } finally {
+            buffer.clear();
+        }
+
+        long count = buffer.getLong(HitLog.COUNT_OFFSET);
+        long capacity = (buffer.capacity() - recordsOffset) / HitLog.RECORD_SIZE;
+        if (count < 0L || count > capacity) {
+            throw new IOException(file + " has corrupted record count " + count + ".");
+        }
+
+        return new HitSegment(file, buffer, serverVersion, materials, recordsOffset,
+                buffer.getLong(HitLog.CREATED_OFFSET), (int) count);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
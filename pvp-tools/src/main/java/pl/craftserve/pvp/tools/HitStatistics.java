@@ -0,0 +1,200 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp.tools;
+
+import org.bukkit.Material;
+import pl.craftserve.pvp.HitRecorder;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Per-weapon statistics of hits, accumulated into primitive arrays indexed
+ * by material ordinal. Statistics of segments are computed independently
+ * and merged.
+ */
+public final class HitStatistics {
+    static final Material[] MATERIALS = Material.values();
+
+    /** Half a damage point per bin, the last bin holds everything above. */
+    public static final int BINS = 81;
+    public static final int STEPS = 2;
+
+    /** Longer intervals between hits are considered separate fights. */
+    public static final int MAXIMUM_INTERVAL = 40;
+    public static final double HEALTH = 20D;
+
+    private final long[] hits = new long[MATERIALS.length];
+    private final double[] damage = new double[MATERIALS.length];
+    private final double[] replayDamage = new double[MATERIALS.length];
+    private final long[] intervals = new long[MATERIALS.length];
+    private final long[] intervalCounts = new long[MATERIALS.length];
+    private final double[] charges = new double[MATERIALS.length];
+    private final long[] chargeCounts = new long[MATERIALS.length];
+    private final long[][] histograms = new long[MATERIALS.length][];
+
+    private long unknown;
+
+    /**
+     * @param weapon ordinal of the weapon in this build, see {@link HitSegment#getWeapon(int)}.
+     * @param interval ticks since the attacker's previous hit, or {@code -1}.
+     * @param charge attack charge, or {@link HitRecorder#UNKNOWN}.
+     */
+    public void add(int weapon, float damage, float replayDamage, int interval, float charge) {
+        if (weapon < 0 || weapon >= MATERIALS.length) {
+            this.unknown++;
+            return;
+        }
+
+        this.hits[weapon]++;
+        this.damage[weapon] += damage;
+        this.replayDamage[weapon] += replayDamage;
+
+        if (interval > 0 && interval <= MAXIMUM_INTERVAL) {
+            this.intervals[weapon] += interval;
+            this.intervalCounts[weapon]++;
+        }
+
+        if (charge != HitRecorder.UNKNOWN) {
+            this.charges[weapon] += charge;
+            this.chargeCounts[weapon]++;
+        }
+
+        long[] histogram = this.histograms[weapon];
+        if (histogram == null) {
+            histogram = this.histograms[weapon] = new long[BINS];
+        }
+
+        histogram[(int) Math.min(BINS - 1, Math.max(0L, Math.round(damage * STEPS)))]++;
+    }
+
+    public HitStatistics merge(HitStatistics other) {
+        Objects.requireNonNull(other, "other");
+
+        for (int i = 0; i < MATERIALS.length; i++) {
+            this.hits[i] += other.hits[i];
+            this.damage[i] += other.damage[i];
+            this.replayDamage[i] += other.replayDamage[i];
+            this.intervals[i] += other.intervals[i];
+            this.intervalCounts[i] += other.intervalCounts[i];
+            this.charges[i] += other.charges[i];
+            this.chargeCounts[i] += other.chargeCounts[i];
+
+            long[] histogram = other.histograms[i];
+            if (histogram != null) {
+                if (this.histograms[i] == null) {
+                    this.histograms[i] = histogram.clone();
+                } else {
+                    for (int bin = 0; bin < BINS; bin++) {
+                        this.histograms[i][bin] += histogram[bin];
+                    }
+                }
+            }
+        }
+
+        this.unknown += other.unknown;
+        return this;
+    }
+
+    public long getHits() {
+        long hits = 0L;
+        for (long weaponHits : this.hits) {
+            hits += weaponHits;
+        }
+
+        return hits;
+    }
+
+    /**
+     * Prints a table of weapons sorted by their number of hits. Charge is
+     * the mean attack charge of melee hits of players. DPS assumes the mean
+     * interval between consecutive hits within a fight, time to kill assumes
+     * {@link #HEALTH} and no regeneration.
+     *
+     * @param replay whether replayed damage should be printed.
+     */
+    public void print(PrintStream out, boolean replay) {
+        Objects.requireNonNull(out, "out");
+
+        List<Integer> weapons = new ArrayList<>();
+        for (int i = 0; i < MATERIALS.length; i++) {
+            if (this.hits[i] != 0L) {
+                weapons.add(i);
+            }
+        }
+
+        weapons.sort(Comparator.comparingLong((Integer weapon) -> this.hits[weapon]).reversed());
+
+        out.printf(Locale.ROOT, "%-24s %10s %8s %8s %8s %8s %8s %8s %8s",
+                "weapon", "hits", "mean", "p50", "p95", "p99", "charge", "dps", "ttk");
+        if (replay) {
+            out.printf(Locale.ROOT, " %8s %8s %8s", "r.mean", "r.dps", "r.ttk");
+        }
+        out.println();
+
+        for (int weapon : weapons) {
+            long hits = this.hits[weapon];
+            double mean = this.damage[weapon] / hits;
+            double interval = this.intervalCounts[weapon] == 0L ? Double.NaN :
+                    (double) this.intervals[weapon] / this.intervalCounts[weapon] / 20D;
+            double charge = this.chargeCounts[weapon] == 0L ? Double.NaN :
+                    this.charges[weapon] / this.chargeCounts[weapon];
+
+            out.printf(Locale.ROOT, "%-24s %10d %8.2f %8.1f %8.1f %8.1f %8.2f %8.2f %8.2f",
+                    MATERIALS[weapon].name().toLowerCase(Locale.ROOT), hits, mean,
+                    this.percentile(weapon, 0.5D), this.percentile(weapon, 0.95D), this.percentile(weapon, 0.99D),
+                    charge, mean / interval, timeToKill(mean, interval));
+
+            if (replay) {
+                double replayMean = this.replayDamage[weapon] / hits;
+                out.printf(Locale.ROOT, " %8.2f %8.2f %8.2f", replayMean, replayMean / interval, timeToKill(replayMean, interval));
+            }
+            out.println();
+        }
+
+        if (this.unknown != 0L) {
+            out.println(this.unknown + " hit(s) with materials unknown to this version were skipped.");
+        }
+    }
+
+    private double percentile(int weapon, double percentile) {
+        long[] histogram = this.histograms[weapon];
+        long target = (long) Math.ceil(percentile * this.hits[weapon]);
+
+        long seen = 0L;
+        for (int bin = 0; bin < BINS; bin++) {
+            seen += histogram[bin];
+            if (seen >= target) {
+                return (double) bin / STEPS;
+            }
+        }
+
+        return (double) (BINS - 1) / STEPS;
+    }
+
+    private static double timeToKill(double damage, double interval) {
+        if (!(damage > 0D)) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return (Math.ceil(HEALTH / damage) - 1D) * interval;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp.tools;
+
+import com.google.common.collect.Multimap;
+import org.bukkit.Material;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeModifier;
+import pl.craftserve.pvp.AttributeTransformer;
+import pl.craftserve.pvp.StatTable;
+import pl.craftserve.pvp.Transformer;
+
+import java.util.Objects;
+
+/**
+ * Combat attributes of weapons and armor pieces indexed by material
+ * ordinal. Vanilla values of {@link StatTable#EMPTY} are replaced by
+ * attribute modifiers of {@link AttributeTransformer}s, the same way the
+ * plugin injects them: a transformer replaces all modifiers of its item.
+ */
+public final class ItemStats {
+    static final int MATERIALS = Material.values().length;
+
+    public static final double PLAYER_ATTACK_DAMAGE = 1D;
+    public static final double PLAYER_ATTACK_SPEED = 4D;
+
+    public static final ItemStats VANILLA = createVanilla();
+
+    private final double[] attackDamage;
+    private final double[] attackSpeed;
+    private final double[] armor;
+    private final double[] toughness;
+
+    private ItemStats(double[] attackDamage, double[] attackSpeed, double[] armor, double[] toughness) {
+        this.attackDamage = attackDamage;
+        this.attackSpeed = attackSpeed;
+        this.armor = armor;
+        this.toughness = toughness;
+    }
+
+    /**
+     * @return attack damage of a player holding the material.
+     */
+    public double getAttackDamage(int material) {
+        return this.attackDamage[material];
+    }
+
+    /**
+     * @return attack speed of a player holding the material.
+     */
+    public double getAttackSpeed(int material) {
+        return this.attackSpeed[material];
+    }
+
+    /**
+     * @return armor points of the material worn in its slot.
+     */
+    public double getArmor(int material) {
+        return this.armor[material];
+    }
+
+    public double getToughness(int material) {
+        return this.toughness[material];
+    }
+
+    public ItemStats override(Multimap<Material, Transformer> transformers) {
+        Objects.requireNonNull(transformers, "transformers");
+
+        double[] attackDamage = this.attackDamage.clone();
+        double[] attackSpeed = this.attackSpeed.clone();
+        double[] armor = this.armor.clone();
+        double[] toughness = this.toughness.clone();
+
+        transformers.forEach((material, transformer) -> {
+            if (transformer instanceof AttributeTransformer) {
+                Multimap<Attribute, AttributeModifier> modifiers = ((AttributeTransformer) transformer).getAttributeModifiers();
+                int ordinal = material.ordinal();
+                attackDamage[ordinal] = StatTable.value(PLAYER_ATTACK_DAMAGE, modifiers.get(Attribute.GENERIC_ATTACK_DAMAGE));
+                attackSpeed[ordinal] = StatTable.value(PLAYER_ATTACK_SPEED, modifiers.get(Attribute.GENERIC_ATTACK_SPEED));
+                armor[ordinal] = StatTable.value(0D, modifiers.get(Attribute.GENERIC_ARMOR));
+                toughness[ordinal] = StatTable.value(0D, modifiers.get(Attribute.GENERIC_ARMOR_TOUGHNESS));
+            }
+        });
+
+        return new ItemStats(attackDamage, attackSpeed, armor, toughness);
+    }
+
+    private static ItemStats createVanilla() {
+        double[] attackDamage = new double[MATERIALS];
+        double[] attackSpeed = new double[MATERIALS];
+        double[] armor = new double[MATERIALS];
+        double[] toughness = new double[MATERIALS];
+
+        for (Material material : Material.values()) {
+            int ordinal = material.ordinal();
+            attackDamage[ordinal] = StatTable.EMPTY.getAttackDamage(material);
+            attackSpeed[ordinal] = StatTable.EMPTY.getAttackSpeed(material);
+            armor[ordinal] = StatTable.EMPTY.getArmor(material);
+            toughness[ordinal] = StatTable.EMPTY.getArmorToughness(material);
+        }
+
+        return new ItemStats(attackDamage, attackSpeed, armor, toughness);
+    }
+}
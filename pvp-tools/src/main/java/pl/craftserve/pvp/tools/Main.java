@@ -0,0 +1,244 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp.tools;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+import org.bukkit.Material;
+import pl.craftserve.pvp.ArmorFormula;
+import pl.craftserve.pvp.ItemTags;
+import pl.craftserve.pvp.Transformer;
+import pl.craftserve.pvp.Transformers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line entry point of tools working with CraftservePVP data
+ * offline, without a server.
+ */
+public final class Main {
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage:",
+            "  analyze [--base <version>] [--recorded <profile.yml>] [--replay <profile.yml>] <segment or directory>...",
+            "      Per-weapon damage, DPS and time to kill of hit log segments, optionally",
+            "      replayed from the profile they were recorded with to another one.",
+            "  simulate [--base <version>] [--profile <profile.yml>]... [--armor-formula legacy|modern]",
+            "           [--reduction-per-point <value>] [--maximum-reduction <value>] [--legacy-combat]",
+            "           [--format csv|html] [--output <file>]",
+            "      Time to kill of swords, axes and tridents against armor sets, with and",
+            "      without enchantments and potions, for vanilla and every profile.",
+            "",
+            "Profiles are transformers.yml files, overriding the transformers bundled for",
+            "the base server version (such as v1_16_R3) if given.");
+
+    private Main() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        List<String> arguments = new ArrayList<>(Arrays.asList(args).subList(1, args.length));
+        try {
+            switch (args[0]) {
+                case "analyze":
+                    analyze(arguments);
+                    break;
+                case "simulate":
+                    simulate(arguments);
+                    break;
+                default:
+                    System.err.println("Unknown command: " + args[0]);
+                    System.err.println(USAGE);
+                    System.exit(2);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void analyze(List<String> arguments) throws IOException {
+        Multimap<Material, Transformer> base = loadBase(option(arguments, "--base"));
+        ProfileReplay.Profile recorded = ProfileReplay.Profile.compile(base);
+        ProfileReplay.Profile replayed = null;
+
+        String recordedPath = option(arguments, "--recorded");
+        if (recordedPath != null) {
+            recorded = loadProfile(base, new File(recordedPath));
+        }
+
+        String replayPath = option(arguments, "--replay");
+        if (replayPath != null) {
+            replayed = loadProfile(base, new File(replayPath));
+        }
+
+        List<File> segments = new ArrayList<>();
+        for (String argument : arguments) {
+            File file = new File(argument);
+            if (file.isDirectory()) {
+                File[] files = file.listFiles((directory, name) -> name.endsWith(".bin"));
+                if (files != null) {
+                    Arrays.sort(files);
+                    segments.addAll(Arrays.asList(files));
+                }
+            } else if (file.isFile()) {
+                segments.add(file);
+            } else {
+                throw new IOException(file + " does not exist.");
+            }
+        }
+
+        if (segments.isEmpty()) {
+            throw new IllegalArgumentException("No segments given.");
+        }
+
+        ProfileReplay replay = replayed == null ? ProfileReplay.IDENTITY : new ProfileReplay(recorded, replayed);
+
+        Instant start = Instant.now();
+        HitStatistics statistics = ForkJoinPool.commonPool().invoke(new AnalyzeTask(segments, replay));
+        Duration duration = Duration.between(start, Instant.now());
+
+        statistics.print(System.out, replayed != null);
+        System.out.println("Analyzed " + statistics.getHits() + " hit(s) in " + segments.size() +
+                " segment(s), took " + duration.toMillis() / 1000F + "s.");
+    }
+
+    private static void simulate(List<String> arguments) throws IOException {
+        String baseVersion = option(arguments, "--base");
+        Multimap<Material, Transformer> base = loadBase(baseVersion);
+
+        Map<String, ProfileReplay.Profile> profiles = new LinkedHashMap<>();
+        profiles.put("vanilla", ProfileReplay.Profile.VANILLA);
+        if (baseVersion != null) {
+            profiles.put(baseVersion, ProfileReplay.Profile.compile(base));
+        }
+
+        String profilePath;
+        while ((profilePath = option(arguments, "--profile")) != null) {
+            File file = new File(profilePath);
+            String name = file.getName();
+            int extension = name.lastIndexOf('.');
+            profiles.put(extension > 0 ? name.substring(0, extension) : name, loadProfile(base, file));
+        }
+
+        ArmorFormula formula = ArmorFormula.MODERN;
+        String formulaName = option(arguments, "--armor-formula");
+        if (formulaName != null) {
+            formula = ArmorFormula.parse(formulaName);
+        }
+
+        double reductionPerPoint = number(option(arguments, "--reduction-per-point"), 0.04D);
+        double maximumReduction = number(option(arguments, "--maximum-reduction"), 0.8D);
+        boolean legacyCombat = arguments.remove("--legacy-combat");
+
+        String formatName = option(arguments, "--format");
+        SimulationReport report = formatName == null ? SimulationReport.CSV : SimulationReport.parse(formatName);
+        String output = option(arguments, "--output");
+
+        if (!arguments.isEmpty()) {
+            throw new IllegalArgumentException("Unknown arguments: " + arguments);
+        }
+
+        List<Material> weapons = new ArrayList<>();
+        weapons.addAll(ItemTags.SWORDS.getValues());
+        weapons.addAll(ItemTags.AXES.getValues());
+        weapons.addAll(ItemTags.TRIDENTS.getValues());
+
+        Simulation simulation = new Simulation(profiles, weapons, Simulation.ArmorSet.fromTag(ItemTags.ARMOR),
+                formula, reductionPerPoint, maximumReduction, legacyCombat);
+
+        Instant start = Instant.now();
+        simulation.run(ForkJoinPool.commonPool());
+        Duration duration = Duration.between(start, Instant.now());
+
+        if (output == null) {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            report.write(simulation, out);
+            out.flush();
+        } else {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8))) {
+                report.write(simulation, out);
+            }
+        }
+
+        System.err.println("Simulated " + simulation.size() + " combination(s), took " + duration.toMillis() / 1000F + "s.");
+    }
+
+    private static Multimap<Material, Transformer> loadBase(String version) throws IOException {
+        if (version == null) {
+            return ImmutableMultimap.of();
+        }
+
+        return Transformers.readJarDatFile(Main.class.getClassLoader(), version + ".dat");
+    }
+
+    private static ProfileReplay.Profile loadProfile(Multimap<Material, Transformer> base, File file) throws IOException {
+        return ProfileReplay.Profile.compile(Transformers.override(base, Transformers.readYaml(file)));
+    }
+
+    private static double number(String input, double def) {
+        if (input == null) {
+            return def;
+        }
+
+        try {
+            return Double.parseDouble(input);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + input);
+        }
+    }
+
+    /**
+     * Removes the option and its value from the arguments.
+     *
+     * @return value of the option, or {@code null} if absent.
+     */
+    private static String option(List<String> arguments, String name) {
+        int index = arguments.indexOf(name);
+        if (index == -1) {
+            return null;
+        } else if (index == arguments.size() - 1) {
+            throw new IllegalArgumentException("Missing value of " + name + ".");
+        }
+
+        arguments.remove(index);
+        return arguments.remove(index);
+    }
+}
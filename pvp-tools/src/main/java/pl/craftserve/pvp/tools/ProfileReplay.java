@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp.tools;
+
+import com.google.common.collect.Multimap;
+import org.bukkit.Material;
+import pl.craftserve.pvp.DamageProfile;
+import pl.craftserve.pvp.DamageTransformer;
+import pl.craftserve.pvp.Transformer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Rescales recorded damage from the profile it was recorded with to another
+ * one. Damage scales with the ratio of weapon attack damage (see
+ * {@link ItemStats}) and of {@link DamageProfile} multipliers. Changes to
+ * armor attributes are not replayed, armor reduction is not linear in them.
+ */
+public final class ProfileReplay {
+    static final int MATERIALS = Material.values().length;
+
+    public static final ProfileReplay IDENTITY = new ProfileReplay(Profile.VANILLA, Profile.VANILLA);
+
+    private final Profile recorded;
+    private final Profile replayed;
+    private final int[] armor = new int[4];
+
+    public ProfileReplay(Profile recorded, Profile replayed) {
+        this.recorded = Objects.requireNonNull(recorded, "recorded");
+        this.replayed = Objects.requireNonNull(replayed, "replayed");
+    }
+
+    /**
+     * Not thread safe, every thread needs its own replay, see {@link #copy()}.
+     */
+    public float apply(HitSegment segment, int record) {
+        int weapon = segment.getWeapon(record);
+        float damage = segment.getFinalDamage(record);
+        if (this.recorded == this.replayed || weapon < 0 || weapon >= MATERIALS) {
+            return damage;
+        }
+
+        int[] armor = this.armor;
+        for (int piece = 0; piece < armor.length; piece++) {
+            int material = segment.getArmor(record, piece);
+            if (material < 0) {
+                return damage;
+            }
+
+            armor[piece] = material;
+        }
+
+        double recorded = this.recorded.stats.getAttackDamage(weapon) * this.recorded.profile.getMultiplier(weapon, armor);
+        double replayed = this.replayed.stats.getAttackDamage(weapon) * this.replayed.profile.getMultiplier(weapon, armor);
+        return recorded == 0D ? damage : (float) (damage * replayed / recorded);
+    }
+
+    public ProfileReplay copy() {
+        return new ProfileReplay(this.recorded, this.replayed);
+    }
+
+    /**
+     * Compiled damage multipliers and item attributes of every material.
+     */
+    public static final class Profile {
+        public static final Profile VANILLA = new Profile(DamageProfile.EMPTY, ItemStats.VANILLA);
+
+        final DamageProfile profile;
+        final ItemStats stats;
+
+        public Profile(DamageProfile profile, ItemStats stats) {
+            this.profile = Objects.requireNonNull(profile, "profile");
+            this.stats = Objects.requireNonNull(stats, "stats");
+        }
+
+        public DamageProfile getProfile() {
+            return this.profile;
+        }
+
+        public ItemStats getStats() {
+            return this.stats;
+        }
+
+        /**
+         * @param transformers transformers overriding vanilla items.
+         */
+        public static Profile compile(Multimap<Material, Transformer> transformers) {
+            Objects.requireNonNull(transformers, "transformers");
+
+            Map<Material, DamageTransformer> damageTransformers = new LinkedHashMap<>();
+            transformers.forEach((material, transformer) -> {
+                if (transformer instanceof DamageTransformer) {
+                    damageTransformers.put(material, (DamageTransformer) transformer);
+                }
+            });
+
+            return new Profile(DamageProfile.compile(damageTransformers), ItemStats.VANILLA.override(transformers));
+        }
+    }
+}
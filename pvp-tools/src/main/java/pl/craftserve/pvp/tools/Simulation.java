@@ -0,0 +1,302 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp.tools;
+
+import com.google.common.collect.ImmutableList;
+import org.bukkit.Material;
+import org.bukkit.Tag;
+import pl.craftserve.pvp.ArmorFormula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Time to kill of fully charged, non-critical melee hits for every
+ * combination of profile, weapon, armor set and {@link Scenario}, computed
+ * with the vanilla damage formulas in parallel. Results are stored in
+ * primitive arrays indexed by {@link #cell(int, int, int, int)}.
+ */
+public final class Simulation {
+    public static final double HEALTH = 20D;
+
+    static final int AIR = Material.AIR.ordinal();
+
+    static final int STRENGTH_LEVEL = 2;
+    static final double STRENGTH_DAMAGE = 3D; // per level
+    static final int SHARPNESS_LEVEL = 5;
+    static final int PROTECTION_LEVEL = 4;
+    static final int MAXIMUM_PROTECTION = 20;
+    static final int HURT_TICKS = 10; // hits within these ticks of the previous one deal no damage
+
+    private static final int THRESHOLD = 64;
+
+    private final List<String> profileNames;
+    private final List<ProfileReplay.Profile> profiles;
+    private final List<Material> weapons;
+    private final List<ArmorSet> armorSets;
+    private final List<Scenario> scenarios = ImmutableList.copyOf(Scenario.values());
+
+    private final ArmorFormula formula;
+    private final double reductionPerPoint;
+    private final double maximumReduction;
+    private final boolean legacyCombat;
+
+    private final double[] damage;
+    private final int[] hits;
+    private final int[] intervals;
+    private final double[] timeToKill;
+
+    /**
+     * @param legacyCombat whether the attack cooldown is disabled, so hits
+     * are limited only by hurt ticks.
+     */
+    public Simulation(Map<String, ProfileReplay.Profile> profiles, List<Material> weapons, List<ArmorSet> armorSets,
+                      ArmorFormula formula, double reductionPerPoint, double maximumReduction, boolean legacyCombat) {
+        Objects.requireNonNull(profiles, "profiles");
+        this.profileNames = ImmutableList.copyOf(profiles.keySet());
+        this.profiles = ImmutableList.copyOf(profiles.values());
+        this.weapons = ImmutableList.copyOf(Objects.requireNonNull(weapons, "weapons"));
+        this.armorSets = ImmutableList.copyOf(Objects.requireNonNull(armorSets, "armorSets"));
+        this.formula = Objects.requireNonNull(formula, "formula");
+        this.reductionPerPoint = reductionPerPoint;
+        this.maximumReduction = maximumReduction;
+        this.legacyCombat = legacyCombat;
+
+        int cells = this.profiles.size() * this.weapons.size() * this.armorSets.size() * this.scenarios.size();
+        this.damage = new double[cells];
+        this.hits = new int[cells];
+        this.intervals = new int[cells];
+        this.timeToKill = new double[cells];
+    }
+
+    public List<String> getProfileNames() {
+        return this.profileNames;
+    }
+
+    public List<Material> getWeapons() {
+        return this.weapons;
+    }
+
+    public List<ArmorSet> getArmorSets() {
+        return this.armorSets;
+    }
+
+    public List<Scenario> getScenarios() {
+        return this.scenarios;
+    }
+
+    public int cell(int profile, int weapon, int armorSet, int scenario) {
+        return ((profile * this.weapons.size() + weapon) * this.armorSets.size() + armorSet) * this.scenarios.size() + scenario;
+    }
+
+    /**
+     * @return damage of a single hit after armor and enchantments.
+     */
+    public double getDamage(int cell) {
+        return this.damage[cell];
+    }
+
+    public int getHits(int cell) {
+        return this.hits[cell];
+    }
+
+    /**
+     * @return ticks between hits.
+     */
+    public int getInterval(int cell) {
+        return this.intervals[cell];
+    }
+
+    /**
+     * @return seconds from the first to the killing hit, infinite if hits
+     * deal no damage.
+     */
+    public double getTimeToKill(int cell) {
+        return this.timeToKill[cell];
+    }
+
+    public int size() {
+        return this.damage.length;
+    }
+
+    public void run(ForkJoinPool pool) {
+        Objects.requireNonNull(pool, "pool");
+        pool.invoke(new Task(0, this.size()));
+    }
+
+    private void compute(int cell) {
+        int scenarioIndex = cell % this.scenarios.size();
+        int rest = cell / this.scenarios.size();
+        int armorSetIndex = rest % this.armorSets.size();
+        rest /= this.armorSets.size();
+        int weaponIndex = rest % this.weapons.size();
+        int profileIndex = rest / this.weapons.size();
+
+        ProfileReplay.Profile profile = this.profiles.get(profileIndex);
+        ItemStats stats = profile.getStats();
+        Scenario scenario = this.scenarios.get(scenarioIndex);
+        int weapon = this.weapons.get(weaponIndex).ordinal();
+        int[] armor = this.armorSets.get(armorSetIndex).pieces;
+
+        double damage = stats.getAttackDamage(weapon);
+        if (scenario.potions) {
+            damage += STRENGTH_DAMAGE * STRENGTH_LEVEL;
+        }
+        if (scenario.enchanted) {
+            damage += 0.5D * SHARPNESS_LEVEL + 0.5D;
+        }
+
+        // the plugin's damage pipeline scales the base damage
+        damage *= profile.getProfile().getMultiplier(weapon, armor);
+
+        double armorPoints = 0D;
+        double toughness = 0D;
+        int protection = 0;
+        for (int piece : armor) {
+            armorPoints += stats.getArmor(piece);
+            toughness += stats.getToughness(piece);
+            if (scenario.enchanted && piece != AIR) {
+                protection += PROTECTION_LEVEL;
+            }
+        }
+
+        damage *= this.formula.getFactor(armorPoints, toughness, damage, this.reductionPerPoint, this.maximumReduction);
+        damage *= 1D - Math.min(MAXIMUM_PROTECTION, protection) / 25D;
+
+        int interval = HURT_TICKS;
+        if (!this.legacyCombat) {
+            // full charge once (ticks + 0.5) reach the cooldown period
+            double period = 20D / stats.getAttackSpeed(weapon);
+            interval = Math.max(HURT_TICKS, (int) Math.ceil(period - 0.5D));
+        }
+
+        int hits = damage > 0D ? (int) Math.ceil(HEALTH / damage) : Integer.MAX_VALUE;
+
+        this.damage[cell] = damage;
+        this.hits[cell] = hits;
+        this.intervals[cell] = interval;
+        this.timeToKill[cell] = damage > 0D ? (hits - 1) * interval / 20D : Double.POSITIVE_INFINITY;
+    }
+
+    private class Task extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        Task(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= THRESHOLD) {
+                for (int cell = this.from; cell < this.to; cell++) {
+                    Simulation.this.compute(cell);
+                }
+                return;
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new Task(this.from, middle), new Task(middle, this.to));
+        }
+    }
+
+    public enum Scenario {
+        PLAIN(false, false),
+        ENCHANTED(true, false),
+        POTIONS(false, true),
+        ENCHANTED_POTIONS(true, true),
+        ;
+
+        /** Sharpness on the weapon, protection on every armor piece. */
+        final boolean enchanted;
+        /** Strength on the attacker. */
+        final boolean potions;
+
+        Scenario(boolean enchanted, boolean potions) {
+            this.enchanted = enchanted;
+            this.potions = potions;
+        }
+
+        public String getName() {
+            return this.name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Armor pieces as material ordinals, from the helmet to boots.
+     */
+    public static final class ArmorSet {
+        public static final ArmorSet NONE = new ArmorSet("none", new int[] {
+                AIR, AIR, AIR, AIR});
+
+        static final String[] SLOTS = {"_HELMET", "_CHESTPLATE", "_LEGGINGS", "_BOOTS"};
+
+        private final String name;
+        final int[] pieces;
+
+        ArmorSet(String name, int[] pieces) {
+            this.name = Objects.requireNonNull(name, "name");
+            this.pieces = Objects.requireNonNull(pieces, "pieces");
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return {@link #NONE} and full sets of armor pieces in the tag,
+         * grouped by their name prefix, such as {@code diamond}.
+         */
+        public static List<ArmorSet> fromTag(Tag<Material> tag) {
+            Objects.requireNonNull(tag, "tag");
+
+            Map<String, int[]> sets = new LinkedHashMap<>();
+            for (Material material : tag.getValues()) {
+                String name = material.name();
+                for (int slot = 0; slot < SLOTS.length; slot++) {
+                    if (name.endsWith(SLOTS[slot])) {
+                        String prefix = name.substring(0, name.length() - SLOTS[slot].length());
+                        int[] pieces = sets.computeIfAbsent(prefix.toLowerCase(Locale.ROOT), key -> {
+                            int[] empty = new int[SLOTS.length];
+                            Arrays.fill(empty, -1);
+                            return empty;
+                        });
+                        pieces[slot] = material.ordinal();
+                    }
+                }
+            }
+
+            List<ArmorSet> armorSets = new ArrayList<>();
+            armorSets.add(NONE);
+            sets.forEach((name, pieces) -> {
+                if (Arrays.stream(pieces).allMatch(piece -> piece != -1)) {
+                    armorSets.add(new ArmorSet(name, pieces));
+                }
+            });
+
+            return armorSets;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp.tools;
+
+import org.bukkit.Material;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Writes results of a {@link Simulation} as CSV with a row per cell, or as
+ * HTML with a weapon × armor table of time to kill per profile and
+ * scenario.
+ */
+public enum SimulationReport {
+    CSV {
+        @Override
+        public void write(Simulation simulation, PrintWriter out) {
+            Objects.requireNonNull(simulation, "simulation");
+            Objects.requireNonNull(out, "out");
+
+            out.println("profile,weapon,armor,scenario,damage,hits,interval,ttk");
+            forEachCell(simulation, (profile, weapon, armorSet, scenario, cell) -> out.printf(Locale.ROOT,
+                    "%s,%s,%s,%s,%.3f,%d,%d,%.2f%n",
+                    simulation.getProfileNames().get(profile),
+                    key(simulation.getWeapons().get(weapon)),
+                    simulation.getArmorSets().get(armorSet).getName(),
+                    simulation.getScenarios().get(scenario).getName(),
+                    simulation.getDamage(cell),
+                    simulation.getHits(cell),
+                    simulation.getInterval(cell),
+                    simulation.getTimeToKill(cell)));
+        }
+    },
+
+    HTML {
+        @Override
+        public void write(Simulation simulation, PrintWriter out) {
+            Objects.requireNonNull(simulation, "simulation");
+            Objects.requireNonNull(out, "out");
+
+            List<String> profiles = simulation.getProfileNames();
+            List<Material> weapons = simulation.getWeapons();
+            List<Simulation.ArmorSet> armorSets = simulation.getArmorSets();
+            List<Simulation.Scenario> scenarios = simulation.getScenarios();
+
+            out.println("<!DOCTYPE html>");
+            out.println("<html><head><meta charset=\"utf-8\"><title>Time to kill</title>");
+            out.println("<style>table{border-collapse:collapse}td,th{border:1px solid #ccc;padding:2px 6px;text-align:right}</style>");
+            out.println("</head><body>");
+            out.println("<p>Seconds from the first to the killing hit of " + Simulation.HEALTH +
+                    " health, fully charged non-critical hits. Hover for damage per hit.</p>");
+
+            for (int profile = 0; profile < profiles.size(); profile++) {
+                for (int scenario = 0; scenario < scenarios.size(); scenario++) {
+                    out.println("<h2>" + escape(profiles.get(profile)) + " &ndash; " +
+                            scenarios.get(scenario).getName() + "</h2>");
+                    out.print("<table><tr><th></th>");
+                    for (Simulation.ArmorSet armorSet : armorSets) {
+                        out.print("<th>" + escape(armorSet.getName()) + "</th>");
+                    }
+                    out.println("</tr>");
+
+                    for (int weapon = 0; weapon < weapons.size(); weapon++) {
+                        out.print("<tr><th>" + key(weapons.get(weapon)) + "</th>");
+                        for (int armorSet = 0; armorSet < armorSets.size(); armorSet++) {
+                            int cell = simulation.cell(profile, weapon, armorSet, scenario);
+                            out.printf(Locale.ROOT, "<td title=\"%.2f damage, %d hits\">%.2f</td>",
+                                    simulation.getDamage(cell), simulation.getHits(cell), simulation.getTimeToKill(cell));
+                        }
+                        out.println("</tr>");
+                    }
+
+                    out.println("</table>");
+                }
+            }
+
+            out.println("</body></html>");
+        }
+    },
+    ;
+
+    public abstract void write(Simulation simulation, PrintWriter out);
+
+    public static SimulationReport parse(String input) {
+        Objects.requireNonNull(input, "input");
+        return valueOf(input.toUpperCase(Locale.ROOT));
+    }
+
+    static String key(Material material) {
+        return material.name().toLowerCase(Locale.ROOT);
+    }
+
+    static String escape(String input) {
+        return input.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    static void forEachCell(Simulation simulation, CellConsumer consumer) {
+        for (int profile = 0; profile < simulation.getProfileNames().size(); profile++) {
+            for (int weapon = 0; weapon < simulation.getWeapons().size(); weapon++) {
+                for (int armorSet = 0; armorSet < simulation.getArmorSets().size(); armorSet++) {
+                    for (int scenario = 0; scenario < simulation.getScenarios().size(); scenario++) {
+                        consumer.accept(profile, weapon, armorSet, scenario,
+                                simulation.cell(profile, weapon, armorSet, scenario));
+                    }
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface CellConsumer {
+        void accept(int profile, int weapon, int armorSet, int scenario, int cell);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp.tools;
+
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pl.craftserve.pvp.AttackChargeTracker;
+import pl.craftserve.pvp.EntityAccessor;
+import pl.craftserve.pvp.EntityStateStore;
+import pl.craftserve.pvp.HitLog;
+import pl.craftserve.pvp.HitRecorder;
+import pl.craftserve.pvp.IoExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class HitLogTest {
+    private static final String SERVER_VERSION = "v1_16_R3";
+    private static final int SEGMENT_RECORDS = 3;
+
+    private static final UUID PLAYER_ID = UUID.fromString("6f1b2a4e-6a3c-4d6e-9a39-4c8e2f0b7d11");
+    private static final UUID ZOMBIE_ID = UUID.fromString("0d4c7e9a-3b5f-4e1a-8c2d-7f6a5b4c3d2e");
+
+    private static final Material[] ARMOR = {
+            Material.DIAMOND_HELMET,
+            Material.NETHERITE_CHESTPLATE,
+            Material.AIR,
+            Material.TURTLE_HELMET,
+    };
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private IoExecutor ioExecutor;
+    private EntityStateStore store;
+    private AttackChargeTracker charges;
+    private HitRecorder recorder;
+    private HitLog hitLog;
+
+    private Player player;
+    private LivingEntity zombie;
+
+    @Before
+    public void setUp() throws IOException {
+        this.ioExecutor = new IoExecutor("HitLogTest");
+        this.store = new EntityStateStore(4);
+        this.charges = new AttackChargeTracker(stub(Server.class), stub(BukkitScheduler.class), stub(Plugin.class),
+                this.store);
+
+        this.player = entity(Player.class, PLAYER_ID, 1);
+        this.zombie = entity(LivingEntity.class, ZOMBIE_ID, 2);
+        this.store.acquire(this.player.getEntityId());
+
+        EntityAccessor accessor = new TestAccessor();
+        this.recorder = new HitRecorder(stub(BukkitScheduler.class), stub(Plugin.class), this.charges, accessor, 16);
+
+        File directory = this.folder.newFolder("hits");
+        // the material table depends on the API version, sized to rotate after a few records
+        int recordsOffset = new HitLog(this.ioExecutor, this.recorder, directory, Integer.MAX_VALUE, 1,
+                SERVER_VERSION).getRecordsOffset();
+        this.hitLog = new HitLog(this.ioExecutor, this.recorder, directory,
+                recordsOffset + SEGMENT_RECORDS * HitLog.RECORD_SIZE, 16, SERVER_VERSION);
+    }
+
+    @After
+    public void tearDown() {
+        this.ioExecutor.shutdown();
+    }
+
+    @Test
+    public void readsRecordedHits() throws IOException {
+        // charged, then reset by the hit
+        this.hit(this.player, this.zombie, EntityDamageEvent.DamageCause.ENTITY_ATTACK, 7.5D);
+        this.hit(this.player, this.zombie, EntityDamageEvent.DamageCause.ENTITY_ATTACK, 2.25D);
+
+        this.recorder.run();
+        this.hit(this.zombie, this.player, EntityDamageEvent.DamageCause.ENTITY_ATTACK, 3D);
+
+        this.recorder.run();
+        this.hit(this.player, this.zombie, EntityDamageEvent.DamageCause.THORNS, 1D);
+        this.hit(this.player, this.zombie, EntityDamageEvent.DamageCause.ENTITY_SWEEP_ATTACK, 1.5D);
+
+        // a single batch, rotated after the first segment is full
+        this.hitLog.stop();
+        assertEquals(0L, this.recorder.getDropped());
+
+        File[] files = this.folder.getRoot().toPath().resolve("hits").toFile().listFiles();
+        assertNotNull(files);
+        Arrays.sort(files);
+        assertEquals(2, files.length);
+
+        HitSegment first = HitSegment.open(files[0]);
+        HitSegment second = HitSegment.open(files[1]);
+        assertEquals(SERVER_VERSION, first.getServerVersion());
+        assertEquals(SERVER_VERSION, second.getServerVersion());
+        assertEquals(SEGMENT_RECORDS, first.size());
+        assertEquals(2, second.size());
+
+        assertHit(first, 0, 0L, PLAYER_ID, ZOMBIE_ID, Material.DIAMOND_SWORD, 1F, 7.5F);
+        assertHit(first, 1, 0L, PLAYER_ID, ZOMBIE_ID, Material.DIAMOND_SWORD, 0F, 2.25F);
+        assertHit(first, 2, 1L, ZOMBIE_ID, PLAYER_ID, Material.IRON_AXE, HitRecorder.UNKNOWN, 3F);
+        assertHit(second, 0, 2L, PLAYER_ID, ZOMBIE_ID, Material.AIR, HitRecorder.UNKNOWN, 1F);
+        assertHit(second, 1, 2L, PLAYER_ID, ZOMBIE_ID, Material.DIAMOND_SWORD, 0F, 1.5F);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void hit(LivingEntity attacker, LivingEntity victim, EntityDamageEvent.DamageCause cause, double damage) {
+        EntityDamageByEntityEvent event = new EntityDamageByEntityEvent(attacker, victim, cause, damage);
+        // in the order the plugin registers them
+        this.recorder.onEntityDamageByEntity(event);
+        this.charges.onEntityDamageByEntity(event);
+    }
+
+    private static void assertHit(HitSegment segment, int record, long tick, UUID attacker, UUID victim,
+                                  Material weapon, float charge, float damage) {
+        assertEquals(tick, segment.getTick(record));
+        assertEquals(attacker, segment.getAttacker(record));
+        assertEquals(victim, segment.getVictim(record));
+        assertEquals(weapon.ordinal(), segment.getWeapon(record));
+        assertEquals(charge, segment.getCharge(record), 0F);
+        assertEquals(damage, segment.getFinalDamage(record), 0F);
+        assertEquals(damage, segment.getBaseDamage(record), 0F);
+
+        for (int piece = 0; piece < ARMOR.length; piece++) {
+            assertEquals(ARMOR[piece].ordinal(), segment.getArmor(record, piece));
+        }
+    }
+
+    private static <T extends Entity> T entity(Class<T> type, UUID uniqueId, int entityId) {
+        return type.cast(Proxy.newProxyInstance(HitLogTest.class.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUniqueId":
+                            return uniqueId;
+                        case "getEntityId":
+                            return entityId;
+                        case "hashCode":
+                            return entityId;
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return type.getSimpleName() + "#" + entityId;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }));
+    }
+
+    private static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(HitLogTest.class.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                }));
+    }
+
+    /**
+     * Players hold a diamond sword, other entities an iron axe, everyone
+     * wears {@link #ARMOR}.
+     */
+    private static final class TestAccessor implements EntityAccessor {
+        @Override
+        public void getVelocity(Entity entity, double[] velocity, int offset) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getMainHand(LivingEntity entity) {
+            return (entity instanceof Player ? Material.DIAMOND_SWORD : Material.IRON_AXE).ordinal();
+        }
+
+        @Override
+        public void getArmor(LivingEntity entity, int[] armor, int offset) {
+            for (int piece = 0; piece < ARMOR.length; piece++) {
+                armor[offset + piece] = ARMOR[piece].ordinal();
+            }
+        }
+    }
+}
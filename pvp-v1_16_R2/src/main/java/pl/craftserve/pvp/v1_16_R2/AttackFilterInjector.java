@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp.v1_16_R2;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import net.minecraft.server.v1_16_R2.PacketPlayInUseEntity;
+import net.minecraft.server.v1_16_R2.PlayerConnection;
+import org.bukkit.craftbukkit.v1_16_R2.entity.CraftPlayer;
+import org.bukkit.entity.Player;
+import pl.craftserve.pvp.AttackTracker;
+import pl.craftserve.pvp.ConnectionInjector;
+import pl.craftserve.pvp.Injector;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+public class AttackFilterInjector implements ConnectionInjector {
+    static final String HANDLER_NAME = "craftservepvp_attack_filter";
+    static final String PACKET_HANDLER_NAME = "packet_handler";
+
+    @Override
+    public void inject(Player player, AttackTracker tracker) throws Injector.InjectException {
+        Objects.requireNonNull(player, "player");
+        Objects.requireNonNull(tracker, "tracker");
+
+        Channel channel = this.getChannel(player);
+        if (channel == null || !channel.isOpen()) {
+            throw new Injector.InjectException("Connection of " + player.getName() + " is closed.");
+        }
+
+        ChannelPipeline pipeline = channel.pipeline();
+        if (pipeline.get(HANDLER_NAME) != null) {
+            pipeline.remove(HANDLER_NAME);
+        }
+
+        try {
+            pipeline.addBefore(PACKET_HANDLER_NAME, HANDLER_NAME, new Handler(tracker));
+        } catch (IllegalArgumentException | NoSuchElementException e) {
+            throw new Injector.InjectException("Could not inject attack filter for " + player.getName(), e);
+        }
+    }
+
+    @Override
+    public void eject(Player player) {
+        Objects.requireNonNull(player, "player");
+
+        Channel channel = this.getChannel(player);
+        if (channel != null) {
+            // the channel may be closing already, remove on its own thread
+            channel.eventLoop().execute(() -> {
+                ChannelPipeline pipeline = channel.pipeline();
+                if (pipeline.get(HANDLER_NAME) != null) {
+                    pipeline.remove(HANDLER_NAME);
+                }
+            });
+        }
+    }
+
+    private Channel getChannel(Player player) {
+        PlayerConnection connection = ((CraftPlayer) player).getHandle().playerConnection;
+        return connection == null ? null : connection.networkManager.channel;
+    }
+
+    static class Handler extends ChannelDuplexHandler {
+        private final AttackTracker tracker;
+
+        Handler(AttackTracker tracker) {
+            this.tracker = Objects.requireNonNull(tracker, "tracker");
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof PacketPlayInUseEntity &&
+                    ((PacketPlayInUseEntity) msg).b() == PacketPlayInUseEntity.EnumEntityUseAction.ATTACK &&
+                    !this.tracker.record(System.nanoTime())) {
+                return; // dropped, never queued for the main thread
+            }
+
+            super.channelRead(ctx, msg);
+        }
+    }
+}
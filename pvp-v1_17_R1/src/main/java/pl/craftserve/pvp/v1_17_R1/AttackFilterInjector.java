@@ -0,0 +1,179 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp.v1_17_R1;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import net.minecraft.network.NetworkManager;
+import net.minecraft.network.protocol.game.PacketPlayInUseEntity;
+import net.minecraft.server.level.EntityPlayer;
+import net.minecraft.server.network.PlayerConnection;
+import org.bukkit.craftbukkit.v1_17_R1.entity.CraftPlayer;
+import org.bukkit.entity.Player;
+import pl.craftserve.pvp.AttackTracker;
+import pl.craftserve.pvp.ConnectionInjector;
+import pl.craftserve.pvp.Injector;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Fields are looked up by their types, their names are obfuscated in 1.17.
+ * The action of an attack packet is a shared constant, the only static
+ * field of the packet with the type of its action.
+ */
+public class AttackFilterInjector implements ConnectionInjector {
+    static final String HANDLER_NAME = "craftservepvp_attack_filter";
+    static final String PACKET_HANDLER_NAME = "packet_handler";
+
+    private final Field connectionField;
+    private final Field networkManagerField;
+    private final Field channelField;
+    private final Field actionField;
+    private final Object attackAction;
+
+    public AttackFilterInjector() throws NoSuchFieldException, IllegalAccessException {
+        this.connectionField = install(EntityPlayer.class, PlayerConnection.class, false); // EntityPlayer.b
+        this.networkManagerField = install(PlayerConnection.class, NetworkManager.class, false); // PlayerConnection.a
+        this.channelField = install(NetworkManager.class, Channel.class, false); // NetworkManager.k
+
+        Field actionField = null;
+        for (Class<?> nested : PacketPlayInUseEntity.class.getDeclaredClasses()) {
+            if (nested.isInterface()) {
+                try {
+                    actionField = install(PacketPlayInUseEntity.class, nested, false);
+                    break;
+                } catch (NoSuchFieldException ignored) {
+                    // a handler interface, not the action
+                }
+            }
+        }
+
+        if (actionField == null) {
+            throw new NoSuchFieldException("Action field of " + PacketPlayInUseEntity.class.getName() + " not found.");
+        }
+
+        this.actionField = actionField; // PacketPlayInUseEntity.b
+        this.attackAction = install(PacketPlayInUseEntity.class, actionField.getType(), true).get(null); // PacketPlayInUseEntity.d
+    }
+
+    @Override
+    public void inject(Player player, AttackTracker tracker) throws Injector.InjectException {
+        Objects.requireNonNull(player, "player");
+        Objects.requireNonNull(tracker, "tracker");
+
+        Channel channel = this.getChannel(player);
+        if (channel == null || !channel.isOpen()) {
+            throw new Injector.InjectException("Connection of " + player.getName() + " is closed.");
+        }
+
+        ChannelPipeline pipeline = channel.pipeline();
+        if (pipeline.get(HANDLER_NAME) != null) {
+            pipeline.remove(HANDLER_NAME);
+        }
+
+        try {
+            pipeline.addBefore(PACKET_HANDLER_NAME, HANDLER_NAME, new Handler(tracker, this.actionField, this.attackAction));
+        } catch (IllegalArgumentException | NoSuchElementException e) {
+            throw new Injector.InjectException("Could not inject attack filter for " + player.getName(), e);
+        }
+    }
+
+    @Override
+    public void eject(Player player) {
+        Objects.requireNonNull(player, "player");
+
+        Channel channel;
+        try {
+            channel = this.getChannel(player);
+        } catch (Injector.InjectException e) {
+            return;
+        }
+
+        if (channel != null) {
+            // the channel may be closing already, remove on its own thread
+            channel.eventLoop().execute(() -> {
+                ChannelPipeline pipeline = channel.pipeline();
+                if (pipeline.get(HANDLER_NAME) != null) {
+                    pipeline.remove(HANDLER_NAME);
+                }
+            });
+        }
+    }
+
+    private Channel getChannel(Player player) throws Injector.InjectException {
+        try {
+            Object connection = this.connectionField.get(((CraftPlayer) player).getHandle());
+            Object networkManager = connection == null ? null : this.networkManagerField.get(connection);
+            return networkManager == null ? null : (Channel) this.channelField.get(networkManager);
+        } catch (IllegalAccessException e) {
+            throw new Injector.InjectException("Connection of " + player.getName() + " is inaccessible.", e);
+        }
+    }
+
+    /**
+     * @return the only field of the type declared by the class.
+     */
+    static Field install(Class<?> clazz, Class<?> type, boolean isStatic) throws NoSuchFieldException {
+        Objects.requireNonNull(clazz, "clazz");
+        Objects.requireNonNull(type, "type");
+
+        Field found = null;
+        for (Field field : clazz.getDeclaredFields()) {
+            if (field.getType() == type && Modifier.isStatic(field.getModifiers()) == isStatic) {
+                if (found != null) {
+                    throw new NoSuchFieldException(clazz.getName() + " has more than one field of " + type.getName());
+                }
+
+                found = field;
+            }
+        }
+
+        if (found == null) {
+            throw new NoSuchFieldException(clazz.getName() + " has no field of " + type.getName());
+        }
+
+        return V1_17_R1.install(clazz, found.getName());
+    }
+
+    static class Handler extends ChannelDuplexHandler {
+        private final AttackTracker tracker;
+        private final Field actionField;
+        private final Object attackAction;
+
+        Handler(AttackTracker tracker, Field actionField, Object attackAction) {
+            this.tracker = Objects.requireNonNull(tracker, "tracker");
+            this.actionField = Objects.requireNonNull(actionField, "actionField");
+            this.attackAction = Objects.requireNonNull(attackAction, "attackAction");
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof PacketPlayInUseEntity &&
+                    this.actionField.get(msg) == this.attackAction &&
+                    !this.tracker.record(System.nanoTime())) {
+                return; // dropped, never queued for the main thread
+            }
+
+            super.channelRead(ctx, msg);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp.v1_17_R1;
+
+import net.minecraft.core.IRegistry;
+import net.minecraft.resources.MinecraftKey;
+import net.minecraft.world.entity.ai.attributes.AttributeBase;
+import net.minecraft.world.entity.ai.attributes.AttributeRanged;
+import org.bukkit.NamespacedKey;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.craftbukkit.v1_17_R1.util.CraftNamespacedKey;
+import pl.craftserve.pvp.AttributeRangeTransformer;
+import pl.craftserve.pvp.Injector;
+import pl.craftserve.pvp.RangeInjector;
+
+import java.lang.reflect.Field;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class AttributeRangeInjector implements RangeInjector {
+    static final Logger logger = Logger.getLogger(AttributeRangeInjector.class.getName());
+
+    private final Field minimumField;
+    private final Field maximumField;
+
+    public AttributeRangeInjector() throws NoSuchFieldException {
+        this.minimumField = V1_17_R1.install(AttributeRanged.class, "b"); // AttributeRanged.b
+        this.maximumField = V1_17_R1.install(AttributeRanged.class, "c"); // AttributeRanged.c
+    }
+
+    @Override
+    public AttributeRangeTransformer inject(Attribute attribute, AttributeRangeTransformer range) throws Injector.InjectException {
+        Objects.requireNonNull(attribute, "attribute");
+        Objects.requireNonNull(range, "range");
+
+        NamespacedKey attributeKey = attribute.getKey();
+        AttributeRanged nmsAttribute = this.getRangedAttribute(attributeKey);
+
+        logger.log(Level.FINE, "Injecting range for " + attributeKey + ": " + range);
+
+        AttributeRangeTransformer prev = this.convertRange(attributeKey, nmsAttribute);
+
+        Double minimum = range.getMinimum();
+        if (minimum != null) {
+            try {
+                this.minimumField.setDouble(nmsAttribute, minimum);
+            } catch (IllegalAccessException e) {
+                throw new Injector.InjectException("Minimum field for " + attributeKey + " is inaccessible.", e);
+            }
+        }
+
+        Double maximum = range.getMaximum();
+        if (maximum != null) {
+            try {
+                this.maximumField.setDouble(nmsAttribute, maximum);
+            } catch (IllegalAccessException e) {
+                throw new Injector.InjectException("Maximum field for " + attributeKey + " is inaccessible.", e);
+            }
+        }
+
+        return prev;
+    }
+
+    @Override
+    public AttributeRangeTransformer eject(Attribute attribute) throws Injector.InjectException {
+        Objects.requireNonNull(attribute, "attribute");
+
+        NamespacedKey attributeKey = attribute.getKey();
+        return this.convertRange(attributeKey, this.getRangedAttribute(attributeKey));
+    }
+
+    private AttributeRanged getRangedAttribute(NamespacedKey attributeKey) throws Injector.InjectException {
+        Objects.requireNonNull(attributeKey, "attributeKey");
+
+        MinecraftKey minecraftKey = CraftNamespacedKey.toMinecraft(attributeKey);
+        AttributeBase nmsAttribute = IRegistry.al.get(minecraftKey);
+        if (nmsAttribute == null) {
+            throw new Injector.InjectException(attributeKey + " is not an attribute.");
+        } else if (!(nmsAttribute instanceof AttributeRanged)) {
+            throw new Injector.InjectException(attributeKey + " is not a ranged attribute.");
+        }
+
+        return (AttributeRanged) nmsAttribute;
+    }
+
+    private AttributeRangeTransformer convertRange(NamespacedKey attributeKey, AttributeRanged nmsAttribute)
+            throws Injector.InjectException {
+        Objects.requireNonNull(attributeKey, "attributeKey");
+        Objects.requireNonNull(nmsAttribute, "nmsAttribute");
+
+        try {
+            return new AttributeRangeTransformer(this.minimumField.getDouble(nmsAttribute),
+                    this.maximumField.getDouble(nmsAttribute));
+        } catch (IllegalAccessException e) {
+            throw new Injector.InjectException("Range fields for " + attributeKey + " are inaccessible.", e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp.v1_17_R1;
+
+import net.minecraft.world.entity.EntityLiving;
+import net.minecraft.world.entity.EnumItemSlot;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.phys.Vec3D;
+import org.bukkit.craftbukkit.v1_17_R1.entity.CraftEntity;
+import org.bukkit.craftbukkit.v1_17_R1.entity.CraftLivingEntity;
+import org.bukkit.craftbukkit.v1_17_R1.util.CraftMagicNumbers;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import pl.craftserve.pvp.EntityAccessor;
+
+public class CraftEntityAccessor implements EntityAccessor {
+    @Override
+    public void getVelocity(Entity entity, double[] velocity, int offset) {
+        Vec3D motion = ((CraftEntity) entity).getHandle().getMot();
+        velocity[offset] = motion.getX();
+        velocity[offset + 1] = motion.getY();
+        velocity[offset + 2] = motion.getZ();
+    }
+
+    @Override
+    public int getMainHand(LivingEntity entity) {
+        return ordinal(((CraftLivingEntity) entity).getHandle().getEquipment(EnumItemSlot.MAINHAND));
+    }
+
+    @Override
+    public void getArmor(LivingEntity entity, int[] armor, int offset) {
+        EntityLiving handle = ((CraftLivingEntity) entity).getHandle();
+        armor[offset] = ordinal(handle.getEquipment(EnumItemSlot.HEAD));
+        armor[offset + 1] = ordinal(handle.getEquipment(EnumItemSlot.CHEST));
+        armor[offset + 2] = ordinal(handle.getEquipment(EnumItemSlot.LEGS));
+        armor[offset + 3] = ordinal(handle.getEquipment(EnumItemSlot.FEET));
+    }
+
+    // empty stacks hold the air item
+    private static int ordinal(ItemStack item) {
+        return CraftMagicNumbers.getMaterial(item.getItem()).ordinal();
+    }
+}
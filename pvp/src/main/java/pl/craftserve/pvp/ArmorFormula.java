@@ -0,0 +1,75 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Damage reduction of armor, evaluated through {@link ArmorTable}.
+ */
+public enum ArmorFormula {
+    /**
+     * Reduction proportional to armor points, as in 1.8. Toughness and the
+     * damage dealt don't matter.
+     */
+    LEGACY {
+        @Override
+        public double getFactor(double armor, double toughness, double damage, double perPoint, double maximumReduction) {
+            return 1D - Math.min(maximumReduction, Math.max(0D, armor) * perPoint);
+        }
+    },
+
+    /**
+     * Vanilla 1.9+ formula, where high damage breaks through armor unless
+     * it is tough, with configurable reduction per point and its cap.
+     */
+    MODERN {
+        @Override
+        public double getFactor(double armor, double toughness, double damage, double perPoint, double maximumReduction) {
+            double points = Math.max(armor / 5D, armor - damage / (2D + toughness / 4D));
+            return 1D - Math.min(maximumReduction, Math.max(0D, points) * perPoint);
+        }
+
+        @Override
+        public boolean isVanilla(double perPoint, double maximumReduction) {
+            return perPoint == VANILLA_PER_POINT && maximumReduction == VANILLA_MAXIMUM_REDUCTION;
+        }
+    },
+    ;
+
+    static final double VANILLA_PER_POINT = 0.04D;
+    static final double VANILLA_MAXIMUM_REDUCTION = 0.8D;
+
+    /**
+     * @return multiplier of damage after armor.
+     */
+    public abstract double getFactor(double armor, double toughness, double damage, double perPoint, double maximumReduction);
+
+    /**
+     * @return whether the formula with the given settings is the one of
+     * vanilla, so replacing it would only lose precision.
+     */
+    public boolean isVanilla(double perPoint, double maximumReduction) {
+        return false;
+    }
+
+    public static ArmorFormula parse(String input) {
+        Objects.requireNonNull(input, "input");
+        return valueOf(input.toUpperCase(Locale.ROOT));
+    }
+}
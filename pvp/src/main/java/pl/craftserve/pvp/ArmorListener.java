@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageEvent;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replaces the vanilla armor damage modifier with the one of the current
+ * {@link ArmorTable}. Runs after {@link DamagePipeline} has set the final
+ * base damage. The table is bounded by the armor and toughness maximums of
+ * attribute ranges, it is recompiled when transformers change them.
+ *
+ * Modifiers following armor were computed by vanilla from damage left
+ * after vanilla armor, so they are recomputed in vanilla order: resistance
+ * and protection reduce a constant fraction of the damage and are scaled
+ * with it, absorption takes as much of the rest as the victim has.
+ */
+@SuppressWarnings("deprecation") // damage modifiers are the only way to replace armor
+public class ArmorListener implements Listener {
+    static final Logger logger = Logger.getLogger(ArmorListener.class.getName());
+
+    static final double DEFAULT_MAXIMUM_ARMOR = 30D;
+    static final double DEFAULT_MAXIMUM_TOUGHNESS = 20D;
+
+    private final ArmorFormula formula;
+    private final double perPoint;
+    private final double maximumReduction;
+    private final double maximumDamage;
+
+    private int maximumArmor;
+    private int maximumToughness;
+    private volatile ArmorTable table;
+
+    public ArmorListener(ArmorFormula formula, double perPoint, double maximumReduction, double maximumDamage,
+                         Map<Attribute, AttributeRangeTransformer> ranges) {
+        this.formula = Objects.requireNonNull(formula, "formula");
+        this.perPoint = perPoint;
+        this.maximumReduction = maximumReduction;
+        this.maximumDamage = maximumDamage;
+
+        this.maximumArmor = getMaximum(ranges, Attribute.GENERIC_ARMOR, DEFAULT_MAXIMUM_ARMOR);
+        this.maximumToughness = getMaximum(ranges, Attribute.GENERIC_ARMOR_TOUGHNESS, DEFAULT_MAXIMUM_TOUGHNESS);
+        this.table = ArmorTable.compile(formula, perPoint, maximumReduction,
+                this.maximumArmor, this.maximumToughness, maximumDamage);
+    }
+
+    public ArmorTable getTable() {
+        return this.table;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onTransformersChange(TransformersChangeEvent event) {
+        Map<Attribute, AttributeRangeTransformer> ranges = event.getState().getRanges();
+        int maximumArmor = getMaximum(ranges, Attribute.GENERIC_ARMOR, DEFAULT_MAXIMUM_ARMOR);
+        int maximumToughness = getMaximum(ranges, Attribute.GENERIC_ARMOR_TOUGHNESS, DEFAULT_MAXIMUM_TOUGHNESS);
+        if (maximumArmor == this.maximumArmor && maximumToughness == this.maximumToughness) {
+            return;
+        }
+
+        this.maximumArmor = maximumArmor;
+        this.maximumToughness = maximumToughness;
+        this.table = ArmorTable.compile(this.formula, this.perPoint, this.maximumReduction,
+                maximumArmor, maximumToughness, this.maximumDamage);
+
+        logger.log(Level.INFO, "Recompiled armor table for new attribute ranges: " + this.table + ".");
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onEntityDamage(EntityDamageEvent event) {
+        // zero if the cause bypasses armor or there is no armor
+        if (!event.isApplicable(EntityDamageEvent.DamageModifier.ARMOR) ||
+                event.getDamage(EntityDamageEvent.DamageModifier.ARMOR) == 0D) {
+            return;
+        }
+
+        Entity entity = event.getEntity();
+        if (!(entity instanceof LivingEntity)) {
+            return;
+        }
+
+        LivingEntity victim = (LivingEntity) entity;
+        AttributeInstance armor = victim.getAttribute(Attribute.GENERIC_ARMOR);
+        AttributeInstance toughness = victim.getAttribute(Attribute.GENERIC_ARMOR_TOUGHNESS);
+        if (armor == null) {
+            return;
+        }
+
+        // armor applies to damage left after the hard hat and blocking
+        double damage = event.getDamage() +
+                event.getDamage(EntityDamageEvent.DamageModifier.HARD_HAT) +
+                event.getDamage(EntityDamageEvent.DamageModifier.BLOCKING);
+
+        double factor = this.table.getFactor(armor.getValue(), toughness == null ? 0D : toughness.getValue(), damage);
+        double vanillaArmored = damage + event.getDamage(EntityDamageEvent.DamageModifier.ARMOR);
+        double armored = damage * factor;
+        event.setDamage(EntityDamageEvent.DamageModifier.ARMOR, armored - damage);
+
+        double ratio = vanillaArmored <= 0D ? 0D : armored / vanillaArmored;
+        double resistance = scale(event, EntityDamageEvent.DamageModifier.RESISTANCE, ratio);
+        double magic = scale(event, EntityDamageEvent.DamageModifier.MAGIC, ratio);
+
+        if (event.isApplicable(EntityDamageEvent.DamageModifier.ABSORPTION)) {
+            double left = Math.max(armored + resistance + magic, 0D);
+            event.setDamage(EntityDamageEvent.DamageModifier.ABSORPTION, -Math.min(left, victim.getAbsorptionAmount()));
+        }
+    }
+
+    /**
+     * @return the scaled modifier, zero if it is not applicable.
+     */
+    private static double scale(EntityDamageEvent event, EntityDamageEvent.DamageModifier modifier, double ratio) {
+        if (!event.isApplicable(modifier)) {
+            return 0D;
+        }
+
+        double value = event.getDamage(modifier) * ratio;
+        event.setDamage(modifier, value);
+        return value;
+    }
+
+    private static int getMaximum(Map<Attribute, AttributeRangeTransformer> ranges, Attribute attribute, double def) {
+        AttributeRangeTransformer range = ranges.get(attribute);
+        return (int) Math.ceil(range == null || range.getMaximum() == null ? def : range.getMaximum());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * {@link ArmorFormula} precomputed for quantized armor and toughness points
+ * and damage buckets, so hits are reduced with a single array read. Values
+ * outside of the table are evaluated directly. Immutable, replaced as a
+ * whole when settings change.
+ */
+public final class ArmorTable {
+    static final double DAMAGE_STEP = 0.5D;
+    // larger values are evaluated directly instead of growing the table
+    static final int MAXIMUM_POINTS = 100;
+    static final double MAXIMUM_DAMAGE = 256D;
+
+    private final ArmorFormula formula;
+    private final double perPoint;
+    private final double maximumReduction;
+
+    private final int armorSize;
+    private final int toughnessSize;
+    private final int damageSize;
+    private final float[] factors;
+
+    private ArmorTable(ArmorFormula formula, double perPoint, double maximumReduction,
+                       int maximumArmor, int maximumToughness, double maximumDamage) {
+        this.formula = Objects.requireNonNull(formula, "formula");
+        this.perPoint = perPoint;
+        this.maximumReduction = maximumReduction;
+
+        this.armorSize = Math.min(maximumArmor, MAXIMUM_POINTS) + 1;
+        this.toughnessSize = Math.min(maximumToughness, MAXIMUM_POINTS) + 1;
+        this.damageSize = (int) Math.ceil(Math.min(maximumDamage, MAXIMUM_DAMAGE) / DAMAGE_STEP) + 1;
+        this.factors = new float[this.armorSize * this.toughnessSize * this.damageSize];
+
+        int index = 0;
+        for (int armor = 0; armor < this.armorSize; armor++) {
+            for (int toughness = 0; toughness < this.toughnessSize; toughness++) {
+                for (int damage = 0; damage < this.damageSize; damage++) {
+                    this.factors[index++] = (float) formula.getFactor(armor, toughness, damage * DAMAGE_STEP,
+                            perPoint, maximumReduction);
+                }
+            }
+        }
+    }
+
+    public ArmorFormula getFormula() {
+        return this.formula;
+    }
+
+    /**
+     * @return multiplier of the given damage after armor.
+     */
+    public double getFactor(double armor, double toughness, double damage) {
+        int armorIndex = (int) (armor + 0.5D);
+        int toughnessIndex = (int) (toughness + 0.5D);
+        int damageIndex = (int) (damage / DAMAGE_STEP + 0.5D);
+
+        if (armorIndex < 0 || armorIndex >= this.armorSize ||
+                toughnessIndex < 0 || toughnessIndex >= this.toughnessSize ||
+                damageIndex < 0 || damageIndex >= this.damageSize) {
+            return this.formula.getFactor(armor, toughness, damage, this.perPoint, this.maximumReduction);
+        }
+
+        return this.factors[(armorIndex * this.toughnessSize + toughnessIndex) * this.damageSize + damageIndex];
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", ArmorTable.class.getSimpleName() + "[", "]")
+                .add("formula=" + this.formula)
+                .add("perPoint=" + this.perPoint)
+                .add("maximumReduction=" + this.maximumReduction)
+                .add("size=" + this.armorSize + "x" + this.toughnessSize + "x" + this.damageSize)
+                .toString();
+    }
+
+    public static ArmorTable compile(ArmorFormula formula, double perPoint, double maximumReduction,
+                                     int maximumArmor, int maximumToughness, double maximumDamage) {
+        Objects.requireNonNull(formula, "formula");
+        if (perPoint < 0D || maximumReduction < 0D || maximumReduction > 1D) {
+            throw new IllegalArgumentException("Reduction must be between 0 and 1.");
+        } else if (maximumArmor < 0 || maximumToughness < 0 || maximumDamage < 0D) {
+            throw new IllegalArgumentException("Table bounds must not be negative.");
+        }
+
+        return new ArmorTable(formula, perPoint, maximumReduction, maximumArmor, maximumToughness, maximumDamage);
+    }
+}
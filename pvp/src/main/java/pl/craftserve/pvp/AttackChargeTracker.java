@@ -0,0 +1,139 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pl.craftserve.pvp;
+
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Attack cooldown progress of players as of the start of the tick. Vanilla
+ * resets it before the damage event of an attack is called, so it can't be
+ * read from the event. It is zeroed after every melee hit, so further
+ * attacks within the same tick are uncharged, as in vanilla. Stored in an
+ * {@link EntityStateStore} column, the store is locked only while the
+ * column is written.
+ */
+public class AttackChargeTracker implements Listener, Runnable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Server server;
+    private final BukkitScheduler scheduler;
+    private final Plugin plugin;
+    private final EntityStateStore store;
+    private final EntityStateStore.FloatColumn charges;
+
+    private BukkitTask task;
+
+    private int[] rows = new int[INITIAL_CAPACITY];
+    private float[] values = new float[INITIAL_CAPACITY];
+
+    public AttackChargeTracker(Server server, BukkitScheduler scheduler, Plugin plugin, EntityStateStore store) {
+        this.server = Objects.requireNonNull(server, "server");
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+        this.store = Objects.requireNonNull(store, "store");
+        this.charges = store.registerFloat(1F);
+    }
+
+    public void start() {
+        this.task = this.scheduler.runTaskTimer(this.plugin, this, 0L, 1L);
+    }
+
+    public void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+    }
+
+    /**
+     * @return attack cooldown progress from 0 to 1 of the given player, 1
+     * if it isn't known. Main thread only.
+     */
+    public float getCharge(Player player) {
+        int row = this.store.row(player.getEntityId());
+        return row == EntityStateStore.NONE ? 1F : this.charges.get(row);
+    }
+
+    // vanilla resets the cooldown even if the attack is cancelled
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityDamageByEntity(EntityDamageByEntityEvent event) {
+        EntityDamageEvent.DamageCause cause = event.getCause();
+        if (!(event.getDamager() instanceof Player) || (cause != EntityDamageEvent.DamageCause.ENTITY_ATTACK &&
+                cause != EntityDamageEvent.DamageCause.ENTITY_SWEEP_ATTACK)) {
+            return;
+        }
+
+        int row = this.store.row(event.getDamager().getEntityId());
+        if (row == EntityStateStore.NONE) {
+            return;
+        }
+
+        long stamp = this.store.beginWrite();
+        try {
+            this.charges.set(row, 0F);
+        } finally {
+            this.store.endWrite(stamp);
+        }
+    }
+
+    @Override
+    public void run() {
+        EntityStateStore store = this.store;
+
+        int count = 0;
+        for (Player player : this.server.getOnlinePlayers()) {
+            int row = store.row(player.getEntityId());
+            if (row == EntityStateStore.NONE) {
+                continue;
+            }
+
+            if (count == this.rows.length) {
+                this.rows = Arrays.copyOf(this.rows, count * 2);
+                this.values = Arrays.copyOf(this.values, count * 2);
+            }
+
+            this.rows[count] = row;
+            this.values[count] = player.getAttackCooldown();
+            count++;
+        }
+
+        int[] rows = this.rows;
+        float[] values = this.values;
+
+        long stamp = store.beginWrite();
+        try {
+            for (int i = 0; i < count; i++) {
+                this.charges.set(rows[i], values[i]);
+            }
+        } finally {
+            store.endWrite(stamp);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Injects an {@link AttackTracker} into the connection of every player, so
+ * attack packets exceeding the configured rate are dropped or flagged on
+ * the network thread, before they are queued for the main thread. New
+ * violations are reported with an {@link AttackRateViolationEvent} once
+ * per tick.
+ */
+public class AttackFilterListener implements Listener, Runnable {
+    static final Logger logger = Logger.getLogger(AttackFilterListener.class.getName());
+
+    private final Server server;
+    private final BukkitScheduler scheduler;
+    private final Plugin plugin;
+    private final ConnectionInjector injector;
+    private final int maximumCps;
+    private final long minimumInterval;
+    private final boolean drop;
+
+    private final Map<UUID, AttackTracker> trackers = new ConcurrentHashMap<>();
+
+    private BukkitTask task;
+
+    public AttackFilterListener(Server server, BukkitScheduler scheduler, Plugin plugin, ConnectionInjector injector,
+                                int maximumCps, long minimumInterval, boolean drop) {
+        if (maximumCps < 1) {
+            throw new IllegalArgumentException("Maximum CPS must be positive.");
+        } else if (minimumInterval < 0L) {
+            throw new IllegalArgumentException("Minimum interval must not be negative.");
+        }
+
+        this.server = Objects.requireNonNull(server, "server");
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+        this.injector = Objects.requireNonNull(injector, "injector");
+        this.maximumCps = maximumCps;
+        this.minimumInterval = minimumInterval;
+        this.drop = drop;
+    }
+
+    public Optional<AttackTracker> getTracker(Player player) {
+        Objects.requireNonNull(player, "player");
+        return Optional.ofNullable(this.trackers.get(player.getUniqueId()));
+    }
+
+    public void start() {
+        for (Player player : this.server.getOnlinePlayers()) {
+            this.inject(player);
+        }
+
+        this.task = this.scheduler.runTaskTimer(this.plugin, this, 1L, 1L);
+    }
+
+    public void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+
+        for (Player player : this.server.getOnlinePlayers()) {
+            this.eject(player);
+        }
+
+        this.trackers.clear();
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent event) {
+        this.inject(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        this.eject(event.getPlayer());
+    }
+
+    @Override
+    public void run() {
+        if (this.trackers.isEmpty()) {
+            return;
+        }
+
+        PluginManager pluginManager = this.server.getPluginManager();
+        for (Player player : this.server.getOnlinePlayers()) {
+            AttackTracker tracker = this.trackers.get(player.getUniqueId());
+            if (tracker == null) {
+                continue;
+            }
+
+            long violations = tracker.takeViolations();
+            if (violations != 0L) {
+                pluginManager.callEvent(new AttackRateViolationEvent(player, tracker, violations, this.drop));
+            }
+        }
+    }
+
+    private void inject(Player player) {
+        AttackTracker tracker = new AttackTracker(this.maximumCps, this.minimumInterval, this.drop);
+        try {
+            this.injector.inject(player, tracker);
+        } catch (Injector.InjectException e) {
+            logger.log(Level.WARNING, "Could not filter attacks of " + player.getName() + ".", e);
+            return;
+        }
+
+        this.trackers.put(player.getUniqueId(), tracker);
+    }
+
+    private void eject(Player player) {
+        AttackTracker tracker = this.trackers.remove(player.getUniqueId());
+        if (tracker == null) {
+            return;
+        }
+
+        this.injector.eject(player);
+        if (tracker.getViolations() != 0L) {
+            logger.info(player.getName() + " exceeded the attack rate: " + tracker);
+        }
+    }
+}
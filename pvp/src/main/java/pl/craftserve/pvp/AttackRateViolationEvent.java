@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pl.craftserve.pvp;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.player.PlayerEvent;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Called on the main thread at most once per tick for a player whose
+ * attacks exceeded the rate of the attack filter since the previous call.
+ * Attacks are filtered on the network thread, so they were already dropped,
+ * or let through if the filter only flags them.
+ */
+public class AttackRateViolationEvent extends PlayerEvent {
+    private static final HandlerList handlers = new HandlerList();
+
+    private final AttackTracker tracker;
+    private final long violations;
+    private final boolean dropped;
+
+    public AttackRateViolationEvent(Player who, AttackTracker tracker, long violations, boolean dropped) {
+        super(who);
+        this.tracker = Objects.requireNonNull(tracker, "tracker");
+        this.violations = violations;
+        this.dropped = dropped;
+    }
+
+    public AttackTracker getTracker() {
+        return this.tracker;
+    }
+
+    /**
+     * @return violating attacks since the previous event of this player.
+     */
+    public long getViolations() {
+        return this.violations;
+    }
+
+    /**
+     * @return whether violating attacks were dropped, or only flagged.
+     */
+    public boolean isDropped() {
+        return this.dropped;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return handlers;
+    }
+
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", AttackRateViolationEvent.class.getSimpleName() + "[", "]")
+                .add("player=" + this.player.getName())
+                .add("violations=" + this.violations)
+                .add("dropped=" + this.dropped)
+                .toString();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attack rate of a single player, recorded from its network thread. Keeps
+ * a fixed-size ring buffer of attack timestamps to count attacks in the
+ * last second, and a histogram of those counts for percentiles.
+ *
+ * Written only by the connection's event loop. Other threads may read the
+ * statistics, which are then approximate.
+ */
+public final class AttackTracker {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+    private final int maximumCps;
+    private final long minimumInterval;
+    private final boolean drop;
+
+    private final long[] timestamps;
+    private final int mask;
+    private int head;
+    private int count;
+
+    private final int[] histogram;
+    private volatile long attacks;
+    private volatile long violations;
+
+    // only accessed from the main thread
+    private long reportedViolations;
+
+    /**
+     * @param maximumCps attacks per second above which attacks are violations.
+     * @param minimumInterval nanoseconds which must pass between attacks.
+     * @param drop whether violating attacks should be dropped, or only counted.
+     */
+    public AttackTracker(int maximumCps, long minimumInterval, boolean drop) {
+        if (maximumCps < 1) {
+            throw new IllegalArgumentException("Maximum CPS must be positive.");
+        } else if (minimumInterval < 0L) {
+            throw new IllegalArgumentException("Minimum interval must not be negative.");
+        }
+
+        this.maximumCps = maximumCps;
+        this.minimumInterval = minimumInterval;
+        this.drop = drop;
+
+        // enough to count one more than the ceiling
+        int capacity = Integer.highestOneBit(maximumCps) * 2;
+        this.timestamps = new long[capacity];
+        this.mask = capacity - 1;
+        this.histogram = new int[capacity + 1];
+    }
+
+    /**
+     * Records an attack.
+     *
+     * @return {@code false} if the attack should be dropped.
+     */
+    public boolean record(long now) {
+        // forget attacks older than a second
+        while (this.count > 0 && now - this.timestamps[(this.head - this.count) & this.mask] >= SECOND) {
+            this.count--;
+        }
+
+        boolean violation = this.count >= this.maximumCps || (this.count > 0 &&
+                now - this.timestamps[(this.head - 1) & this.mask] < this.minimumInterval);
+
+        if (this.count == this.timestamps.length) {
+            this.count--; // overwrite the oldest one
+        }
+
+        this.timestamps[this.head] = now;
+        this.head = (this.head + 1) & this.mask;
+        this.count++;
+
+        this.histogram[this.count]++;
+        this.attacks++;
+
+        if (violation) {
+            this.violations++;
+            return !this.drop;
+        }
+
+        return true;
+    }
+
+    public long getAttacks() {
+        return this.attacks;
+    }
+
+    public long getViolations() {
+        return this.violations;
+    }
+
+    /**
+     * @return violations since the previous call. Main thread only.
+     */
+    long takeViolations() {
+        long violations = this.violations;
+        long taken = violations - this.reportedViolations;
+        this.reportedViolations = violations;
+        return taken;
+    }
+
+    /**
+     * @param percentile between 0 and 1.
+     * @return attacks per second at the time of an attack, at the given
+     * percentile of all recorded attacks. Values above the buffer size are
+     * counted as the buffer size.
+     */
+    public int getCpsPercentile(double percentile) {
+        if (percentile < 0D || percentile > 1D) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1.");
+        }
+
+        int[] histogram = this.histogram;
+        long total = 0L;
+        for (int value : histogram) {
+            total += value;
+        }
+
+        if (total == 0L) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(percentile * total);
+        long seen = 0L;
+        for (int cps = 0; cps < histogram.length; cps++) {
+            seen += histogram[cps];
+            if (seen >= target && seen > 0L) {
+                return cps;
+            }
+        }
+
+        return histogram.length - 1;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", AttackTracker.class.getSimpleName() + "[", "]")
+                .add("attacks=" + this.attacks)
+                .add("violations=" + this.violations)
+                .add("p50=" + this.getCpsPercentile(0.5D))
+                .add("p95=" + this.getCpsPercentile(0.95D))
+                .add("p99=" + this.getCpsPercentile(0.99D))
+                .toString();
+    }
+}
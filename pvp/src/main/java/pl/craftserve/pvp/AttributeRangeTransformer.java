@@ -0,0 +1,85 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Bounds of a ranged attribute. Vanilla clamps every attribute value (for
+ * example armor to 30) to these bounds, {@code null} keeps the current one.
+ */
+public class AttributeRangeTransformer implements Transformer {
+    private final Double minimum;
+    private final Double maximum;
+
+    public AttributeRangeTransformer(Double minimum, Double maximum) {
+        if (minimum != null && maximum != null && minimum > maximum) {
+            throw new IllegalArgumentException("Minimum (" + minimum + ") is bigger than maximum (" + maximum + ").");
+        }
+
+        this.minimum = minimum;
+        this.maximum = maximum;
+    }
+
+    public Double getMinimum() {
+        return this.minimum;
+    }
+
+    public Double getMaximum() {
+        return this.maximum;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", AttributeRangeTransformer.class.getSimpleName() + "[", "]")
+                .add("minimum=" + this.minimum)
+                .add("maximum=" + this.maximum)
+                .toString();
+    }
+
+    public static AttributeRangeTransformer deserialize(Map<String, Object> map) throws InvalidConfigurationException {
+        Object minimumElement = map.get("minimum");
+        Object maximumElement = map.get("maximum");
+
+        if (minimumElement == null && maximumElement == null) {
+            return null;
+        }
+
+        Double minimum = null;
+        if (minimumElement instanceof Number) {
+            minimum = ((Number) minimumElement).doubleValue();
+        } else if (minimumElement != null) {
+            throw new InvalidConfigurationException("Minimum must be a number.");
+        }
+
+        Double maximum = null;
+        if (maximumElement instanceof Number) {
+            maximum = ((Number) maximumElement).doubleValue();
+        } else if (maximumElement != null) {
+            throw new InvalidConfigurationException("Maximum must be a number.");
+        }
+
+        try {
+            return new AttributeRangeTransformer(minimum, maximum);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidConfigurationException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Player combat settings applied by {@link LegacyCombatListener}, resolved
+ * once so applying them only compares and writes two values.
+ */
+public final class CombatMode {
+    public static final double VANILLA_ATTACK_SPEED = 4D;
+    public static final int VANILLA_MAXIMUM_NO_DAMAGE_TICKS = 20;
+
+    public static final CombatMode VANILLA = new CombatMode(VANILLA_ATTACK_SPEED, VANILLA_MAXIMUM_NO_DAMAGE_TICKS);
+
+    private final double attackSpeed;
+    private final int maximumNoDamageTicks;
+
+    public CombatMode(double attackSpeed, int maximumNoDamageTicks) {
+        if (attackSpeed <= 0D) {
+            throw new IllegalArgumentException("Attack speed must be positive.");
+        } else if (maximumNoDamageTicks < 0) {
+            throw new IllegalArgumentException("Maximum no damage ticks must not be negative.");
+        }
+
+        this.attackSpeed = attackSpeed;
+        this.maximumNoDamageTicks = maximumNoDamageTicks;
+    }
+
+    /**
+     * @return base value of the generic.attack_speed attribute.
+     */
+    public double getAttackSpeed() {
+        return this.attackSpeed;
+    }
+
+    public int getMaximumNoDamageTicks() {
+        return this.maximumNoDamageTicks;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", CombatMode.class.getSimpleName() + "[", "]")
+                .add("attackSpeed=" + this.attackSpeed)
+                .add("maximumNoDamageTicks=" + this.maximumNoDamageTicks)
+                .toString();
+    }
+
+    public static CombatMode deserialize(Map<String, Object> map) throws InvalidConfigurationException {
+        Object attackSpeedElement = map.get("attack-speed");
+        Object noDamageTicksElement = map.get("maximum-no-damage-ticks");
+
+        if (attackSpeedElement == null && noDamageTicksElement == null) {
+            return null;
+        }
+
+        double attackSpeed = VANILLA_ATTACK_SPEED;
+        if (attackSpeedElement instanceof Number && ((Number) attackSpeedElement).doubleValue() > 0D) {
+            attackSpeed = ((Number) attackSpeedElement).doubleValue();
+        } else if (attackSpeedElement != null) {
+            throw new InvalidConfigurationException("Attack-speed must be a positive number.");
+        }
+
+        int maximumNoDamageTicks = VANILLA_MAXIMUM_NO_DAMAGE_TICKS;
+        if (noDamageTicksElement instanceof Integer && (int) noDamageTicksElement >= 0) {
+            maximumNoDamageTicks = (int) noDamageTicksElement;
+        } else if (noDamageTicksElement != null) {
+            throw new InvalidConfigurationException("Maximum-no-damage-ticks must be a non-negative number of ticks.");
+        }
+
+        return new CombatMode(attackSpeed, maximumNoDamageTicks);
+    }
+}
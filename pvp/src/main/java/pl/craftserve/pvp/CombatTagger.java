@@ -0,0 +1,211 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.ImmutableList;
+import org.bukkit.Server;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Projectile;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.projectiles.ProjectileSource;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tags players dealing and receiving damage from other players. Tags are
+ * timers of a {@link TimingWheel} keyed by rows of {@link EntityStateStore},
+ * so refreshing a tag on every hit only relinks the handle, and all tags are
+ * expired by a single task.
+ */
+public class CombatTagger implements Listener, Runnable {
+    static final Logger logger = Logger.getLogger(CombatTagger.class.getName());
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // tags have no state besides their timer, expired ones are just unlinked
+    private static final IntConsumer EXPIRE = handle -> {
+    };
+
+    private final Server server;
+    private final BukkitScheduler scheduler;
+    private final Plugin plugin;
+    private final long duration;
+    private final Punishment punishment;
+    private final List<String> commands;
+
+    private final EntityStateStore store;
+    private final TimingWheel wheel = new TimingWheel(INITIAL_CAPACITY);
+
+    private BukkitTask task;
+
+    public CombatTagger(Server server, BukkitScheduler scheduler, Plugin plugin, EntityStateStore store,
+                        long duration, Punishment punishment, List<String> commands) {
+        this.server = Objects.requireNonNull(server, "server");
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+        this.store = Objects.requireNonNull(store, "store");
+        this.punishment = Objects.requireNonNull(punishment, "punishment");
+        this.commands = ImmutableList.copyOf(Objects.requireNonNull(commands, "commands"));
+
+        if (duration < 1L) {
+            throw new IllegalArgumentException("Duration must be positive.");
+        }
+
+        this.duration = duration;
+    }
+
+    public void start() {
+        this.task = this.scheduler.runTaskTimer(this.plugin, this, 1L, 1L);
+    }
+
+    public void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+    }
+
+    public boolean isTagged(Player player) {
+        Objects.requireNonNull(player, "player");
+
+        int handle = this.store.row(player.getEntityId());
+        return handle != EntityStateStore.NONE && this.wheel.isScheduled(handle);
+    }
+
+    /**
+     * @return ticks until the tag expires, or {@code 0} if not tagged.
+     */
+    public long getRemainingTicks(Player player) {
+        Objects.requireNonNull(player, "player");
+
+        int handle = this.store.row(player.getEntityId());
+        if (handle == EntityStateStore.NONE || !this.wheel.isScheduled(handle)) {
+            return 0L;
+        }
+
+        return this.wheel.getDeadline(handle) - this.wheel.getTick();
+    }
+
+    /**
+     * Tags the player, or refreshes its tag.
+     */
+    public void tag(Player player) {
+        Objects.requireNonNull(player, "player");
+
+        int handle = this.store.row(player.getEntityId());
+        if (handle != EntityStateStore.NONE) {
+            this.wheel.schedule(handle, this.duration);
+        }
+    }
+
+    public void untag(Player player) {
+        Objects.requireNonNull(player, "player");
+
+        int handle = this.store.row(player.getEntityId());
+        if (handle != EntityStateStore.NONE) {
+            this.wheel.cancel(handle);
+        }
+    }
+
+    @Override
+    public void run() {
+        this.wheel.advance(EXPIRE);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityDamageByEntity(EntityDamageByEntityEvent event) {
+        Entity entity = event.getEntity();
+        if (!(entity instanceof Player)) {
+            return;
+        }
+
+        Entity damager = event.getDamager();
+        if (damager instanceof Projectile) {
+            ProjectileSource shooter = ((Projectile) damager).getShooter();
+            damager = shooter instanceof Entity ? (Entity) shooter : null;
+        }
+
+        if (damager instanceof Player && damager != entity) {
+            this.tag((Player) entity);
+            this.tag((Player) damager);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDeath(PlayerDeathEvent event) {
+        this.untag(event.getEntity());
+    }
+
+    // before the row is freed and reused by another player
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onQuit(PlayerQuitEvent event) {
+        Player player = event.getPlayer();
+
+        int handle = this.store.row(player.getEntityId());
+        if (handle == EntityStateStore.NONE) {
+            return;
+        }
+
+        boolean tagged = this.wheel.isScheduled(handle);
+        this.wheel.cancel(handle);
+
+        if (tagged) {
+            this.punish(player);
+        }
+    }
+
+    private void punish(Player player) {
+        logger.info(player.getName() + " logged out during combat.");
+
+        if (this.punishment == Punishment.KILL) {
+            player.setHealth(0D);
+        }
+
+        for (String command : this.commands) {
+            try {
+                this.server.dispatchCommand(this.server.getConsoleSender(), command.replace("{player}", player.getName()));
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Could not dispatch combat log command: " + command, e);
+            }
+        }
+    }
+
+    public enum Punishment {
+        NONE,
+        KILL,
+        ;
+
+        public static Punishment parse(String input) {
+            Objects.requireNonNull(input, "input");
+            return valueOf(input.toUpperCase(Locale.ROOT));
+        }
+    }
+}
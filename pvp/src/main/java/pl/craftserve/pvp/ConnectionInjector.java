@@ -0,0 +1,30 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.entity.Player;
+
+/**
+ * Installs {@link AttackTracker}s into network connections of players, so
+ * attack packets are filtered before they reach the main thread.
+ * Implemented by NMS adapters.
+ */
+public interface ConnectionInjector {
+    void inject(Player player, AttackTracker tracker) throws Injector.InjectException;
+
+    void eject(Player player);
+}
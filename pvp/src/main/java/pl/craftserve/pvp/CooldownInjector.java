@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.Material;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cooldowns are hardcoded in vanilla item behavior, so instead of NMS they
+ * are injected into a table indexed by {@link Material#ordinal()}, which
+ * {@link CooldownListener} reads on every use.
+ */
+public class CooldownInjector implements Injector<CooldownTransformer> {
+    static final Logger logger = Logger.getLogger(CooldownInjector.class.getName());
+
+    static final int VANILLA = -1;
+
+    private final int[] cooldowns = new int[Material.values().length];
+
+    public CooldownInjector() {
+        Arrays.fill(this.cooldowns, VANILLA);
+    }
+
+    /**
+     * @return cooldown in ticks, or {@link #VANILLA} if not transformed.
+     */
+    public int getCooldown(Material material) {
+        return this.cooldowns[material.ordinal()];
+    }
+
+    public boolean isEmpty() {
+        for (int cooldown : this.cooldowns) {
+            if (cooldown != VANILLA) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public CooldownTransformer inject(Material material, CooldownTransformer cooldown) throws InjectException {
+        Objects.requireNonNull(material, "material");
+        Objects.requireNonNull(cooldown, "cooldown");
+
+        if (!material.isItem()) {
+            throw new InjectException(material.getKey() + " is not an item.");
+        }
+
+        logger.log(Level.FINE, "Injecting cooldown for " + material.getKey() + ": " + cooldown);
+
+        CooldownTransformer prev = this.ejectSingle(material);
+
+        Integer ticks = cooldown.getCooldown();
+        this.cooldowns[material.ordinal()] = ticks == null ? VANILLA : ticks;
+        return prev;
+    }
+
+    @Override
+    public Set<CooldownTransformer> eject(Material material) throws InjectException {
+        Objects.requireNonNull(material, "material");
+        return Collections.singleton(this.ejectSingle(material));
+    }
+
+    private CooldownTransformer ejectSingle(Material material) {
+        int ticks = this.cooldowns[material.ordinal()];
+        return new CooldownTransformer(ticks == VANILLA ? null : ticks);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerItemConsumeEvent;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Applies cooldowns from {@link CooldownInjector} through the client-visible
+ * {@link Player#setCooldown(Material, int)}. The server already refuses to
+ * use items on cooldown, so only successful uses have to be handled.
+ *
+ * Vanilla sets its own cooldown (ender pearls, chorus fruits) after the use
+ * event is called, so uses are queued and applied once per tick instead.
+ */
+public class CooldownListener implements Listener, Runnable {
+    private static final Material[] MATERIALS = Material.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final BukkitScheduler scheduler;
+    private final Plugin plugin;
+    private final CooldownInjector injector;
+
+    private BukkitTask task;
+
+    private Player[] pendingPlayers = new Player[INITIAL_CAPACITY];
+    private int[] pendingMaterials = new int[INITIAL_CAPACITY];
+    private int pendingCount;
+
+    public CooldownListener(BukkitScheduler scheduler, Plugin plugin, CooldownInjector injector) {
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+        this.injector = Objects.requireNonNull(injector, "injector");
+    }
+
+    public void start() {
+        this.task = this.scheduler.runTaskTimer(this.plugin, this, 1L, 1L);
+    }
+
+    public void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+
+        this.run();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInteract(PlayerInteractEvent event) {
+        Action action = event.getAction();
+        if (action != Action.RIGHT_CLICK_AIR && action != Action.RIGHT_CLICK_BLOCK) {
+            return;
+        } else if (event.useItemInHand() == Event.Result.DENY) {
+            return;
+        }
+
+        ItemStack item = event.getItem();
+        if (item == null) {
+            return;
+        }
+
+        Player player = event.getPlayer();
+        if (action == Action.RIGHT_CLICK_BLOCK && this.usesBlock(player, event)) {
+            // the block is used instead of the item, such as a chest or door
+            return;
+        }
+
+        Material material = item.getType();
+        if (material.isEdible()) {
+            // handled when consumed
+            return;
+        }
+
+        this.use(player, material);
+    }
+
+    /**
+     * Same as vanilla, sneaking players holding an item don't use blocks.
+     */
+    private boolean usesBlock(Player player, PlayerInteractEvent event) {
+        Block block = event.getClickedBlock();
+        return block != null && block.getType().isInteractable() &&
+                event.useInteractedBlock() != Event.Result.DENY && !player.isSneaking();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onConsume(PlayerItemConsumeEvent event) {
+        this.use(event.getPlayer(), event.getItem().getType());
+    }
+
+    private void use(Player player, Material material) {
+        if (this.injector.getCooldown(material) == CooldownInjector.VANILLA || player.hasCooldown(material)) {
+            return;
+        }
+
+        int index = this.pendingCount;
+        if (index == this.pendingPlayers.length) {
+            this.pendingPlayers = Arrays.copyOf(this.pendingPlayers, index * 2);
+            this.pendingMaterials = Arrays.copyOf(this.pendingMaterials, index * 2);
+        }
+
+        this.pendingPlayers[index] = player;
+        this.pendingMaterials[index] = material.ordinal();
+        this.pendingCount = index + 1;
+    }
+
+    @Override
+    public void run() {
+        Player[] players = this.pendingPlayers;
+        int[] materials = this.pendingMaterials;
+
+        for (int i = 0; i < this.pendingCount; i++) {
+            Player player = players[i];
+            players[i] = null;
+
+            Material material = MATERIALS[materials[i]];
+            int cooldown = this.injector.getCooldown(material);
+            if (cooldown != CooldownInjector.VANILLA && player.isOnline()) {
+                // one tick has already passed since the item was used
+                player.setCooldown(material, Math.max(0, cooldown - 1));
+            }
+        }
+
+        this.pendingCount = 0;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Use cooldown of an item in ticks, {@code null} leaves the vanilla behavior.
+ */
+public class CooldownTransformer implements Transformer {
+    private final Integer cooldown;
+
+    public CooldownTransformer(Integer cooldown) {
+        if (cooldown != null && cooldown < 0) {
+            throw new IllegalArgumentException("Cooldown must not be negative.");
+        }
+
+        this.cooldown = cooldown;
+    }
+
+    public Integer getCooldown() {
+        return this.cooldown;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", CooldownTransformer.class.getSimpleName() + "[", "]")
+                .add("cooldown=" + this.cooldown)
+                .toString();
+    }
+
+    public static CooldownTransformer deserialize(Map<String, Object> map) throws InvalidConfigurationException {
+        Object cooldownElement = map.get("cooldown");
+        if (cooldownElement == null) {
+            return null;
+        } else if (!(cooldownElement instanceof Integer) || (int) cooldownElement < 0) {
+            throw new InvalidConfigurationException("Cooldown must be a non-negative number of ticks.");
+        }
+
+        return new CooldownTransformer((int) cooldownElement);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Projectile;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.projectiles.ProjectileSource;
+
+import java.util.Objects;
+
+/**
+ * A single hit evaluated by {@link DamagePipeline}. There is one context per
+ * pipeline, reused for every hit, so it must not be stored by stages.
+ * Equipment is read through an {@link EntityAccessor}, without item stack
+ * mirrors on supported versions.
+ */
+public final class DamageContext {
+    public static final int HELMET = 0;
+    public static final int CHESTPLATE = 1;
+    public static final int LEGGINGS = 2;
+    public static final int BOOTS = 3;
+
+    static final int AIR = Material.AIR.ordinal();
+
+    private final EntityAccessor accessor;
+    private final Location location = new Location(null, 0D, 0D, 0D);
+    private final int[] armor = new int[4];
+
+    private EntityDamageByEntityEvent event;
+    private EntityDamageEvent.DamageCause cause;
+    private Entity damager;
+    private LivingEntity attacker;
+    private LivingEntity victim;
+    private World world;
+    private boolean located;
+    private int weapon = AIR;
+
+    DamageContext(EntityAccessor accessor) {
+        this.accessor = Objects.requireNonNull(accessor, "accessor");
+    }
+
+    void reset(EntityDamageByEntityEvent event, LivingEntity victim) {
+        this.event = event;
+        this.cause = event.getCause();
+        this.damager = event.getDamager();
+        this.victim = victim;
+
+        if (this.damager instanceof LivingEntity) {
+            this.attacker = (LivingEntity) this.damager;
+        } else if (this.damager instanceof Projectile) {
+            ProjectileSource shooter = ((Projectile) this.damager).getShooter();
+            this.attacker = shooter instanceof LivingEntity ? (LivingEntity) shooter : null;
+        } else {
+            this.attacker = null;
+        }
+
+        this.weapon = AIR;
+        if (this.damager == this.attacker && (this.cause == EntityDamageEvent.DamageCause.ENTITY_ATTACK ||
+                this.cause == EntityDamageEvent.DamageCause.ENTITY_SWEEP_ATTACK)) {
+            this.weapon = this.accessor.getMainHand(this.attacker);
+        }
+
+        this.accessor.getArmor(victim, this.armor, HELMET);
+
+        // CraftBukkit wraps the world of the location in a new reference, only do it when needed
+        this.world = victim.getWorld();
+        this.located = false;
+    }
+
+    void clear() {
+        this.event = null;
+        this.cause = null;
+        this.damager = null;
+        this.attacker = null;
+        this.victim = null;
+        this.world = null;
+        if (this.located) {
+            this.located = false;
+            this.location.setWorld(null);
+        }
+    }
+
+    public EntityDamageByEntityEvent getEvent() {
+        return this.event;
+    }
+
+    public EntityDamageEvent.DamageCause getCause() {
+        return this.cause;
+    }
+
+    /**
+     * @return entity which caused the damage, a projectile for ranged attacks.
+     */
+    public Entity getDamager() {
+        return this.damager;
+    }
+
+    /**
+     * @return living entity responsible for the damage (projectile shooter
+     * for ranged attacks), or {@code null} if there is none.
+     */
+    public LivingEntity getAttacker() {
+        return this.attacker;
+    }
+
+    public LivingEntity getVictim() {
+        return this.victim;
+    }
+
+    public World getWorld() {
+        return this.world;
+    }
+
+    /**
+     * @return location of the victim, must not be modified.
+     */
+    public Location getLocation() {
+        if (!this.located) {
+            this.victim.getLocation(this.location);
+            this.located = true;
+        }
+        return this.location;
+    }
+
+    /**
+     * @return ordinal of the main hand material for melee attacks, or
+     * ordinal of {@link Material#AIR} if there is no weapon.
+     */
+    public int getWeapon() {
+        return this.weapon;
+    }
+
+    public int getArmor(int slot) {
+        return this.armor[slot];
+    }
+
+    /**
+     * @return ordinals of worn armor materials indexed by {@link #HELMET},
+     * {@link #CHESTPLATE}, {@link #LEGGINGS} and {@link #BOOTS}, must not be
+     * modified.
+     */
+    public int[] getArmor() {
+        return this.armor;
+    }
+}
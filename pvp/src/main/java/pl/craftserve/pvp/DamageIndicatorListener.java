@@ -0,0 +1,215 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import net.md_5.bungee.api.ChatMessageType;
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.chat.TextComponent;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Projectile;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.projectiles.ProjectileSource;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Shows damage dealt by players on their action bar. Hits only add up
+ * damage of their attacker, which is sent once per attacker at the start of
+ * the next tick. Components of messages for damage up to
+ * {@link #MAXIMUM_CACHED_DAMAGE} in steps of a tenth of a point, the shown
+ * precision, are built up front and shared. They are still serialized for
+ * every message sent. Indexes of pending attackers are kept in an
+ * {@link EntityStateStore} column, so adding up a hit takes constant time.
+ */
+public class DamageIndicatorListener implements Listener, Runnable {
+    public static final String DAMAGE_PLACEHOLDER = "{damage}";
+    public static final int MAXIMUM_CACHED_DAMAGE = 128;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int STEPS = 10; // per damage point, as shown with one decimal
+
+    private final BukkitScheduler scheduler;
+    private final Plugin plugin;
+    private final EntityStateStore store;
+    private final EntityStateStore.IntColumn pendingIndexes;
+    private final String format;
+    private final BaseComponent[][] messages;
+
+    private BukkitTask task;
+
+    private Player[] pendingAttackers = new Player[INITIAL_CAPACITY];
+    private int[] pendingRows = new int[INITIAL_CAPACITY];
+    private boolean[] pendingAcquired = new boolean[INITIAL_CAPACITY];
+    private double[] pendingDamage = new double[INITIAL_CAPACITY];
+    private int pendingCount;
+
+    /**
+     * @param format message with {@code &} color codes and the
+     * {@link #DAMAGE_PLACEHOLDER}.
+     */
+    public DamageIndicatorListener(BukkitScheduler scheduler, Plugin plugin, EntityStateStore store, String format) {
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+        this.store = Objects.requireNonNull(store, "store");
+        this.pendingIndexes = store.registerInt(EntityStateStore.NONE);
+        this.format = ChatColor.translateAlternateColorCodes('&', Objects.requireNonNull(format, "format"));
+
+        this.messages = new BaseComponent[MAXIMUM_CACHED_DAMAGE * STEPS + 1][];
+        for (int step = 0; step < this.messages.length; step++) {
+            this.messages[step] = this.createMessage((double) step / STEPS);
+        }
+    }
+
+    public void start() {
+        this.task = this.scheduler.runTaskTimer(this.plugin, this, 1L, 1L);
+    }
+
+    public void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+
+        this.clearPending();
+        Arrays.fill(this.pendingAttackers, 0, this.pendingCount, null);
+        this.pendingCount = 0;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityDamageByEntity(EntityDamageByEntityEvent event) {
+        if (!(event.getEntity() instanceof LivingEntity)) {
+            return;
+        }
+
+        Entity damager = event.getDamager();
+        if (damager instanceof Projectile) {
+            ProjectileSource shooter = ((Projectile) damager).getShooter();
+            if (shooter instanceof Player) {
+                this.queue((Player) shooter, event.getFinalDamage());
+            }
+        } else if (damager instanceof Player) {
+            this.queue((Player) damager, event.getFinalDamage());
+        }
+    }
+
+    @Override
+    public void run() {
+        this.clearPending();
+
+        Player[] attackers = this.pendingAttackers;
+        double[] damage = this.pendingDamage;
+
+        for (int i = 0; i < this.pendingCount; i++) {
+            Player attacker = attackers[i];
+            attackers[i] = null;
+
+            // may have quit since the hit
+            if (attacker.isOnline()) {
+                attacker.spigot().sendMessage(ChatMessageType.ACTION_BAR, this.getMessage(damage[i]));
+            }
+        }
+
+        this.pendingCount = 0;
+    }
+
+    private BaseComponent[] getMessage(double damage) {
+        long step = Math.round(damage * STEPS);
+        if (step >= 0L && step < this.messages.length) {
+            return this.messages[(int) step];
+        }
+
+        return this.createMessage(damage);
+    }
+
+    private BaseComponent[] createMessage(double damage) {
+        return TextComponent.fromLegacyText(this.format.replace(DAMAGE_PLACEHOLDER,
+                String.format(Locale.ROOT, "%.1f", damage)));
+    }
+
+    private void queue(Player attacker, double damage) {
+        // players without a row are not tracked by EntityStateListener, such as NPCs
+        int row = this.store.row(attacker.getEntityId());
+        boolean acquired = row == EntityStateStore.NONE;
+        if (acquired) {
+            row = this.store.acquire(attacker.getEntityId());
+        }
+
+        int index = this.pendingIndexes.get(row);
+        if (index != EntityStateStore.NONE) {
+            this.pendingDamage[index] += damage;
+            return;
+        }
+
+        index = this.pendingCount;
+        if (index == this.pendingAttackers.length) {
+            this.pendingAttackers = Arrays.copyOf(this.pendingAttackers, index * 2);
+            this.pendingRows = Arrays.copyOf(this.pendingRows, index * 2);
+            this.pendingAcquired = Arrays.copyOf(this.pendingAcquired, index * 2);
+            this.pendingDamage = Arrays.copyOf(this.pendingDamage, index * 2);
+        }
+
+        this.pendingAttackers[index] = attacker;
+        this.pendingRows[index] = row;
+        this.pendingAcquired[index] = acquired;
+        this.pendingDamage[index] = damage;
+        this.pendingCount = index + 1;
+
+        long stamp = this.store.beginWrite();
+        try {
+            this.pendingIndexes.set(row, index);
+        } finally {
+            this.store.endWrite(stamp);
+        }
+    }
+
+    /**
+     * Resets pending indexes of attackers and frees rows acquired for them.
+     */
+    private void clearPending() {
+        int count = this.pendingCount;
+        if (count == 0) {
+            return;
+        }
+
+        long stamp = this.store.beginWrite();
+        try {
+            for (int i = 0; i < count; i++) {
+                this.pendingIndexes.set(this.pendingRows[i], EntityStateStore.NONE);
+            }
+        } finally {
+            this.store.endWrite(stamp);
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (this.pendingAcquired[i]) {
+                this.pendingAcquired[i] = false;
+                this.store.release(this.pendingAttackers[i].getEntityId());
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.Material;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Injects {@link DamageTransformer}s into a {@link DamageProfile}. Changes
+ * only invalidate the profile, it is compiled once on the next lookup after
+ * a batch of injections and swapped, so {@link DamagePipeline} never sees a
+ * half-applied profile.
+ */
+public class DamageInjector implements Injector<DamageTransformer> {
+    static final Logger logger = Logger.getLogger(DamageInjector.class.getName());
+
+    private final Map<Material, DamageTransformer> transformers = new EnumMap<>(Material.class);
+    private volatile DamageProfile profile = DamageProfile.EMPTY;
+
+    public DamageProfile getProfile() {
+        DamageProfile profile = this.profile;
+        if (profile == null) {
+            synchronized (this.transformers) {
+                profile = this.profile;
+                if (profile == null) {
+                    this.profile = profile = DamageProfile.compile(this.transformers);
+                }
+            }
+        }
+        return profile;
+    }
+
+    @Override
+    public DamageTransformer inject(Material material, DamageTransformer damage) throws InjectException {
+        Objects.requireNonNull(material, "material");
+        Objects.requireNonNull(damage, "damage");
+
+        logger.log(Level.FINE, "Injecting damage for " + material.getKey() + ": " + damage);
+
+        synchronized (this.transformers) {
+            DamageTransformer prev = this.ejectSingle(material);
+            if (damage.isEmpty()) {
+                this.transformers.remove(material);
+            } else {
+                this.transformers.put(material, damage);
+            }
+
+            this.profile = null;
+            return prev;
+        }
+    }
+
+    @Override
+    public Set<DamageTransformer> eject(Material material) throws InjectException {
+        Objects.requireNonNull(material, "material");
+        synchronized (this.transformers) {
+            return Collections.singleton(this.ejectSingle(material));
+        }
+    }
+
+    private DamageTransformer ejectSingle(Material material) {
+        DamageTransformer transformer = this.transformers.get(material);
+        if (transformer == null) {
+            return new DamageTransformer(null, null);
+        }
+
+        return transformer;
+    }
+}
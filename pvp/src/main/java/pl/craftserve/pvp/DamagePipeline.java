@@ -0,0 +1,101 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Evaluates {@link DamageStage}s on every {@link EntityDamageByEntityEvent}
+ * and writes the result back as the base damage, so vanilla armor and
+ * enchantment modifiers are recalculated from it.
+ */
+public class DamagePipeline implements Listener {
+    private final DamageStage[] stages;
+    private final DamageTracer tracer;
+    private final DamageContext context;
+
+    public DamagePipeline(List<DamageStage> stages) {
+        this(stages, null, EntityAccessor.API);
+    }
+
+    /**
+     * @param tracer tracer receiving results of every stage for traced hits,
+     * or {@code null}.
+     * @param accessor accessor reading equipment of the attacker and victim.
+     */
+    public DamagePipeline(List<DamageStage> stages, DamageTracer tracer, EntityAccessor accessor) {
+        Objects.requireNonNull(stages, "stages");
+        this.stages = stages.toArray(new DamageStage[0]);
+        this.tracer = tracer;
+        this.context = new DamageContext(accessor);
+
+        if (tracer != null) {
+            List<String> names = new ArrayList<>(this.stages.length);
+            for (DamageStage stage : this.stages) {
+                names.add(stage.getClass().getSimpleName());
+            }
+
+            tracer.setStageNames(names);
+        }
+    }
+
+    public boolean isEmpty() {
+        return this.stages.length == 0;
+    }
+
+    @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
+    public void onEntityDamageByEntity(EntityDamageByEntityEvent event) {
+        Entity entity = event.getEntity();
+        if (!(entity instanceof LivingEntity)) {
+            return;
+        }
+
+        DamageContext context = this.context;
+        context.reset(event, (LivingEntity) entity);
+
+        try {
+            double damage = event.getDamage();
+            double result = damage;
+            DamageStage[] stages = this.stages;
+            if (this.tracer != null && this.tracer.isTracing()) {
+                for (int i = 0; i < stages.length; i++) {
+                    result = stages[i].apply(context, result);
+                    this.tracer.recordStage(i, result);
+                }
+            } else {
+                for (DamageStage stage : stages) {
+                    result = stage.apply(context, result);
+                }
+            }
+
+            if (result != damage) {
+                event.setDamage(Math.max(0D, result));
+            }
+        } finally {
+            context.clear();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.ImmutableMap;
+import org.bukkit.Material;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * {@link DamageTransformer}s compiled into primitive tables indexed by
+ * {@link Material#ordinal()}. Immutable, lookups don't allocate, box or hash.
+ */
+public final class DamageProfile {
+    private static final int MATERIALS = Material.values().length;
+    private static final int NONE = -1;
+
+    public static final DamageProfile EMPTY = compile(ImmutableMap.of());
+
+    private final boolean empty;
+    private final float[] multipliers;
+
+    // Weapon-vs-armor multipliers are stored in a dense matrix of materials
+    // which actually appear in any damage-against map.
+    private final int[] weaponIndexes;
+    private final int[] armorIndexes;
+    private final int armorCount;
+    private final float[] against;
+
+    private DamageProfile(boolean empty, float[] multipliers,
+                          int[] weaponIndexes, int[] armorIndexes, int armorCount, float[] against) {
+        this.empty = empty;
+        this.multipliers = multipliers;
+        this.weaponIndexes = weaponIndexes;
+        this.armorIndexes = armorIndexes;
+        this.armorCount = armorCount;
+        this.against = against;
+    }
+
+    public boolean isEmpty() {
+        return this.empty;
+    }
+
+    public float getMultiplier(int material) {
+        return this.multipliers[material];
+    }
+
+    public float getAgainst(int weapon, int armor) {
+        int weaponIndex = this.weaponIndexes[weapon];
+        if (weaponIndex == NONE) {
+            return 1F;
+        }
+
+        int armorIndex = this.armorIndexes[armor];
+        if (armorIndex == NONE) {
+            return 1F;
+        }
+
+        return this.against[weaponIndex * this.armorCount + armorIndex];
+    }
+
+    /**
+     * Total multiplier of a hit with the given weapon against the given
+     * armor pieces, all passed as material ordinals.
+     */
+    public float getMultiplier(int weapon, int[] armor) {
+        if (this.empty) {
+            return 1F;
+        }
+
+        float multiplier = this.multipliers[weapon];
+        for (int piece : armor) {
+            multiplier *= this.multipliers[piece] * this.getAgainst(weapon, piece);
+        }
+
+        return multiplier;
+    }
+
+    public static DamageProfile compile(Map<Material, DamageTransformer> transformers) {
+        Objects.requireNonNull(transformers, "transformers");
+
+        float[] multipliers = new float[MATERIALS];
+        Arrays.fill(multipliers, 1F);
+
+        int[] weaponIndexes = new int[MATERIALS];
+        Arrays.fill(weaponIndexes, NONE);
+        int[] armorIndexes = new int[MATERIALS];
+        Arrays.fill(armorIndexes, NONE);
+
+        Set<Material> weapons = new LinkedHashSet<>();
+        Set<Material> armors = new LinkedHashSet<>();
+        transformers.forEach((material, transformer) -> {
+            Float multiplier = transformer.getMultiplier();
+            if (multiplier != null) {
+                multipliers[material.ordinal()] = multiplier;
+            }
+
+            if (!transformer.getAgainst().isEmpty()) {
+                weapons.add(material);
+                armors.addAll(transformer.getAgainst().keySet());
+            }
+        });
+
+        int weaponIndex = 0;
+        for (Material weapon : weapons) {
+            weaponIndexes[weapon.ordinal()] = weaponIndex++;
+        }
+
+        int armorIndex = 0;
+        for (Material armor : armors) {
+            armorIndexes[armor.ordinal()] = armorIndex++;
+        }
+
+        int armorCount = armors.size();
+        float[] against = new float[weapons.size() * armorCount];
+        Arrays.fill(against, 1F);
+
+        for (Material weapon : weapons) {
+            int row = weaponIndexes[weapon.ordinal()] * armorCount;
+            transformers.get(weapon).getAgainst().forEach((armor, multiplier) -> {
+                against[row + armorIndexes[armor.ordinal()]] = multiplier;
+            });
+        }
+
+        boolean empty = transformers.values().stream().allMatch(DamageTransformer::isEmpty);
+        return new DamageProfile(empty, multipliers, weaponIndexes, armorIndexes, armorCount, against);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Per-hit damage rules from {@code rules.yml}, compiled by
+ * {@link RuleCompiler} into a single method handle at load time, so hits
+ * don't interpret them. Immutable, replaced as a whole when reloaded.
+ *
+ * <pre>
+ * rules:
+ * - when: 'weapon is #axes and blocking and world is arena'
+ *   multiply: 1.2
+ * - when: 'critical and world is ranked'
+ *   maximum: 8
+ * </pre>
+ */
+public final class DamageRules {
+    public static final DamageRules EMPTY = new DamageRules(RuleCompiler.IDENTITY, 0);
+
+    private final MethodHandle handle;
+    private final int size;
+
+    private DamageRules(MethodHandle handle, int size) {
+        this.handle = Objects.requireNonNull(handle, "handle");
+        this.size = size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @return {@code (DamageContext, double)double} handle of all rules.
+     */
+    MethodHandle getHandle() {
+        return this.handle;
+    }
+
+    public double apply(DamageContext context, double damage) {
+        try {
+            return (double) this.handle.invokeExact(context, damage);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException(throwable);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", DamageRules.class.getSimpleName() + "[", "]")
+                .add("size=" + this.size)
+                .toString();
+    }
+
+    public static DamageRules load(File file, AttackChargeTracker charges) throws IOException, InvalidConfigurationException {
+        Objects.requireNonNull(file, "file");
+        Objects.requireNonNull(charges, "charges");
+
+        if (!file.exists()) {
+            return EMPTY;
+        }
+
+        YamlConfiguration configuration = new YamlConfiguration();
+        configuration.load(file);
+
+        List<Map<?, ?>> rules = configuration.getMapList("rules");
+
+        MethodHandle handle = RuleCompiler.IDENTITY;
+        for (Map<?, ?> rule : rules) {
+            Object condition = rule.get("when");
+            if (!(condition instanceof String)) {
+                throw new InvalidConfigurationException("Rule requires a when condition.");
+            }
+
+            Map<String, Object> actions = new LinkedHashMap<>();
+            rule.forEach((key, value) -> {
+                if (!"when".equals(key)) {
+                    actions.put(String.valueOf(key), value);
+                }
+            });
+
+            try {
+                handle = RuleCompiler.chain(handle, RuleCompiler.compileRule((String) condition, actions, charges));
+            } catch (InvalidConfigurationException e) {
+                throw new InvalidConfigurationException("Invalid rule: " + condition, e);
+            }
+        }
+
+        return new DamageRules(handle, rules.size());
+    }
+}
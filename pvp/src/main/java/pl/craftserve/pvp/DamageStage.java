@@ -0,0 +1,30 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+/**
+ * A step of {@link DamagePipeline}. Called on the main thread for every hit,
+ * so implementations should not allocate.
+ */
+@FunctionalInterface
+public interface DamageStage {
+    /**
+     * @param damage base damage returned by the previous stage.
+     * @return new base damage.
+     */
+    double apply(DamageContext context, double damage);
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.ImmutableList;
+import org.bukkit.ChatColor;
+import org.bukkit.Server;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controls a {@link DamageTracer} and dumps its records.
+ */
+public class DamageTraceCommand implements TabExecutor {
+    static final List<String> SUBCOMMANDS = ImmutableList.of("rate", "player", "window", "off", "dump");
+    static final int DEFAULT_DUMP = 10;
+
+    private final Server server;
+    private final DamageTracer tracer;
+
+    public DamageTraceCommand(Server server, DamageTracer tracer) {
+        this.server = Objects.requireNonNull(server, "server");
+        this.tracer = Objects.requireNonNull(tracer, "tracer");
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 0) {
+            return false;
+        }
+
+        String argument = args.length > 1 ? args[1] : null;
+        switch (args[0].toLowerCase(Locale.ROOT)) {
+            case "rate":
+                Double rate = parseDouble(argument);
+                if (rate == null || rate < 0D || rate > 1D) {
+                    sender.sendMessage(ChatColor.RED + "Rate must be a number between 0 and 1.");
+                    return true;
+                }
+
+                this.tracer.setRate(rate);
+                sender.sendMessage(ChatColor.GREEN + "Tracing " + rate * 100D + "% of hits.");
+                return true;
+            case "player":
+                if (argument == null || argument.equalsIgnoreCase("off")) {
+                    this.tracer.setTarget(null);
+                    sender.sendMessage(ChatColor.GREEN + "Not tracing any player.");
+                    return true;
+                }
+
+                Player player = this.server.getPlayerExact(argument);
+                if (player == null) {
+                    sender.sendMessage(ChatColor.RED + "Player " + argument + " is offline.");
+                    return true;
+                }
+
+                this.tracer.setTarget(player.getUniqueId());
+                sender.sendMessage(ChatColor.GREEN + "Tracing hits of " + player.getName() + ".");
+                return true;
+            case "window":
+                Double seconds = parseDouble(argument);
+                if (seconds == null || seconds <= 0D) {
+                    sender.sendMessage(ChatColor.RED + "Window must be a positive number of seconds.");
+                    return true;
+                }
+
+                this.tracer.setWindow((long) (seconds * TimeUnit.SECONDS.toMillis(1L)));
+                sender.sendMessage(ChatColor.GREEN + "Tracing all hits for " + seconds + "s.");
+                return true;
+            case "off":
+                this.tracer.disable();
+                sender.sendMessage(ChatColor.GREEN + "Tracing disabled.");
+                return true;
+            case "dump":
+                int limit = DEFAULT_DUMP;
+                if (argument != null) {
+                    try {
+                        limit = Integer.parseInt(argument);
+                    } catch (NumberFormatException e) {
+                        sender.sendMessage(ChatColor.RED + "Count must be a number.");
+                        return true;
+                    }
+                }
+
+                List<DamageTracer.Record> records = this.tracer.getRecords(limit);
+                if (records.isEmpty()) {
+                    sender.sendMessage(ChatColor.YELLOW + "No hits were traced.");
+                    return true;
+                }
+
+                for (DamageTracer.Record record : records) {
+                    sender.sendMessage(ChatColor.GRAY + this.getName(record.getAttackerId()) + " -> " +
+                            this.getName(record.getVictimId()) + ": " + ChatColor.RESET + record);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        List<String> completions = new ArrayList<>();
+        if (args.length == 1) {
+            for (String subcommand : SUBCOMMANDS) {
+                if (subcommand.startsWith(args[0].toLowerCase(Locale.ROOT))) {
+                    completions.add(subcommand);
+                }
+            }
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("player")) {
+            for (Player player : this.server.getOnlinePlayers()) {
+                if (player.getName().toLowerCase(Locale.ROOT).startsWith(args[1].toLowerCase(Locale.ROOT))) {
+                    completions.add(player.getName());
+                }
+            }
+        }
+
+        return completions;
+    }
+
+    private String getName(UUID entityId) {
+        Entity entity = this.server.getEntity(entityId);
+        return entity == null ? entityId.toString() : entity.getName();
+    }
+
+    private static Double parseDouble(String argument) {
+        if (argument == null) {
+            return null;
+        }
+
+        double value;
+        try {
+            value = Double.parseDouble(argument);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        // NaN would pass range checks, infinity would overflow the window
+        return Double.isFinite(value) ? value : null;
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.Material;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.inventory.EntityEquipment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records how damage of sampled hits was computed: raw damage, attributes
+ * of both sides, results of {@link DamagePipeline} stages and vanilla
+ * modifiers (armor, potions, enchantments, absorption) up to the final
+ * damage. Records are written to a preallocated ring buffer, overwriting
+ * the oldest ones.
+ *
+ * Hits are sampled at a rate, for a targeted player, or all of them within
+ * a time window. The tracer is registered as a listener only while
+ * sampling is on, otherwise a hit costs a single branch in the pipeline.
+ *
+ * Must be used from the main thread.
+ */
+public class DamageTracer implements Listener {
+    public static final int MAXIMUM_STAGES = 8;
+
+    static final EntityDamageEvent.DamageModifier[] MODIFIERS = EntityDamageEvent.DamageModifier.values();
+
+    static final int RAW = 0;
+    static final int ATTACK_DAMAGE = 1;
+    static final int ARMOR = 2;
+    static final int ARMOR_TOUGHNESS = 3;
+    static final int FINAL = 4;
+    static final int FIRST_MODIFIER = 5;
+    static final int FIRST_STAGE = FIRST_MODIFIER + MODIFIERS.length;
+    static final int COLUMNS = FIRST_STAGE + MAXIMUM_STAGES;
+
+    private final PluginManager pluginManager;
+    private final Plugin plugin;
+
+    private final int capacity;
+    private final long[] times;
+    private final EntityDamageEvent.DamageCause[] causes;
+    private final EntityType[] attackerTypes;
+    private final UUID[] attackerIds;
+    private final EntityType[] victimTypes;
+    private final UUID[] victimIds;
+    private final Material[] weapons;
+    private final boolean[] cancelled;
+    private final double[] values;
+
+    private int head;
+    private int count;
+
+    private List<String> stageNames = new ArrayList<>();
+
+    // sampling
+    private boolean enabled;
+    private boolean registered;
+    private double rate;
+    private UUID target;
+    private long windowEnd;
+
+    // index of the record of the hit being traced, or -1
+    private int current = -1;
+
+    public DamageTracer(PluginManager pluginManager, Plugin plugin, int capacity) {
+        this.pluginManager = Objects.requireNonNull(pluginManager, "pluginManager");
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+
+        this.capacity = capacity;
+        this.times = new long[capacity];
+        this.causes = new EntityDamageEvent.DamageCause[capacity];
+        this.attackerTypes = new EntityType[capacity];
+        this.attackerIds = new UUID[capacity];
+        this.victimTypes = new EntityType[capacity];
+        this.victimIds = new UUID[capacity];
+        this.weapons = new Material[capacity];
+        this.cancelled = new boolean[capacity];
+        this.values = new double[capacity * COLUMNS];
+    }
+
+    public void setStageNames(List<String> stageNames) {
+        Objects.requireNonNull(stageNames, "stageNames");
+        this.stageNames = new ArrayList<>(stageNames.subList(0, Math.min(MAXIMUM_STAGES, stageNames.size())));
+    }
+
+    /**
+     * @param rate fraction of all hits to trace, 0 to disable sampling.
+     */
+    public void setRate(double rate) {
+        if (rate < 0D || rate > 1D) {
+            throw new IllegalArgumentException("Rate must be between 0 and 1.");
+        }
+
+        this.rate = rate;
+        this.update();
+    }
+
+    /**
+     * @param target player whose hits and received hits should be traced,
+     * {@code null} to disable.
+     */
+    public void setTarget(UUID target) {
+        this.target = target;
+        this.update();
+    }
+
+    /**
+     * @param duration milliseconds, for which every hit should be traced.
+     */
+    public void setWindow(long duration) {
+        long now = System.currentTimeMillis();
+        if (duration <= 0L) {
+            this.windowEnd = 0L;
+        } else {
+            this.windowEnd = duration > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + duration;
+        }
+        this.update();
+    }
+
+    public void disable() {
+        this.rate = 0D;
+        this.target = null;
+        this.windowEnd = 0L;
+        this.update();
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * @return whether the hit currently being evaluated is traced.
+     */
+    public boolean isTracing() {
+        return this.current != -1;
+    }
+
+    void recordStage(int stage, double damage) {
+        if (stage < MAXIMUM_STAGES) {
+            this.values[this.current * COLUMNS + FIRST_STAGE + stage] = damage;
+        }
+    }
+
+    private void update() {
+        this.enabled = this.rate > 0D || this.target != null || this.windowEnd != 0L;
+
+        // unregistering while the event is called is safe, handlers are baked into an array
+        if (this.enabled && !this.registered) {
+            this.pluginManager.registerEvents(this, this.plugin);
+            this.registered = true;
+        } else if (!this.enabled && this.registered) {
+            HandlerList.unregisterAll(this);
+            this.registered = false;
+            this.current = -1;
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onDamageStart(EntityDamageByEntityEvent event) {
+        if (!this.enabled) {
+            return;
+        }
+
+        this.current = -1;
+
+        Entity damager = event.getDamager();
+        Entity victim = event.getEntity();
+        if (!this.shouldTrace(damager, victim)) {
+            return;
+        }
+
+        int index = this.head;
+        this.head = (this.head + 1) % this.capacity;
+        this.count = Math.min(this.count + 1, this.capacity);
+        this.current = index;
+
+        int offset = index * COLUMNS;
+        Arrays.fill(this.values, offset, offset + COLUMNS, Double.NaN);
+
+        this.times[index] = System.currentTimeMillis();
+        this.causes[index] = event.getCause();
+        this.attackerTypes[index] = damager.getType();
+        this.attackerIds[index] = damager.getUniqueId();
+        this.victimTypes[index] = victim.getType();
+        this.victimIds[index] = victim.getUniqueId();
+        this.weapons[index] = null;
+        this.values[offset + RAW] = event.getDamage();
+
+        if (damager instanceof LivingEntity) {
+            LivingEntity attacker = (LivingEntity) damager;
+            this.values[offset + ATTACK_DAMAGE] = value(attacker, Attribute.GENERIC_ATTACK_DAMAGE);
+
+            EntityEquipment equipment = attacker.getEquipment();
+            if (equipment != null) {
+                ItemStack weapon = equipment.getItemInMainHand();
+                this.weapons[index] = weapon.getType();
+            }
+        }
+
+        if (victim instanceof LivingEntity) {
+            this.values[offset + ARMOR] = value((LivingEntity) victim, Attribute.GENERIC_ARMOR);
+            this.values[offset + ARMOR_TOUGHNESS] = value((LivingEntity) victim, Attribute.GENERIC_ARMOR_TOUGHNESS);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDamageEnd(EntityDamageByEntityEvent event) {
+        int index = this.current;
+        if (index == -1) {
+            return;
+        }
+
+        this.current = -1;
+
+        int offset = index * COLUMNS;
+        for (EntityDamageEvent.DamageModifier modifier : MODIFIERS) {
+            if (event.isApplicable(modifier)) {
+                this.values[offset + FIRST_MODIFIER + modifier.ordinal()] = event.getDamage(modifier);
+            }
+        }
+
+        this.values[offset + FINAL] = event.getFinalDamage();
+        this.cancelled[index] = event.isCancelled();
+    }
+
+    private boolean shouldTrace(Entity damager, Entity victim) {
+        UUID target = this.target;
+        if (target != null && (target.equals(damager.getUniqueId()) || target.equals(victim.getUniqueId()))) {
+            return true;
+        }
+
+        if (this.windowEnd != 0L) {
+            if (System.currentTimeMillis() < this.windowEnd) {
+                return true;
+            }
+
+            this.windowEnd = 0L;
+            this.update();
+        }
+
+        return this.rate > 0D && ThreadLocalRandom.current().nextDouble() < this.rate;
+    }
+
+    /**
+     * @return the given number of the most recent records, oldest first.
+     */
+    public List<Record> getRecords(int limit) {
+        int size = Math.min(Math.max(0, limit), this.count);
+
+        List<Record> records = new ArrayList<>(size);
+        for (int i = size; i > 0; i--) {
+            int index = Math.floorMod(this.head - i, this.capacity);
+            if (index == this.current) {
+                continue; // still being evaluated
+            }
+
+            records.add(new Record(index));
+        }
+
+        return records;
+    }
+
+    private static double value(LivingEntity entity, Attribute attribute) {
+        AttributeInstance instance = entity.getAttribute(attribute);
+        return instance == null ? Double.NaN : instance.getValue();
+    }
+
+    /**
+     * Copy of a single record.
+     */
+    public final class Record {
+        private final long time;
+        private final EntityDamageEvent.DamageCause cause;
+        private final EntityType attackerType;
+        private final UUID attackerId;
+        private final EntityType victimType;
+        private final UUID victimId;
+        private final Material weapon;
+        private final boolean cancelled;
+        private final double[] values;
+
+        private Record(int index) {
+            DamageTracer tracer = DamageTracer.this;
+            this.time = tracer.times[index];
+            this.cause = tracer.causes[index];
+            this.attackerType = tracer.attackerTypes[index];
+            this.attackerId = tracer.attackerIds[index];
+            this.victimType = tracer.victimTypes[index];
+            this.victimId = tracer.victimIds[index];
+            this.weapon = tracer.weapons[index];
+            this.cancelled = tracer.cancelled[index];
+            this.values = Arrays.copyOfRange(tracer.values, index * COLUMNS, (index + 1) * COLUMNS);
+        }
+
+        public long getTime() {
+            return this.time;
+        }
+
+        public EntityDamageEvent.DamageCause getCause() {
+            return this.cause;
+        }
+
+        public EntityType getAttackerType() {
+            return this.attackerType;
+        }
+
+        public UUID getAttackerId() {
+            return this.attackerId;
+        }
+
+        public EntityType getVictimType() {
+            return this.victimType;
+        }
+
+        public UUID getVictimId() {
+            return this.victimId;
+        }
+
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        public double getRawDamage() {
+            return this.values[RAW];
+        }
+
+        public double getFinalDamage() {
+            return this.values[FINAL];
+        }
+
+        /**
+         * @return value of the modifier, or {@link Double#NaN} if it didn't apply.
+         */
+        public double getModifier(EntityDamageEvent.DamageModifier modifier) {
+            Objects.requireNonNull(modifier, "modifier");
+            return this.values[FIRST_MODIFIER + modifier.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner stages = new StringJoiner(", ", "[", "]");
+            List<String> stageNames = DamageTracer.this.stageNames;
+            for (int i = 0; i < stageNames.size(); i++) {
+                stages.add(stageNames.get(i) + "=" + format(this.values[FIRST_STAGE + i]));
+            }
+
+            StringJoiner modifiers = new StringJoiner(", ", "[", "]");
+            for (EntityDamageEvent.DamageModifier modifier : MODIFIERS) {
+                double value = this.values[FIRST_MODIFIER + modifier.ordinal()];
+                if (!Double.isNaN(value) && (value != 0D || modifier == EntityDamageEvent.DamageModifier.BASE)) {
+                    modifiers.add(modifier.name().toLowerCase(Locale.ROOT) + "=" + format(value));
+                }
+            }
+
+            return new StringJoiner(", ", Record.class.getSimpleName() + "[", "]")
+                    .add("time=" + this.time)
+                    .add("cause=" + this.cause)
+                    .add("attacker=" + this.attackerType + "/" + this.attackerId)
+                    .add("victim=" + this.victimType + "/" + this.victimId)
+                    .add("weapon=" + this.weapon)
+                    .add("raw=" + format(this.values[RAW]))
+                    .add("attackDamage=" + format(this.values[ATTACK_DAMAGE]))
+                    .add("armor=" + format(this.values[ARMOR]))
+                    .add("armorToughness=" + format(this.values[ARMOR_TOUGHNESS]))
+                    .add("stages=" + stages)
+                    .add("modifiers=" + modifiers)
+                    .add("final=" + format(this.values[FINAL]))
+                    .add("cancelled=" + this.cancelled)
+                    .toString();
+        }
+
+        private String format(double value) {
+            return Double.isNaN(value) ? "-" : String.format("%.3f", value);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.ImmutableMap;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.configuration.InvalidConfigurationException;
+
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Per-hit damage multipliers evaluated by {@link DamagePipeline}. The
+ * multiplier of a weapon scales dealt damage, the multiplier of worn armor
+ * scales received damage. Weapons can also define multipliers against
+ * specific armor pieces.
+ */
+public class DamageTransformer implements Transformer {
+    private final Float multiplier;
+    private final Map<Material, Float> against;
+
+    public DamageTransformer(Float multiplier, Map<Material, Float> against) {
+        this.multiplier = multiplier;
+        this.against = against == null ? ImmutableMap.of() : ImmutableMap.copyOf(against);
+    }
+
+    public Float getMultiplier() {
+        return this.multiplier;
+    }
+
+    public Map<Material, Float> getAgainst() {
+        return this.against;
+    }
+
+    public boolean isEmpty() {
+        return this.multiplier == null && this.against.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", DamageTransformer.class.getSimpleName() + "[", "]")
+                .add("multiplier=" + this.multiplier)
+                .add("against=" + this.against)
+                .toString();
+    }
+
+    public static DamageTransformer deserialize(Map<String, Object> map) throws InvalidConfigurationException {
+        Object multiplierElement = map.get("damage-multiplier");
+        Object againstElement = map.get("damage-against");
+
+        if (multiplierElement == null && againstElement == null) {
+            return null;
+        }
+
+        Float multiplier = null;
+        if (multiplierElement instanceof Number) {
+            multiplier = ((Number) multiplierElement).floatValue();
+        } else if (multiplierElement != null) {
+            throw new InvalidConfigurationException("Damage-multiplier must be a number.");
+        }
+
+        ImmutableMap.Builder<Material, Float> against = ImmutableMap.builder();
+        if (againstElement instanceof Map<?, ?>) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) againstElement).entrySet()) {
+                NamespacedKey key = PvpPlugin.parseKey(String.valueOf(entry.getKey()));
+
+                Material material = Registry.MATERIAL.get(key);
+                if (material == null) {
+                    throw new InvalidConfigurationException("Invalid material: " + key);
+                }
+
+                Object value = entry.getValue();
+                if (!(value instanceof Number)) {
+                    throw new InvalidConfigurationException("Damage multiplier against " + key + " must be a number.");
+                }
+
+                against.put(material, ((Number) value).floatValue());
+            }
+        } else if (againstElement != null) {
+            throw new InvalidConfigurationException("Damage-against must be a map.");
+        }
+
+        return new DamageTransformer(multiplier, against.build());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.Material;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.inventory.EntityEquipment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.Vector;
+
+import java.util.Arrays;
+
+/**
+ * Reads entity state on hot paths without the copies made by the Bukkit
+ * API, such as a new {@link Vector} for every velocity or an item stack
+ * mirror for every equipment slot. Implemented by NMS adapters,
+ * {@link #API} falls back to the Bukkit API on other versions.
+ */
+public interface EntityAccessor {
+    EntityAccessor API = new Api();
+
+    /**
+     * Writes x, y and z of the velocity to the array from the offset.
+     */
+    void getVelocity(Entity entity, double[] velocity, int offset);
+
+    /**
+     * @return ordinal of the main hand material, or ordinal of
+     * {@link Material#AIR} if the hand is empty.
+     */
+    int getMainHand(LivingEntity entity);
+
+    /**
+     * Writes ordinals of the helmet, chestplate, leggings and boots
+     * materials to the array from the offset, ordinal of
+     * {@link Material#AIR} for empty slots.
+     */
+    void getArmor(LivingEntity entity, int[] armor, int offset);
+
+    final class Api implements EntityAccessor {
+        private Api() {
+        }
+
+        @Override
+        public void getVelocity(Entity entity, double[] velocity, int offset) {
+            Vector vector = entity.getVelocity();
+            velocity[offset] = vector.getX();
+            velocity[offset + 1] = vector.getY();
+            velocity[offset + 2] = vector.getZ();
+        }
+
+        @Override
+        public int getMainHand(LivingEntity entity) {
+            EntityEquipment equipment = entity.getEquipment();
+            return equipment == null ? Material.AIR.ordinal() : ordinal(equipment.getItemInMainHand());
+        }
+
+        @Override
+        public void getArmor(LivingEntity entity, int[] armor, int offset) {
+            EntityEquipment equipment = entity.getEquipment();
+            if (equipment == null) {
+                Arrays.fill(armor, offset, offset + 4, Material.AIR.ordinal());
+                return;
+            }
+
+            armor[offset] = ordinal(equipment.getHelmet());
+            armor[offset + 1] = ordinal(equipment.getChestplate());
+            armor[offset + 2] = ordinal(equipment.getLeggings());
+            armor[offset + 3] = ordinal(equipment.getBoots());
+        }
+
+        private static int ordinal(ItemStack item) {
+            return item == null ? Material.AIR.ordinal() : item.getType().ordinal();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.Objects;
+
+/**
+ * Assigns rows of {@link EntityStateStore} to players before any other
+ * listener handles their join, and frees them after every other listener
+ * has handled their quit.
+ */
+public class EntityStateListener implements Listener {
+    private final Server server;
+    private final EntityStateStore store;
+
+    public EntityStateListener(Server server, EntityStateStore store) {
+        this.server = Objects.requireNonNull(server, "server");
+        this.store = Objects.requireNonNull(store, "store");
+    }
+
+    public void start() {
+        for (Player player : this.server.getOnlinePlayers()) {
+            this.store.acquire(player.getEntityId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent event) {
+        this.store.acquire(event.getPlayer().getEntityId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        this.store.release(event.getPlayer().getEntityId());
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Per-entity state of features, keyed by entity id. Ids map to stable rows
+ * through an open addressing table, features register primitive columns
+ * indexed by row, so per-hit state needs neither boxing nor hash maps.
+ *
+ * Only the main thread may acquire and release rows or write columns, the
+ * latter between {@link #beginWrite()} and {@link #endWrite(long)}. The
+ * main thread may read without locking. Other threads read optimistically:
+ *
+ * <pre>{@code
+ * long stamp = store.tryOptimisticRead();
+ * long value = column.get(store.row(entityId));
+ * if (!store.validate(stamp)) {
+ *     stamp = store.readLock();
+ *     try {
+ *         value = column.get(store.row(entityId));
+ *     } finally {
+ *         store.unlockRead(stamp);
+ *     }
+ * }
+ * }</pre>
+ */
+public final class EntityStateStore {
+    public static final int NONE = -1;
+
+    private static final int EMPTY = 0;
+
+    private final StampedLock lock = new StampedLock();
+    private final List<Column> columns = new ArrayList<>();
+
+    // row + 1 per slot, so zeroed arrays are empty
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    private int rowCapacity;
+    private int nextRow;
+    private int[] freeRows;
+    private int freeCount;
+
+    public EntityStateStore(int initialCapacity) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("Initial capacity must be positive.");
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(2, initialCapacity * 2 - 1)) * 2;
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+
+        this.rowCapacity = initialCapacity;
+        this.freeRows = new int[initialCapacity];
+    }
+
+    public LongColumn registerLong(long defaultValue) {
+        return this.register(new LongColumn(this.rowCapacity, defaultValue));
+    }
+
+    public IntColumn registerInt(int defaultValue) {
+        return this.register(new IntColumn(this.rowCapacity, defaultValue));
+    }
+
+    public FloatColumn registerFloat(float defaultValue) {
+        return this.register(new FloatColumn(this.rowCapacity, defaultValue));
+    }
+
+    private <T extends Column> T register(T column) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.columns.add(column);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+
+        return column;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return row of the entity, or {@link #NONE} if it has none.
+     */
+    public int row(int entityId) {
+        int[] keys = this.keys;
+        int[] values = this.values;
+        // both may be replaced under readers which haven't validated yet
+        int mask = Math.min(keys.length, values.length) - 1;
+
+        int index = hash(entityId) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            int value = values[index];
+            if (value == EMPTY) {
+                return NONE;
+            } else if (keys[index] == entityId) {
+                return value - 1;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        return NONE;
+    }
+
+    /**
+     * @return row of the entity, assigned if it had none. Main thread only.
+     */
+    public int acquire(int entityId) {
+        int row = this.row(entityId);
+        if (row != NONE) {
+            return row;
+        }
+
+        long stamp = this.lock.writeLock();
+        try {
+            row = this.freeCount > 0 ? this.freeRows[--this.freeCount] : this.nextRow++;
+            if (row == this.rowCapacity) {
+                this.rowCapacity *= 2;
+                for (Column column : this.columns) {
+                    column.grow(this.rowCapacity);
+                }
+            }
+
+            if ((this.size + 1) * 2 > this.keys.length) {
+                this.rehash(this.keys.length * 2);
+            }
+
+            this.insert(entityId, row);
+            this.size++;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+
+        return row;
+    }
+
+    /**
+     * Frees the row of the entity and resets its columns. Main thread only.
+     */
+    public void release(int entityId) {
+        long stamp = this.lock.writeLock();
+        try {
+            int index = hash(entityId) & this.mask;
+            while (this.values[index] != EMPTY) {
+                if (this.keys[index] == entityId) {
+                    int row = this.values[index] - 1;
+                    this.remove(index);
+                    this.size--;
+
+                    for (Column column : this.columns) {
+                        column.reset(row);
+                    }
+
+                    if (this.freeCount == this.freeRows.length) {
+                        this.freeRows = Arrays.copyOf(this.freeRows, this.freeCount * 2);
+                    }
+                    this.freeRows[this.freeCount++] = row;
+                    return;
+                }
+
+                index = (index + 1) & this.mask;
+            }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    public long beginWrite() {
+        return this.lock.writeLock();
+    }
+
+    public void endWrite(long stamp) {
+        this.lock.unlockWrite(stamp);
+    }
+
+    public long tryOptimisticRead() {
+        return this.lock.tryOptimisticRead();
+    }
+
+    public boolean validate(long stamp) {
+        return this.lock.validate(stamp);
+    }
+
+    public long readLock() {
+        return this.lock.readLock();
+    }
+
+    public void unlockRead(long stamp) {
+        this.lock.unlockRead(stamp);
+    }
+
+    private void insert(int entityId, int row) {
+        int index = hash(entityId) & this.mask;
+        while (this.values[index] != EMPTY) {
+            index = (index + 1) & this.mask;
+        }
+
+        this.keys[index] = entityId;
+        this.values[index] = row + 1;
+    }
+
+    /**
+     * Backward shift deletion, keeps probe sequences intact without
+     * tombstones.
+     */
+    private void remove(int index) {
+        int gap = index;
+        int next = (gap + 1) & this.mask;
+        while (this.values[next] != EMPTY) {
+            int home = hash(this.keys[next]) & this.mask;
+            if (((next - home) & this.mask) >= ((next - gap) & this.mask)) {
+                this.keys[gap] = this.keys[next];
+                this.values[gap] = this.values[next];
+                gap = next;
+            }
+
+            next = (next + 1) & this.mask;
+        }
+
+        this.keys[gap] = 0;
+        this.values[gap] = EMPTY;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != EMPTY) {
+                this.insert(oldKeys[i], oldValues[i] - 1);
+            }
+        }
+    }
+
+    private static int hash(int entityId) {
+        int hash = entityId * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    abstract static class Column {
+        abstract void grow(int capacity);
+
+        abstract void reset(int row);
+    }
+
+    public static final class LongColumn extends Column {
+        private final long defaultValue;
+        private long[] values;
+
+        LongColumn(int capacity, long defaultValue) {
+            this.defaultValue = defaultValue;
+            this.values = new long[capacity];
+            Arrays.fill(this.values, defaultValue);
+        }
+
+        /**
+         * @return value of the row, or the default value if the row is
+         * {@link #NONE} or out of bounds.
+         */
+        public long get(int row) {
+            long[] values = this.values;
+            return row >= 0 && row < values.length ? values[row] : this.defaultValue;
+        }
+
+        public void set(int row, long value) {
+            this.values[row] = value;
+        }
+
+        @Override
+        void grow(int capacity) {
+            int length = this.values.length;
+            long[] values = Arrays.copyOf(this.values, capacity);
+            Arrays.fill(values, length, capacity, this.defaultValue);
+            this.values = values;
+        }
+
+        @Override
+        void reset(int row) {
+            this.values[row] = this.defaultValue;
+        }
+    }
+
+    public static final class IntColumn extends Column {
+        private final int defaultValue;
+        private int[] values;
+
+        IntColumn(int capacity, int defaultValue) {
+            this.defaultValue = defaultValue;
+            this.values = new int[capacity];
+            Arrays.fill(this.values, defaultValue);
+        }
+
+        /**
+         * @return value of the row, or the default value if the row is
+         * {@link #NONE} or out of bounds.
+         */
+        public int get(int row) {
+            int[] values = this.values;
+            return row >= 0 && row < values.length ? values[row] : this.defaultValue;
+        }
+
+        public void set(int row, int value) {
+            this.values[row] = value;
+        }
+
+        @Override
+        void grow(int capacity) {
+            int length = this.values.length;
+            int[] values = Arrays.copyOf(this.values, capacity);
+            Arrays.fill(values, length, capacity, this.defaultValue);
+            this.values = values;
+        }
+
+        @Override
+        void reset(int row) {
+            this.values[row] = this.defaultValue;
+        }
+    }
+
+    public static final class FloatColumn extends Column {
+        private final float defaultValue;
+        private float[] values;
+
+        FloatColumn(int capacity, float defaultValue) {
+            this.defaultValue = defaultValue;
+            this.values = new float[capacity];
+            Arrays.fill(this.values, defaultValue);
+        }
+
+        /**
+         * @return value of the row, or the default value if the row is
+         * {@link #NONE} or out of bounds.
+         */
+        public float get(int row) {
+            float[] values = this.values;
+            return row >= 0 && row < values.length ? values[row] : this.defaultValue;
+        }
+
+        public void set(int row, float value) {
+            this.values[row] = value;
+        }
+
+        @Override
+        void grow(int capacity) {
+            int length = this.values.length;
+            float[] values = Arrays.copyOf(this.values, capacity);
+            Arrays.fill(values, length, capacity, this.defaultValue);
+            this.values = values;
+        }
+
+        @Override
+        void reset(int row) {
+            this.values[row] = this.defaultValue;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.ImmutableMap;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageByBlockEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Explosion damage of end crystals, TNT and other exploding entities, and
+ * of exploding blocks (beds and respawn anchors). Multiplies it per type of
+ * the exploding entity, or by a single multiplier for blocks.
+ *
+ * Exploding blocks are removed before damage is dealt, so their events
+ * have no damager and don't pass through the damage pipeline.
+ */
+public class ExplosionStage implements DamageStage, Listener {
+    static final int TYPES = EntityType.values().length;
+
+    private final float[] multipliers = new float[TYPES];
+    private final float blockMultiplier;
+
+    public ExplosionStage(Map<EntityType, Float> multipliers, float blockMultiplier) {
+        Objects.requireNonNull(multipliers, "multipliers");
+
+        this.blockMultiplier = blockMultiplier;
+
+        Arrays.fill(this.multipliers, 1F);
+        ImmutableMap.copyOf(multipliers).forEach((type, multiplier) -> this.multipliers[type.ordinal()] = multiplier);
+    }
+
+    @Override
+    public double apply(DamageContext context, double damage) {
+        if (context.getCause() != EntityDamageEvent.DamageCause.ENTITY_EXPLOSION) {
+            return damage;
+        }
+
+        return damage * this.multipliers[context.getDamager().getType().ordinal()];
+    }
+
+    @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
+    public void onEntityDamageByBlock(EntityDamageByBlockEvent event) {
+        if (event.getCause() == EntityDamageEvent.DamageCause.BLOCK_EXPLOSION && this.blockMultiplier != 1F) {
+            event.setDamage(event.getDamage() * this.blockMultiplier);
+        }
+    }
+}
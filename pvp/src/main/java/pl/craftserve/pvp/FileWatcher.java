@@ -0,0 +1,168 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches files in the data folder for changes, polled by an {@link IoExecutor}
+ * task. Callbacks are called from that task, once per poll no matter how
+ * many of their files have changed.
+ */
+public class FileWatcher implements Runnable {
+    static final Logger logger = Logger.getLogger(FileWatcher.class.getName());
+
+    private static final Duration INTERVAL = Duration.ofSeconds(2);
+
+    private final IoExecutor ioExecutor;
+    private final List<Registration> registrations = new ArrayList<>();
+
+    private WatchService watchService;
+    private IoExecutor.Task watcherTask;
+
+    public FileWatcher(IoExecutor ioExecutor) {
+        this.ioExecutor = Objects.requireNonNull(ioExecutor, "ioExecutor");
+    }
+
+    /**
+     * Calls the callback when a file in the directory matching the filter is
+     * created, modified or deleted. Must be called before {@link #start()}.
+     */
+    public void watch(File directory, Predicate<File> filter, Runnable callback) {
+        Objects.requireNonNull(directory, "directory");
+        Objects.requireNonNull(filter, "filter");
+        Objects.requireNonNull(callback, "callback");
+
+        if (this.watchService != null) {
+            throw new IllegalStateException("Already started.");
+        }
+
+        this.registrations.add(new Registration(directory.toPath().toAbsolutePath(), filter, callback));
+    }
+
+    public void start() {
+        if (this.registrations.isEmpty()) {
+            return;
+        }
+
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+
+            Set<Path> directories = new LinkedHashSet<>();
+            this.registrations.forEach(registration -> directories.add(registration.directory));
+            for (Path directory : directories) {
+                directory.register(this.watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not watch files, changes won't be reloaded.", e);
+            this.closeWatchService();
+            return;
+        }
+
+        this.watcherTask = this.ioExecutor.repeat(this, INTERVAL, INTERVAL);
+    }
+
+    public void stop() {
+        if (this.watcherTask != null) {
+            this.watcherTask.cancel();
+            this.watcherTask = null;
+        }
+
+        this.closeWatchService();
+    }
+
+    @Override
+    public void run() {
+        WatchService watchService = this.watchService;
+        if (watchService == null) {
+            return;
+        }
+
+        Set<Runnable> changed = new LinkedHashSet<>();
+
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+            Path directory = ((Path) key.watchable()).toAbsolutePath();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                Object context = event.context();
+                for (Registration registration : this.registrations) {
+                    if (!registration.directory.equals(directory)) {
+                        continue;
+                    }
+
+                    // overflow, assume everything has changed
+                    if (!(context instanceof Path) || registration.filter.test(directory.resolve((Path) context).toFile())) {
+                        changed.add(registration.callback);
+                    }
+                }
+            }
+
+            key.reset();
+        }
+
+        for (Runnable callback : changed) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Could not reload changed files.", e);
+            }
+        }
+    }
+
+    private void closeWatchService() {
+        if (this.watchService != null) {
+            try {
+                this.watchService.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not close watch service.", e);
+            }
+
+            this.watchService = null;
+        }
+    }
+
+    static final class Registration {
+        final Path directory;
+        final Predicate<File> filter;
+        final Runnable callback;
+
+        Registration(Path directory, Predicate<File> filter, Runnable callback) {
+            this.directory = Objects.requireNonNull(directory, "directory");
+            this.filter = Objects.requireNonNull(filter, "filter");
+            this.callback = Objects.requireNonNull(callback, "callback");
+        }
+    }
+}
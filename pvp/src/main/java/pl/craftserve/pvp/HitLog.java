@@ -0,0 +1,249 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.Material;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes hits drained from a {@link HitRecorder} into memory-mapped segment
+ * files of a fixed size, polled by an {@link IoExecutor} task. A full segment is
+ * replaced by a new one, and the oldest segments are deleted when there are
+ * too many of them.
+ *
+ * A segment starts with a {@link #HEADER_SIZE} bytes big-endian header: the
+ * {@link #MAGIC}, format {@link #VERSION} and record size as ints, the time
+ * it was created in epoch milliseconds and the number of records written so
+ * far as a long, then the offset of the first record and the number of
+ * materials as ints.
+ *
+ * Material ordinals of records depend on the server version, so the header
+ * is followed by a table of the server version and the namespaced key of
+ * every material by ordinal, each as an unsigned short length and UTF-8
+ * bytes (empty for legacy materials). Records follow, aligned to 8 bytes,
+ * as {@link HitRecorder#RECORD_LONGS} longs each, the rest of the file is
+ * zeroed.
+ */
+public class HitLog implements Runnable {
+    static final Logger logger = Logger.getLogger(HitLog.class.getName());
+
+    public static final long MAGIC = 0x4353_5056_5048_4954L; // CSPVPHIT
+    public static final int VERSION = 3;
+    public static final int HEADER_SIZE = 64;
+    public static final int RECORD_SIZE = HitRecorder.RECORD_LONGS * Long.BYTES;
+
+    public static final int VERSION_OFFSET = 8;
+    public static final int RECORD_SIZE_OFFSET = 12;
+    public static final int CREATED_OFFSET = 16;
+    public static final int COUNT_OFFSET = 24;
+    public static final int RECORDS_OFFSET = 32;
+    public static final int MATERIALS_OFFSET = 36;
+
+    static final String PREFIX = "hits-";
+    static final String SUFFIX = ".bin";
+
+    @SuppressWarnings("deprecation") // legacy materials keep their ordinals
+    private static final Material[] MATERIALS = Material.values();
+
+    private static final int BATCH = 1024;
+    private static final Duration INTERVAL = Duration.ofSeconds(1);
+
+    private final IoExecutor ioExecutor;
+    private final HitRecorder recorder;
+    private final File directory;
+    private final int segmentSize;
+    private final int maximumSegments;
+    private final byte[] materialTable;
+    private final int recordsOffset;
+
+    private final long[] batch = new long[BATCH * HitRecorder.RECORD_LONGS];
+
+    private MappedByteBuffer segment;
+    private long segmentCount;
+    private int sequence;
+
+    private IoExecutor.Task task;
+
+    /**
+     * @param segmentSize size of a segment file in bytes.
+     * @param maximumSegments number of segment files kept.
+     * @param serverVersion version of the server, written to every segment.
+     */
+    public HitLog(IoExecutor ioExecutor, HitRecorder recorder, File directory, int segmentSize, int maximumSegments,
+                  String serverVersion) {
+        this.ioExecutor = Objects.requireNonNull(ioExecutor, "ioExecutor");
+        this.recorder = Objects.requireNonNull(recorder, "recorder");
+        this.directory = Objects.requireNonNull(directory, "directory");
+        Objects.requireNonNull(serverVersion, "serverVersion");
+
+        this.materialTable = createMaterialTable(serverVersion);
+        // records are aligned to their longs
+        this.recordsOffset = (HEADER_SIZE + this.materialTable.length + Long.BYTES - 1) & -Long.BYTES;
+
+        if (segmentSize < this.recordsOffset + RECORD_SIZE) {
+            throw new IllegalArgumentException("Segment size must be at least " + (this.recordsOffset + RECORD_SIZE) + " bytes.");
+        } else if (maximumSegments < 1) {
+            throw new IllegalArgumentException("Maximum segments must be positive.");
+        }
+
+        this.segmentSize = segmentSize;
+        this.maximumSegments = maximumSegments;
+    }
+
+    /**
+     * @return offset of the first record in segments of this log.
+     */
+    public int getRecordsOffset() {
+        return this.recordsOffset;
+    }
+
+    public void start() {
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            logger.warning("Could not create " + this.directory + " directory, hits won't be logged.");
+            return;
+        }
+
+        this.task = this.ioExecutor.repeat(this, INTERVAL, INTERVAL);
+    }
+
+    public synchronized void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+
+        this.run();
+        this.closeSegment();
+    }
+
+    @Override
+    public synchronized void run() {
+        try {
+            int count;
+            while ((count = this.recorder.drain(this.batch)) != 0) {
+                this.write(count);
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not write hits to " + this.directory + ".", e);
+            this.closeSegment();
+        }
+    }
+
+    private void write(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (this.segment == null || this.segment.remaining() < RECORD_SIZE) {
+                this.openSegment();
+            }
+
+            MappedByteBuffer segment = this.segment;
+            int offset = i * HitRecorder.RECORD_LONGS;
+            for (int j = 0; j < HitRecorder.RECORD_LONGS; j++) {
+                segment.putLong(this.batch[offset + j]);
+            }
+
+            this.segmentCount++;
+        }
+
+        // published last, so readers never see partial records
+        this.segment.putLong(COUNT_OFFSET, this.segmentCount);
+    }
+
+    private void openSegment() throws IOException {
+        this.closeSegment();
+
+        long now = System.currentTimeMillis();
+        File file = new File(this.directory, PREFIX + now + "-" + this.sequence++ + SUFFIX);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0L, this.segmentSize);
+        }
+
+        this.segment.order(ByteOrder.BIG_ENDIAN);
+        this.segment.putLong(MAGIC);
+        this.segment.putInt(VERSION);
+        this.segment.putInt(RECORD_SIZE);
+        this.segment.putLong(now);
+        this.segment.putLong(0L);
+        this.segment.putInt(this.recordsOffset);
+        this.segment.putInt(MATERIALS.length);
+        this.segment.position(HEADER_SIZE);
+        this.segment.put(this.materialTable);
+        this.segment.position(this.recordsOffset);
+        this.segmentCount = 0L;
+
+        this.deleteOldSegments();
+    }
+
+    private void closeSegment() {
+        if (this.segment != null) {
+            // records written since the last batch, before a rotation or failure
+            this.segment.putLong(COUNT_OFFSET, this.segmentCount);
+            this.segment.force();
+            this.segment = null; // unmapped when collected
+        }
+    }
+
+    private static byte[] createMaterialTable(String serverVersion) {
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        writeString(table, serverVersion);
+        for (Material material : MATERIALS) {
+            writeString(table, material.isLegacy() ? "" : material.getKey().toString());
+        }
+
+        return table.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream output, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String is too long: " + value);
+        }
+
+        output.write(bytes.length >>> 8);
+        output.write(bytes.length);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    private void deleteOldSegments() {
+        File[] files = this.directory.listFiles((directory, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null || files.length <= this.maximumSegments) {
+            return;
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).thenComparing(File::getName));
+        for (int i = 0; i < files.length - this.maximumSegments; i++) {
+            if (!files[i].delete()) {
+                logger.warning("Could not delete old hit log segment " + files[i].getName() + ".");
+            }
+        }
+    }
+}
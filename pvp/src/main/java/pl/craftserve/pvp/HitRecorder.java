@@ -0,0 +1,231 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Projectile;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.projectiles.ProjectileSource;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records every hit of a living attacker into a single-producer,
+ * single-consumer ring buffer of fixed-size records, drained by
+ * {@link HitLog} on another thread. Recording a hit neither locks nor
+ * allocates, hits are dropped while the buffer is full. The attack charge
+ * is read from {@link AttackChargeTracker}, whose listener must be
+ * registered after this one to reset it only once the hit is recorded.
+ *
+ * A record is {@link #RECORD_LONGS} longs:
+ * <ol start="0">
+ *     <li>server tick counted since the recorder started,</li>
+ *     <li>most and least significant bits of the attacker's UUID,</li>
+ *     <li>most and least significant bits of the victim's UUID,</li>
+ *     <li>material ordinals of the victim's helmet, chestplate, leggings and
+ *     boots, 16 bits each from the highest, resolved through the material
+ *     table of the {@link HitLog} segment,</li>
+ *     <li>material ordinal of the weapon in the upper 32 bits, float bits of
+ *     the attack charge ({@link #UNKNOWN} if it isn't a melee attack of a
+ *     player) in the lower 32,</li>
+ *     <li>float bits of the final damage in the upper 32 bits, of the base
+ *     damage in the lower 32.</li>
+ * </ol>
+ */
+public class HitRecorder implements Listener, Runnable {
+    public static final int RECORD_LONGS = 8;
+
+    public static final int TICK = 0;
+    public static final int ATTACKER_MOST = 1;
+    public static final int ATTACKER_LEAST = 2;
+    public static final int VICTIM_MOST = 3;
+    public static final int VICTIM_LEAST = 4;
+    public static final int ARMOR = 5;
+    public static final int WEAPON = 6;
+    public static final int DAMAGE = 7;
+
+    public static final float UNKNOWN = -1F;
+
+    private final BukkitScheduler scheduler;
+    private final Plugin plugin;
+    private final AttackChargeTracker charges;
+    private final EntityAccessor accessor;
+
+    private final long[] buffer;
+    private final long mask;
+
+    // written by the main thread, read by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // written by the consumer, read by the main thread
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // main thread only
+    private final int[] armor = new int[4];
+    private long cachedTail;
+    private long tick;
+
+    private BukkitTask task;
+
+    /**
+     * @param capacity number of records buffered, rounded up to a power of 2.
+     */
+    public HitRecorder(BukkitScheduler scheduler, Plugin plugin, AttackChargeTracker charges, EntityAccessor accessor,
+                       int capacity) {
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+        this.charges = Objects.requireNonNull(charges, "charges");
+        this.accessor = Objects.requireNonNull(accessor, "accessor");
+
+        if (capacity < 1 || capacity > (1 << 24)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + (1 << 24) + ".");
+        }
+
+        int records = Integer.highestOneBit(capacity * 2 - 1);
+        this.buffer = new long[records * RECORD_LONGS];
+        this.mask = records - 1;
+    }
+
+    public void start() {
+        this.task = this.scheduler.runTaskTimer(this.plugin, this, 1L, 1L);
+    }
+
+    public void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+    }
+
+    /**
+     * Counts ticks, cheaper than asking the server on every hit.
+     */
+    @Override
+    public void run() {
+        this.tick++;
+    }
+
+    /**
+     * @return number of hits dropped since start because the buffer was full.
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityDamageByEntity(EntityDamageByEntityEvent event) {
+        Entity entity = event.getEntity();
+        if (!(entity instanceof LivingEntity)) {
+            return;
+        }
+
+        Entity damager = event.getDamager();
+        LivingEntity attacker;
+        boolean melee = false;
+        if (damager instanceof LivingEntity) {
+            attacker = (LivingEntity) damager;
+            EntityDamageEvent.DamageCause cause = event.getCause();
+            melee = cause == EntityDamageEvent.DamageCause.ENTITY_ATTACK ||
+                    cause == EntityDamageEvent.DamageCause.ENTITY_SWEEP_ATTACK;
+        } else if (damager instanceof Projectile) {
+            ProjectileSource shooter = ((Projectile) damager).getShooter();
+            if (!(shooter instanceof LivingEntity)) {
+                return;
+            }
+
+            attacker = (LivingEntity) shooter;
+        } else {
+            return;
+        }
+
+        long head = this.head.get();
+        if (head - this.cachedTail > this.mask) {
+            this.cachedTail = this.tail.get();
+            if (head - this.cachedTail > this.mask) {
+                this.dropped.lazySet(this.dropped.get() + 1L);
+                return;
+            }
+        }
+
+        long[] buffer = this.buffer;
+        int offset = (int) (head & this.mask) * RECORD_LONGS;
+
+        UUID attackerId = attacker.getUniqueId();
+        UUID victimId = entity.getUniqueId();
+        buffer[offset + TICK] = this.tick;
+        buffer[offset + ATTACKER_MOST] = attackerId.getMostSignificantBits();
+        buffer[offset + ATTACKER_LEAST] = attackerId.getLeastSignificantBits();
+        buffer[offset + VICTIM_MOST] = victimId.getMostSignificantBits();
+        buffer[offset + VICTIM_LEAST] = victimId.getLeastSignificantBits();
+
+        int[] armor = this.armor;
+        this.accessor.getArmor((LivingEntity) entity, armor, DamageContext.HELMET);
+        buffer[offset + ARMOR] = ((long) armor[DamageContext.HELMET] << 48) |
+                ((long) armor[DamageContext.CHESTPLATE] << 32) |
+                ((long) armor[DamageContext.LEGGINGS] << 16) |
+                (long) armor[DamageContext.BOOTS];
+
+        int weapon = DamageContext.AIR;
+        float charge = UNKNOWN;
+        if (melee) {
+            weapon = this.accessor.getMainHand(attacker);
+            if (attacker instanceof Player) {
+                charge = this.charges.getCharge((Player) attacker);
+            }
+        }
+
+        buffer[offset + WEAPON] = ((long) weapon << 32) | (Float.floatToRawIntBits(charge) & 0xFFFFFFFFL);
+        buffer[offset + DAMAGE] = ((long) Float.floatToRawIntBits((float) event.getFinalDamage()) << 32) |
+                (Float.floatToRawIntBits((float) event.getDamage()) & 0xFFFFFFFFL);
+
+        this.head.lazySet(head + 1L);
+    }
+
+    /**
+     * Copies buffered records to the target array and frees their slots.
+     * Consumer thread only.
+     *
+     * @return number of records copied, at most {@code target.length / RECORD_LONGS}.
+     */
+    public int drain(long[] target) {
+        Objects.requireNonNull(target, "target");
+
+        long tail = this.tail.get();
+        long available = this.head.get() - tail;
+        int count = (int) Math.min(available, target.length / RECORD_LONGS);
+
+        long[] buffer = this.buffer;
+        for (int i = 0; i < count; i++) {
+            int offset = (int) ((tail + i) & this.mask) * RECORD_LONGS;
+            System.arraycopy(buffer, offset, target, i * RECORD_LONGS, RECORD_LONGS);
+        }
+
+        this.tail.lazySet(tail + count);
+        return count;
+    }
+}
@@ -16,9 +16,11 @@
 
 package pl.craftserve.pvp;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import org.bukkit.Material;
 
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
@@ -81,4 +83,49 @@ public interface Injector<T extends Transformer> {
                     .build();
         }
     }
+
+    /**
+     * Dispatches transformers handled by the plugin itself (not by NMS
+     * adapters) to their injectors, everything else goes to the fallback.
+     */
+    class Composite implements Injector<Transformer> {
+        private final Injector<Transformer> fallback;
+        private final Map<Class<? extends Transformer>, Injector<? extends Transformer>> injectors;
+
+        public Composite(Injector<Transformer> fallback,
+                         Map<Class<? extends Transformer>, Injector<? extends Transformer>> injectors) {
+            this.fallback = Objects.requireNonNull(fallback, "fallback");
+            this.injectors = ImmutableMap.copyOf(Objects.requireNonNull(injectors, "injectors"));
+        }
+
+        public Injector<Transformer> getFallback() {
+            return this.fallback;
+        }
+
+        @Override
+        public Transformer inject(Material material, Transformer transformer) throws InjectException {
+            Objects.requireNonNull(material, "material");
+            Objects.requireNonNull(transformer, "transformer");
+
+            Injector<Transformer> injector = (Injector<Transformer>) this.injectors.get(transformer.getClass());
+            if (injector == null) {
+                return this.fallback.inject(material, transformer);
+            }
+
+            return injector.inject(material, transformer);
+        }
+
+        @Override
+        public Set<Transformer> eject(Material material) throws InjectException {
+            Objects.requireNonNull(material, "material");
+
+            ImmutableSet.Builder<Transformer> builder = ImmutableSet.<Transformer>builder()
+                    .addAll(this.fallback.eject(material));
+            for (Injector<? extends Transformer> injector : this.injectors.values()) {
+                builder.addAll(injector.eject(material));
+            }
+
+            return builder.build();
+        }
+    }
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pl.craftserve.pvp;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs blocking I/O of the plugin, such as file watching, hit log writes and
+ * update checks, so it doesn't occupy threads of Bukkit's asynchronous
+ * scheduler shared by all plugins. Tasks run on virtual threads on Java 21
+ * and newer, otherwise on a small bounded pool. Delays are kept by a single
+ * timer thread which only hands tasks over.
+ */
+public class IoExecutor {
+    static final Logger logger = Logger.getLogger(IoExecutor.class.getName());
+
+    private static final int PLATFORM_THREADS = 4;
+    private static final Duration KEEP_ALIVE = Duration.ofMinutes(1);
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final String name;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final boolean virtual;
+
+    public IoExecutor(String name) {
+        this.name = Objects.requireNonNull(name, "name");
+
+        ExecutorService virtualExecutor = createVirtualExecutor(name + " I/O #");
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.virtual = true;
+        } else {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(PLATFORM_THREADS, PLATFORM_THREADS,
+                    KEEP_ALIVE.toMillis(), TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder().setNameFormat(name + " I/O #%d").setDaemon(true).build());
+            executor.allowCoreThreadTimeOut(true);
+
+            this.executor = executor;
+            this.virtual = false;
+        }
+
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat(name + " I/O timer").setDaemon(true).build());
+        timer.setRemoveOnCancelPolicy(true);
+        this.timer = timer;
+    }
+
+    /**
+     * @return whether tasks run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return this.virtual;
+    }
+
+    public Task execute(Runnable runnable) {
+        return this.schedule(runnable, Duration.ZERO);
+    }
+
+    public Task schedule(Runnable runnable, Duration delay) {
+        Objects.requireNonNull(runnable, "runnable");
+        Objects.requireNonNull(delay, "delay");
+
+        Task task = new Task(runnable, null);
+        task.schedule(delay);
+        return task;
+    }
+
+    /**
+     * Runs the task repeatedly, the delay is counted since the previous run
+     * has finished, so runs never overlap.
+     */
+    public Task repeat(Runnable runnable, Duration initialDelay, Duration delay) {
+        Objects.requireNonNull(runnable, "runnable");
+        Objects.requireNonNull(initialDelay, "initialDelay");
+        Objects.requireNonNull(delay, "delay");
+
+        Task task = new Task(runnable, delay);
+        task.schedule(initialDelay);
+        return task;
+    }
+
+    /**
+     * Waits for running tasks to finish, queued ones are discarded. Tasks
+     * should be cancelled by their owners first.
+     */
+    public void shutdown() {
+        this.timer.shutdownNow();
+        this.executor.shutdown();
+
+        try {
+            if (!this.executor.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                logger.warning(this.name + " I/O tasks did not finish in " + SHUTDOWN_TIMEOUT.getSeconds() + "s.");
+                this.executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * {@code Executors.newThreadPerTaskExecutor} of named virtual threads,
+     * looked up reflectively since the plugin is compiled for Java 8.
+     *
+     * @return the executor, or {@code null} if virtual threads are not
+     * available in this JVM.
+     */
+    static ExecutorService createVirtualExecutor(String prefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            Method factory = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) factory.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // older JVM, or a preview feature which is not enabled
+            return null;
+        }
+    }
+
+    public final class Task {
+        private final Runnable runnable;
+        private final Duration period;
+
+        private volatile boolean cancelled;
+        private volatile Future<?> future;
+
+        Task(Runnable runnable, Duration period) {
+            this.runnable = Objects.requireNonNull(runnable, "runnable");
+            this.period = period;
+        }
+
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        /**
+         * Prevents further runs, a running one is not interrupted.
+         */
+        public void cancel() {
+            this.cancelled = true;
+
+            Future<?> future = this.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        void schedule(Duration delay) {
+            if (this.cancelled) {
+                return;
+            }
+
+            try {
+                this.future = IoExecutor.this.timer.schedule(this::submit, delay.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // shut down
+            }
+        }
+
+        private void submit() {
+            if (this.cancelled) {
+                return;
+            }
+
+            try {
+                this.future = IoExecutor.this.executor.submit(this::run);
+            } catch (RejectedExecutionException e) {
+                // shut down
+            }
+        }
+
+        private void run() {
+            if (this.cancelled) {
+                return;
+            }
+
+            try {
+                this.runnable.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Could not run " + IoExecutor.this.name + " I/O task.", e);
+            } finally {
+                if (this.period != null) {
+                    this.schedule(this.period);
+                }
+            }
+        }
+    }
+}
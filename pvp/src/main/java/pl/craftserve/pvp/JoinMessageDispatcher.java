@@ -0,0 +1,195 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pl.craftserve.pvp;
+
+import net.md_5.bungee.api.ChatMessageType;
+import net.md_5.bungee.api.chat.BaseComponent;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Sends messages to players some time after they join. Joining players are
+ * queued per message and drained by a single task, so a wave of joins
+ * doesn't schedule a task each. Messages are built by their owners only
+ * when their contents change and shared by all players.
+ */
+public class JoinMessageDispatcher implements Listener, Runnable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final BukkitScheduler scheduler;
+    private final Plugin plugin;
+
+    private BukkitTask task;
+    private long tick;
+
+    private Message[] messages = new Message[0];
+
+    public JoinMessageDispatcher(BukkitScheduler scheduler, Plugin plugin) {
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+    }
+
+    public void start() {
+        this.task = this.scheduler.runTaskTimer(this.plugin, this, 1L, 1L);
+    }
+
+    public void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+
+        for (Message message : this.messages) {
+            message.clearQueue();
+        }
+    }
+
+    /**
+     * @param permission required to receive the message, checked when it is
+     * sent, or {@code null} if everyone receives it.
+     * @return message with no contents, which are set with
+     * {@link Message#set(BaseComponent[]...)}.
+     */
+    public Message register(Duration delay, String permission) {
+        Objects.requireNonNull(delay, "delay");
+
+        Message message = new Message(delay.toMillis() / 50L, permission);
+        this.messages = Arrays.copyOf(this.messages, this.messages.length + 1);
+        this.messages[this.messages.length - 1] = message;
+        return message;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        for (Message message : this.messages) {
+            // nothing to send now, it's unlikely to change during the delay
+            if (message.lines != null) {
+                message.queue(player, this.tick + message.delay);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        long tick = ++this.tick;
+        for (Message message : this.messages) {
+            message.drain(tick);
+        }
+    }
+
+    /**
+     * Players are queued in order of their due ticks, since the delay of a
+     * message is constant.
+     */
+    public static final class Message {
+        final long delay;
+        final String permission;
+
+        // set from any thread, read on the main thread
+        volatile BaseComponent[][] lines;
+
+        private Player[] queuedPlayers = new Player[INITIAL_CAPACITY];
+        private long[] queuedTicks = new long[INITIAL_CAPACITY];
+        private int head;
+        private int tail;
+
+        Message(long delay, String permission) {
+            this.delay = delay;
+            this.permission = permission;
+        }
+
+        /**
+         * Replaces contents of the message, each line is sent separately.
+         */
+        public void set(BaseComponent[]... lines) {
+            Objects.requireNonNull(lines, "lines");
+            this.lines = lines.clone();
+        }
+
+        /**
+         * Stops sending the message to players joining from now on.
+         */
+        public void clear() {
+            this.lines = null;
+        }
+
+        void queue(Player player, long dueTick) {
+            if (this.tail == this.queuedPlayers.length) {
+                int count = this.tail - this.head;
+                if (this.head > 0) {
+                    System.arraycopy(this.queuedPlayers, this.head, this.queuedPlayers, 0, count);
+                    System.arraycopy(this.queuedTicks, this.head, this.queuedTicks, 0, count);
+                    Arrays.fill(this.queuedPlayers, count, this.tail, null);
+                } else {
+                    this.queuedPlayers = Arrays.copyOf(this.queuedPlayers, this.queuedPlayers.length * 2);
+                    this.queuedTicks = Arrays.copyOf(this.queuedTicks, this.queuedTicks.length * 2);
+                }
+
+                this.head = 0;
+                this.tail = count;
+            }
+
+            this.queuedPlayers[this.tail] = player;
+            this.queuedTicks[this.tail] = dueTick;
+            this.tail++;
+        }
+
+        void drain(long tick) {
+            if (this.head == this.tail) {
+                return;
+            }
+
+            BaseComponent[][] lines = this.lines;
+            while (this.head < this.tail && this.queuedTicks[this.head] <= tick) {
+                Player player = this.queuedPlayers[this.head];
+                this.queuedPlayers[this.head] = null;
+                this.head++;
+
+                if (lines != null && player.isOnline() &&
+                        (this.permission == null || player.hasPermission(this.permission))) {
+                    Player.Spigot spigot = player.spigot();
+                    for (BaseComponent[] line : lines) {
+                        spigot.sendMessage(ChatMessageType.SYSTEM, line);
+                    }
+                }
+            }
+
+            if (this.head == this.tail) {
+                this.head = 0;
+                this.tail = 0;
+            }
+        }
+
+        void clearQueue() {
+            Arrays.fill(this.queuedPlayers, this.head, this.tail, null);
+            this.head = 0;
+            this.tail = 0;
+        }
+    }
+}
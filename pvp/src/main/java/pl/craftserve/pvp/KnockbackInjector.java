@@ -0,0 +1,154 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.Material;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Injects {@link KnockbackTransformer}s into a flat table of primitive
+ * parameters indexed by {@link Material#ordinal()}, read by
+ * {@link KnockbackListener} on every hit. Defaults are resolved here, so
+ * reading a hit's parameters never unboxes.
+ */
+public class KnockbackInjector implements Injector<KnockbackTransformer> {
+    static final Logger logger = Logger.getLogger(KnockbackInjector.class.getName());
+
+    public static final int HORIZONTAL = 0;
+    public static final int VERTICAL = 1;
+    public static final int VERTICAL_LIMIT = 2;
+    public static final int FRICTION = 3;
+    public static final int SPRINT_HORIZONTAL = 4;
+    public static final int SPRINT_VERTICAL = 5;
+    public static final int ENCHANTMENT_HORIZONTAL = 6;
+    public static final int ENCHANTMENT_VERTICAL = 7;
+    public static final int PARAMETERS = 8;
+
+    private static final int MATERIALS = Material.values().length;
+
+    private final KnockbackTransformer[] transformers = new KnockbackTransformer[MATERIALS];
+    private final double[] parameters = new double[(MATERIALS + 1) * PARAMETERS];
+    private final boolean[] present = new boolean[MATERIALS + 1];
+
+    /**
+     * Sets knockback of items without their own transformer, {@code null}
+     * leaves the vanilla knockback.
+     */
+    public void setDefault(KnockbackTransformer knockback) {
+        this.compile(MATERIALS, knockback);
+        for (int i = 0; i < MATERIALS; i++) {
+            if (this.transformers[i] == null) {
+                this.copyDefault(i);
+            }
+        }
+    }
+
+    /**
+     * @return offset of the parameters of the given material in
+     * {@link #getParameters()}, or {@code -1} for the vanilla knockback.
+     */
+    public int getOffset(int material) {
+        return this.present[material] ? material * PARAMETERS : -1;
+    }
+
+    /**
+     * @return parameters of all materials, must not be modified.
+     */
+    public double[] getParameters() {
+        return this.parameters;
+    }
+
+    public boolean isEmpty() {
+        for (boolean present : this.present) {
+            if (present) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public KnockbackTransformer inject(Material material, KnockbackTransformer knockback) throws InjectException {
+        Objects.requireNonNull(material, "material");
+        Objects.requireNonNull(knockback, "knockback");
+
+        logger.log(Level.FINE, "Injecting knockback for " + material.getKey() + ": " + knockback);
+
+        KnockbackTransformer prev = this.ejectSingle(material);
+
+        int index = material.ordinal();
+        if (knockback.isEmpty()) {
+            this.transformers[index] = null;
+            this.copyDefault(index);
+        } else {
+            this.transformers[index] = knockback;
+            this.compile(index, knockback);
+        }
+
+        return prev;
+    }
+
+    @Override
+    public Set<KnockbackTransformer> eject(Material material) throws InjectException {
+        Objects.requireNonNull(material, "material");
+        return Collections.singleton(this.ejectSingle(material));
+    }
+
+    private KnockbackTransformer ejectSingle(Material material) {
+        KnockbackTransformer transformer = this.transformers[material.ordinal()];
+        if (transformer == null) {
+            return new KnockbackTransformer(null, null, null, null, null, null, null, null);
+        }
+
+        return transformer;
+    }
+
+    private void copyDefault(int index) {
+        this.present[index] = this.present[MATERIALS];
+        System.arraycopy(this.parameters, MATERIALS * PARAMETERS, this.parameters, index * PARAMETERS, PARAMETERS);
+    }
+
+    private void compile(int index, KnockbackTransformer knockback) {
+        int offset = index * PARAMETERS;
+        if (knockback == null || knockback.isEmpty()) {
+            this.present[index] = false;
+            Arrays.fill(this.parameters, offset, offset + PARAMETERS, 0D);
+            return;
+        }
+
+        this.present[index] = true;
+        this.parameters[offset + HORIZONTAL] = or(knockback.getHorizontal(), KnockbackTransformer.DEFAULT_HORIZONTAL);
+        this.parameters[offset + VERTICAL] = or(knockback.getVertical(), KnockbackTransformer.DEFAULT_VERTICAL);
+        this.parameters[offset + VERTICAL_LIMIT] = or(knockback.getVerticalLimit(), KnockbackTransformer.DEFAULT_VERTICAL_LIMIT);
+        this.parameters[offset + FRICTION] = or(knockback.getFriction(), KnockbackTransformer.DEFAULT_FRICTION);
+        this.parameters[offset + SPRINT_HORIZONTAL] = or(knockback.getSprintHorizontal(), KnockbackTransformer.DEFAULT_SPRINT_HORIZONTAL);
+        this.parameters[offset + SPRINT_VERTICAL] = or(knockback.getSprintVertical(), KnockbackTransformer.DEFAULT_SPRINT_VERTICAL);
+        this.parameters[offset + ENCHANTMENT_HORIZONTAL] = or(knockback.getEnchantmentHorizontal(), KnockbackTransformer.DEFAULT_ENCHANTMENT_HORIZONTAL);
+        this.parameters[offset + ENCHANTMENT_VERTICAL] = or(knockback.getEnchantmentVertical(), KnockbackTransformer.DEFAULT_ENCHANTMENT_VERTICAL);
+    }
+
+    private static double or(Double value, double def) {
+        return value == null ? def : value;
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.Location;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.event.player.PlayerVelocityEvent;
+import org.bukkit.inventory.EntityEquipment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.util.Vector;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Replaces knockback of melee attacks with the one configured by
+ * {@link KnockbackTransformer}s. Hits only accumulate knockback of their
+ * victim in primitive arrays, together with the velocity the victim had
+ * before vanilla knockback, which is applied once per victim at the start
+ * of the next tick, overwriting the vanilla one. Vanilla knockback packets
+ * of players with pending knockback are cancelled, so clients receive a
+ * single velocity update.
+ *
+ * The pending index of a victim is kept in an {@link EntityStateStore}
+ * column, victims other than players get a row until their knockback is
+ * applied.
+ */
+public class KnockbackListener implements Listener, Runnable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int Z = 2;
+    private static final int FRICTION = 3;
+    private static final int VERTICAL_LIMIT = 4;
+    private static final int VELOCITY_X = 5;
+    private static final int VELOCITY_Y = 6;
+    private static final int VELOCITY_Z = 7;
+    private static final int STRIDE = 8;
+
+    private static final double MINIMUM_DISTANCE = 1.0E-4D;
+
+    private final BukkitScheduler scheduler;
+    private final Plugin plugin;
+    private final KnockbackInjector injector;
+    private final EntityStateStore store;
+    private final EntityStateStore.IntColumn pendingIndexes;
+    private final EntityAccessor accessor;
+
+    private final Location attackerLocation = new Location(null, 0D, 0D, 0D);
+    private final Location victimLocation = new Location(null, 0D, 0D, 0D);
+    private final Vector velocity = new Vector();
+
+    private BukkitTask task;
+
+    private LivingEntity[] pendingVictims = new LivingEntity[INITIAL_CAPACITY];
+    private int[] pendingRows = new int[INITIAL_CAPACITY];
+    private boolean[] pendingAcquired = new boolean[INITIAL_CAPACITY];
+    private double[] pendingKnockback = new double[INITIAL_CAPACITY * STRIDE];
+    private int pendingCount;
+
+    public KnockbackListener(BukkitScheduler scheduler, Plugin plugin, KnockbackInjector injector,
+                             EntityStateStore store, EntityAccessor accessor) {
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+        this.injector = Objects.requireNonNull(injector, "injector");
+        this.store = Objects.requireNonNull(store, "store");
+        this.pendingIndexes = store.registerInt(EntityStateStore.NONE);
+        this.accessor = Objects.requireNonNull(accessor, "accessor");
+    }
+
+    public void start() {
+        this.task = this.scheduler.runTaskTimer(this.plugin, this, 1L, 1L);
+    }
+
+    public void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+
+        this.clearPending();
+        Arrays.fill(this.pendingVictims, 0, this.pendingCount, null);
+        this.pendingCount = 0;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityDamageByEntity(EntityDamageByEntityEvent event) {
+        if (event.getCause() != EntityDamageEvent.DamageCause.ENTITY_ATTACK) {
+            return;
+        }
+
+        Entity damager = event.getDamager();
+        Entity entity = event.getEntity();
+        if (!(damager instanceof LivingEntity) || !(entity instanceof LivingEntity)) {
+            return;
+        }
+
+        LivingEntity attacker = (LivingEntity) damager;
+        int offset = this.injector.getOffset(this.accessor.getMainHand(attacker));
+        if (offset == -1) {
+            return;
+        }
+
+        double[] parameters = this.injector.getParameters();
+
+        Location attackerLocation = attacker.getLocation(this.attackerLocation);
+        Location victimLocation = entity.getLocation(this.victimLocation);
+
+        double yaw = Math.toRadians(attackerLocation.getYaw());
+        double lookX = -Math.sin(yaw);
+        double lookZ = Math.cos(yaw);
+
+        // push away from the attacker, or where it looks when standing inside
+        double directionX = victimLocation.getX() - attackerLocation.getX();
+        double directionZ = victimLocation.getZ() - attackerLocation.getZ();
+        double distance = Math.sqrt(directionX * directionX + directionZ * directionZ);
+        if (distance < MINIMUM_DISTANCE) {
+            directionX = lookX;
+            directionZ = lookZ;
+        } else {
+            directionX /= distance;
+            directionZ /= distance;
+        }
+
+        double horizontal = parameters[offset + KnockbackInjector.HORIZONTAL];
+        double x = directionX * horizontal;
+        double y = parameters[offset + KnockbackInjector.VERTICAL];
+        double z = directionZ * horizontal;
+
+        double extraHorizontal = 0D;
+        if (attacker instanceof Player && ((Player) attacker).isSprinting()) {
+            extraHorizontal += parameters[offset + KnockbackInjector.SPRINT_HORIZONTAL];
+            y += parameters[offset + KnockbackInjector.SPRINT_VERTICAL];
+        }
+
+        // the item stack is only read for weapons with knockback configured
+        EntityEquipment equipment = attacker.getEquipment();
+        ItemStack weapon = equipment == null ? null : equipment.getItemInMainHand();
+        int level = weapon == null ? 0 : weapon.getEnchantmentLevel(Enchantment.KNOCKBACK);
+        if (level > 0) {
+            extraHorizontal += level * parameters[offset + KnockbackInjector.ENCHANTMENT_HORIZONTAL];
+            y += level * parameters[offset + KnockbackInjector.ENCHANTMENT_VERTICAL];
+        }
+
+        x += lookX * extraHorizontal;
+        z += lookZ * extraHorizontal;
+
+        this.attackerLocation.setWorld(null);
+        this.victimLocation.setWorld(null);
+
+        this.queue((LivingEntity) entity, x, y, z,
+                parameters[offset + KnockbackInjector.FRICTION],
+                parameters[offset + KnockbackInjector.VERTICAL_LIMIT]);
+    }
+
+    @EventHandler(priority = EventPriority.LOW, ignoreCancelled = true)
+    public void onPlayerVelocity(PlayerVelocityEvent event) {
+        if (this.pendingIndexes.get(this.store.row(event.getPlayer().getEntityId())) != EntityStateStore.NONE) {
+            event.setCancelled(true);
+        }
+    }
+
+    @Override
+    public void run() {
+        // before setting velocities, so their events aren't cancelled
+        this.clearPending();
+
+        LivingEntity[] victims = this.pendingVictims;
+        double[] knockback = this.pendingKnockback;
+        Vector velocity = this.velocity;
+
+        for (int i = 0; i < this.pendingCount; i++) {
+            LivingEntity victim = victims[i];
+            victims[i] = null;
+
+            if (!victim.isValid()) {
+                continue;
+            }
+
+            int offset = i * STRIDE;
+            double friction = knockback[offset + FRICTION];
+
+            double x = knockback[offset + VELOCITY_X] / friction + knockback[offset + X];
+            double y = knockback[offset + VELOCITY_Y] / friction + knockback[offset + Y];
+            double z = knockback[offset + VELOCITY_Z] / friction + knockback[offset + Z];
+
+            victim.setVelocity(velocity.setX(x).setY(Math.min(y, knockback[offset + VERTICAL_LIMIT])).setZ(z));
+        }
+
+        this.pendingCount = 0;
+    }
+
+    /**
+     * Hits of the same victim within a tick are merged, horizontal knockback
+     * adds up and the highest vertical one is kept. The velocity is saved on
+     * the first hit only, later ones already include vanilla knockback.
+     */
+    private void queue(LivingEntity victim, double x, double y, double z, double friction, double verticalLimit) {
+        int row = this.store.row(victim.getEntityId());
+        boolean acquired = row == EntityStateStore.NONE;
+        if (acquired) {
+            row = this.store.acquire(victim.getEntityId());
+        }
+
+        int index = this.pendingIndexes.get(row);
+        if (index != EntityStateStore.NONE) {
+            int offset = index * STRIDE;
+            this.pendingKnockback[offset + X] += x;
+            this.pendingKnockback[offset + Y] = Math.max(this.pendingKnockback[offset + Y], y);
+            this.pendingKnockback[offset + Z] += z;
+            this.pendingKnockback[offset + FRICTION] = friction;
+            this.pendingKnockback[offset + VERTICAL_LIMIT] = verticalLimit;
+            return;
+        }
+
+        index = this.pendingCount;
+        if (index == this.pendingVictims.length) {
+            this.pendingVictims = Arrays.copyOf(this.pendingVictims, index * 2);
+            this.pendingRows = Arrays.copyOf(this.pendingRows, index * 2);
+            this.pendingAcquired = Arrays.copyOf(this.pendingAcquired, index * 2);
+            this.pendingKnockback = Arrays.copyOf(this.pendingKnockback, index * 2 * STRIDE);
+        }
+
+        int offset = index * STRIDE;
+        this.pendingVictims[index] = victim;
+        this.pendingRows[index] = row;
+        this.pendingAcquired[index] = acquired;
+        this.pendingKnockback[offset + X] = x;
+        this.pendingKnockback[offset + Y] = y;
+        this.pendingKnockback[offset + Z] = z;
+        this.pendingKnockback[offset + FRICTION] = friction;
+        this.pendingKnockback[offset + VERTICAL_LIMIT] = verticalLimit;
+        // the damage event is called before vanilla applies its knockback
+        this.accessor.getVelocity(victim, this.pendingKnockback, offset + VELOCITY_X);
+        this.pendingCount = index + 1;
+
+        long stamp = this.store.beginWrite();
+        try {
+            this.pendingIndexes.set(row, index);
+        } finally {
+            this.store.endWrite(stamp);
+        }
+    }
+
+    /**
+     * Resets pending indexes of victims and frees rows acquired for them.
+     */
+    private void clearPending() {
+        int count = this.pendingCount;
+        if (count == 0) {
+            return;
+        }
+
+        long stamp = this.store.beginWrite();
+        try {
+            for (int i = 0; i < count; i++) {
+                this.pendingIndexes.set(this.pendingRows[i], EntityStateStore.NONE);
+            }
+        } finally {
+            this.store.endWrite(stamp);
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (this.pendingAcquired[i]) {
+                this.pendingAcquired[i] = false;
+                this.store.release(this.pendingVictims[i].getEntityId());
+            }
+        }
+    }
+}
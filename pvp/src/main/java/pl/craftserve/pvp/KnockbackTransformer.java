@@ -0,0 +1,165 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Knockback dealt by melee attacks with an item, applied by
+ * {@link KnockbackListener} instead of the vanilla one. Missing values fall
+ * back to the legacy (1.8) defaults, a transformer without any values
+ * leaves the vanilla knockback.
+ */
+public class KnockbackTransformer implements Transformer {
+    public static final double DEFAULT_HORIZONTAL = 0.4D;
+    public static final double DEFAULT_VERTICAL = 0.4D;
+    public static final double DEFAULT_VERTICAL_LIMIT = 0.4D;
+    public static final double DEFAULT_FRICTION = 2D;
+    public static final double DEFAULT_SPRINT_HORIZONTAL = 0.5D;
+    public static final double DEFAULT_SPRINT_VERTICAL = 0.1D;
+    public static final double DEFAULT_ENCHANTMENT_HORIZONTAL = 0.5D;
+    public static final double DEFAULT_ENCHANTMENT_VERTICAL = 0.1D;
+
+    private final Double horizontal;
+    private final Double vertical;
+    private final Double verticalLimit;
+    private final Double friction;
+    private final Double sprintHorizontal;
+    private final Double sprintVertical;
+    private final Double enchantmentHorizontal;
+    private final Double enchantmentVertical;
+
+    public KnockbackTransformer(Double horizontal, Double vertical, Double verticalLimit, Double friction,
+                                Double sprintHorizontal, Double sprintVertical,
+                                Double enchantmentHorizontal, Double enchantmentVertical) {
+        if (friction != null && friction <= 0D) {
+            throw new IllegalArgumentException("Friction must be positive.");
+        }
+
+        this.horizontal = horizontal;
+        this.vertical = vertical;
+        this.verticalLimit = verticalLimit;
+        this.friction = friction;
+        this.sprintHorizontal = sprintHorizontal;
+        this.sprintVertical = sprintVertical;
+        this.enchantmentHorizontal = enchantmentHorizontal;
+        this.enchantmentVertical = enchantmentVertical;
+    }
+
+    public Double getHorizontal() {
+        return this.horizontal;
+    }
+
+    public Double getVertical() {
+        return this.vertical;
+    }
+
+    /**
+     * @return maximum upwards velocity after the knockback.
+     */
+    public Double getVerticalLimit() {
+        return this.verticalLimit;
+    }
+
+    /**
+     * @return divisor of the victim's velocity before the knockback is added.
+     */
+    public Double getFriction() {
+        return this.friction;
+    }
+
+    public Double getSprintHorizontal() {
+        return this.sprintHorizontal;
+    }
+
+    public Double getSprintVertical() {
+        return this.sprintVertical;
+    }
+
+    /**
+     * @return horizontal knockback per level of the knockback enchantment.
+     */
+    public Double getEnchantmentHorizontal() {
+        return this.enchantmentHorizontal;
+    }
+
+    /**
+     * @return vertical knockback per level of the knockback enchantment.
+     */
+    public Double getEnchantmentVertical() {
+        return this.enchantmentVertical;
+    }
+
+    public boolean isEmpty() {
+        return this.horizontal == null && this.vertical == null && this.verticalLimit == null &&
+                this.friction == null && this.sprintHorizontal == null && this.sprintVertical == null &&
+                this.enchantmentHorizontal == null && this.enchantmentVertical == null;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", KnockbackTransformer.class.getSimpleName() + "[", "]")
+                .add("horizontal=" + this.horizontal)
+                .add("vertical=" + this.vertical)
+                .add("verticalLimit=" + this.verticalLimit)
+                .add("friction=" + this.friction)
+                .add("sprintHorizontal=" + this.sprintHorizontal)
+                .add("sprintVertical=" + this.sprintVertical)
+                .add("enchantmentHorizontal=" + this.enchantmentHorizontal)
+                .add("enchantmentVertical=" + this.enchantmentVertical)
+                .toString();
+    }
+
+    public static KnockbackTransformer deserialize(Map<String, Object> map) throws InvalidConfigurationException {
+        Object knockbackElement = map.get("knockback");
+        if (knockbackElement == null) {
+            return null;
+        } else if (!(knockbackElement instanceof Map<?, ?>)) {
+            throw new InvalidConfigurationException("Knockback must be a map.");
+        }
+
+        Map<?, ?> knockback = (Map<?, ?>) knockbackElement;
+        Double friction = readNumber(knockback, "friction");
+        if (friction != null && friction <= 0D) {
+            throw new InvalidConfigurationException("Knockback friction must be positive.");
+        }
+
+        return new KnockbackTransformer(
+                readNumber(knockback, "horizontal"),
+                readNumber(knockback, "vertical"),
+                readNumber(knockback, "vertical-limit"),
+                friction,
+                readNumber(knockback, "sprint-horizontal"),
+                readNumber(knockback, "sprint-vertical"),
+                readNumber(knockback, "enchantment-horizontal"),
+                readNumber(knockback, "enchantment-vertical"));
+    }
+
+    private static Double readNumber(Map<?, ?> map, String key) throws InvalidConfigurationException {
+        Object value = map.get(key);
+        if (value == null) {
+            return null;
+        } else if (!(value instanceof Number)) {
+            throw new InvalidConfigurationException("Knockback " + key + " must be a number.");
+        }
+
+        return ((Number) value).doubleValue();
+    }
+}
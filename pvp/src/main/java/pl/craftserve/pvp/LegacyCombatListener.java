@@ -0,0 +1,146 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.ImmutableSet;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Applies the legacy {@link CombatMode} to players in configured worlds and
+ * the vanilla one everywhere else. Joins, respawns and world changes are
+ * queued and applied in a single batch every tick, so reconnect storms after
+ * a restart don't schedule a task per player.
+ */
+public class LegacyCombatListener implements Listener, Runnable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final BukkitScheduler scheduler;
+    private final Plugin plugin;
+    private final CombatMode mode;
+    private final Set<String> worlds;
+
+    private BukkitTask task;
+
+    private Player[] pendingPlayers = new Player[INITIAL_CAPACITY];
+    private int pendingCount;
+
+    /**
+     * @param worlds names of worlds using legacy combat, all worlds if empty.
+     */
+    public LegacyCombatListener(BukkitScheduler scheduler, Plugin plugin, CombatMode mode, Set<String> worlds) {
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+        this.mode = Objects.requireNonNull(mode, "mode");
+        this.worlds = ImmutableSet.copyOf(Objects.requireNonNull(worlds, "worlds"));
+    }
+
+    public void start() {
+        this.plugin.getServer().getOnlinePlayers().forEach(this::queue);
+        this.task = this.scheduler.runTaskTimer(this.plugin, this, 1L, 1L);
+    }
+
+    public void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+
+        Arrays.fill(this.pendingPlayers, 0, this.pendingCount, null);
+        this.pendingCount = 0;
+
+        for (Player player : this.plugin.getServer().getOnlinePlayers()) {
+            apply(player, CombatMode.VANILLA);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        this.queue(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRespawn(PlayerRespawnEvent event) {
+        this.queue(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChangedWorld(PlayerChangedWorldEvent event) {
+        this.queue(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        // base values are saved with the player
+        apply(event.getPlayer(), CombatMode.VANILLA);
+    }
+
+    private void queue(Player player) {
+        int index = this.pendingCount;
+        if (index == this.pendingPlayers.length) {
+            this.pendingPlayers = Arrays.copyOf(this.pendingPlayers, index * 2);
+        }
+
+        this.pendingPlayers[index] = player;
+        this.pendingCount = index + 1;
+    }
+
+    @Override
+    public void run() {
+        Player[] players = this.pendingPlayers;
+        for (int i = 0; i < this.pendingCount; i++) {
+            Player player = players[i];
+            players[i] = null;
+
+            if (player.isOnline()) {
+                apply(player, this.getMode(player.getWorld().getName()));
+            }
+        }
+
+        this.pendingCount = 0;
+    }
+
+    public CombatMode getMode(String worldName) {
+        return this.worlds.isEmpty() || this.worlds.contains(worldName) ? this.mode : CombatMode.VANILLA;
+    }
+
+    private static void apply(Player player, CombatMode mode) {
+        AttributeInstance attackSpeed = player.getAttribute(Attribute.GENERIC_ATTACK_SPEED);
+        if (attackSpeed != null && attackSpeed.getBaseValue() != mode.getAttackSpeed()) {
+            attackSpeed.setBaseValue(mode.getAttackSpeed());
+        }
+
+        if (player.getMaximumNoDamageTicks() != mode.getMaximumNoDamageTicks()) {
+            player.setMaximumNoDamageTicks(mode.getMaximumNoDamageTicks());
+        }
+    }
+}
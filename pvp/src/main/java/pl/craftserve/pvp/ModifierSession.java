@@ -17,28 +17,48 @@
 package pl.craftserve.pvp;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Multimap;
 import org.bukkit.Material;
+import org.bukkit.attribute.Attribute;
 
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ModifierSession {
     private final AtomicBoolean modified = new AtomicBoolean();
-    private Multimap<Material, Transformer> image = ImmutableMultimap.of();
+    // reassigned as a whole, so readers on other threads see either image
+    private volatile Multimap<Material, Transformer> image = ImmutableMultimap.of();
+    private volatile Map<Attribute, AttributeRangeTransformer> rangeImage = ImmutableMap.of();
 
     private final Injector<Transformer> injector;
+    private final RangeInjector rangeInjector;
     private final Multimap<Material, Transformer> transformers;
+    private final Map<Attribute, AttributeRangeTransformer> ranges;
 
     public ModifierSession(Injector<Transformer> injector, Multimap<Material, Transformer> transformers) {
+        this(injector, null, transformers, ImmutableMap.of());
+    }
+
+    public ModifierSession(Injector<Transformer> injector, RangeInjector rangeInjector,
+                           Multimap<Material, Transformer> transformers,
+                           Map<Attribute, AttributeRangeTransformer> ranges) {
         Objects.requireNonNull(injector, "injector");
         Objects.requireNonNull(transformers, "transformers");
+        Objects.requireNonNull(ranges, "ranges");
+
+        if (rangeInjector == null && !ranges.isEmpty()) {
+            throw new IllegalArgumentException("Attribute ranges require a range injector.");
+        }
 
         this.injector = injector;
+        this.rangeInjector = rangeInjector;
         this.transformers = ImmutableMultimap.copyOf(transformers);
+        this.ranges = ImmutableMap.copyOf(ranges);
     }
 
     public void modify() throws Injector.InjectException {
@@ -46,6 +66,16 @@ public class ModifierSession {
             throw new IllegalStateException("Already modified!");
         }
 
+        // Ranges go first, so values injected below are not clamped to vanilla bounds.
+        ImmutableMap.Builder<Attribute, AttributeRangeTransformer> rangeImage = ImmutableMap.builder();
+        try {
+            for (Map.Entry<Attribute, AttributeRangeTransformer> entry : this.ranges.entrySet()) {
+                rangeImage.put(entry.getKey(), this.rangeInjector.inject(entry.getKey(), entry.getValue()));
+            }
+        } finally {
+            this.rangeImage = rangeImage.build();
+        }
+
         ImmutableMultimap.Builder<Material, Transformer> image = ImmutableMultimap.builder();
         try {
             for (Map.Entry<Material, Transformer> entry : this.transformers.entries()) {
@@ -64,6 +94,14 @@ public class ModifierSession {
         return this.transformers;
     }
 
+    public Map<Attribute, AttributeRangeTransformer> getRangeImage() {
+        return this.rangeImage;
+    }
+
+    public Map<Attribute, AttributeRangeTransformer> getRanges() {
+        return this.ranges;
+    }
+
     public void restore() throws Injector.InjectException {
         if (!this.modified.compareAndSet(true, false)) {
             throw new IllegalStateException("Not modified!");
@@ -83,5 +121,18 @@ public class ModifierSession {
         } finally {
             this.image = ImmutableMultimap.copyOf(image);
         }
+
+        Map<Attribute, AttributeRangeTransformer> rangeImage = new LinkedHashMap<>(this.rangeImage);
+        try {
+            Iterator<Map.Entry<Attribute, AttributeRangeTransformer>> it = rangeImage.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Attribute, AttributeRangeTransformer> entry = it.next();
+
+                this.rangeInjector.inject(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+        } finally {
+            this.rangeImage = ImmutableMap.copyOf(rangeImage);
+        }
     }
 }
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.ImmutableMap;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.attribute.AttributeModifier;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.player.PlayerDropItemEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerItemBreakEvent;
+import org.bukkit.event.player.PlayerItemHeldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerSwapHandItemsEvent;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies {@link OverlayProfile}s to players as attribute modifiers of the
+ * player entity, on top of the global transformers. Players get the first
+ * profile they have the {@code craftservepvp.profile.<name>} permission
+ * for, other plugins can switch it with {@link #setProfile(Player, OverlayProfile)}.
+ *
+ * Equipment changes only mark the player, marked players are compared with
+ * what was applied once per tick, so rapid slot switching costs a single
+ * update. Modifiers are persisted with the player, so they are removed when
+ * the player quits or the plugin is disabled.
+ */
+public class OverlayListener implements Listener, Runnable {
+    static final Logger logger = Logger.getLogger(OverlayListener.class.getName());
+
+    public static final String PERMISSION_PREFIX = "craftservepvp.profile.";
+
+    private static final Attribute[] ATTRIBUTES = Attribute.values();
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NONE = -1;
+
+    private final BukkitScheduler scheduler;
+    private final Plugin plugin;
+    private final Map<String, OverlayProfile> profiles;
+    private final String[] permissions;
+    private final OverlayProfile[] permissionProfiles;
+
+    private final Map<UUID, PlayerOverlay> players = new HashMap<>();
+    private PlayerOverlay[] pending = new PlayerOverlay[INITIAL_CAPACITY];
+    private int pendingCount;
+
+    private BukkitTask task;
+
+    public OverlayListener(BukkitScheduler scheduler, Plugin plugin, Map<String, OverlayProfile> profiles) {
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+        this.profiles = ImmutableMap.copyOf(Objects.requireNonNull(profiles, "profiles"));
+
+        this.permissionProfiles = this.profiles.values().toArray(new OverlayProfile[0]);
+        this.permissions = new String[this.permissionProfiles.length];
+        for (int i = 0; i < this.permissions.length; i++) {
+            this.permissions[i] = PERMISSION_PREFIX + this.permissionProfiles[i].getName();
+        }
+    }
+
+    public void start() {
+        for (Player player : this.plugin.getServer().getOnlinePlayers()) {
+            this.join(player);
+        }
+
+        this.task = this.scheduler.runTaskTimer(this.plugin, this, 1L, 1L);
+    }
+
+    public void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+
+        this.players.values().forEach(this::removeAll);
+        this.players.clear();
+
+        Arrays.fill(this.pending, 0, this.pendingCount, null);
+        this.pendingCount = 0;
+    }
+
+    public Optional<OverlayProfile> getProfile(String name) {
+        return Optional.ofNullable(this.profiles.get(name));
+    }
+
+    public Optional<OverlayProfile> getProfile(Player player) {
+        Objects.requireNonNull(player, "player");
+
+        PlayerOverlay overlay = this.players.get(player.getUniqueId());
+        return overlay == null ? Optional.empty() : Optional.ofNullable(overlay.profile);
+    }
+
+    /**
+     * Switches the profile of the given player, {@code null} removes it.
+     * Modifiers are updated in the next tick.
+     */
+    public void setProfile(Player player, OverlayProfile profile) {
+        Objects.requireNonNull(player, "player");
+
+        PlayerOverlay overlay = this.players.get(player.getUniqueId());
+        if (overlay == null || overlay.profile == profile) {
+            return;
+        }
+
+        this.removeAll(overlay);
+        overlay.profile = profile;
+        this.mark(overlay);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        this.join(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        PlayerOverlay overlay = this.players.remove(event.getPlayer().getUniqueId());
+        if (overlay != null) {
+            this.removeAll(overlay);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRespawn(PlayerRespawnEvent event) {
+        PlayerOverlay overlay = this.players.get(event.getPlayer().getUniqueId());
+        if (overlay != null) {
+            // the new entity doesn't have any modifiers
+            overlay.reset();
+            this.mark(overlay);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onItemHeld(PlayerItemHeldEvent event) {
+        this.mark(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onSwapHandItems(PlayerSwapHandItemsEvent event) {
+        this.mark(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInteract(PlayerInteractEvent event) {
+        // right-clicking armor equips it
+        if (event.getItem() != null) {
+            this.mark(event.getPlayer());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onDropItem(PlayerDropItemEvent event) {
+        this.mark(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPickupItem(EntityPickupItemEvent event) {
+        Entity entity = event.getEntity();
+        if (entity instanceof Player) {
+            this.mark((Player) entity);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onItemBreak(PlayerItemBreakEvent event) {
+        this.mark(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInventoryClose(InventoryCloseEvent event) {
+        HumanEntity player = event.getPlayer();
+        if (player instanceof Player) {
+            this.mark((Player) player);
+        }
+    }
+
+    @Override
+    public void run() {
+        PlayerOverlay[] pending = this.pending;
+        for (int i = 0; i < this.pendingCount; i++) {
+            PlayerOverlay overlay = pending[i];
+            pending[i] = null;
+
+            overlay.pending = false;
+            if (overlay.player.isOnline()) {
+                this.update(overlay);
+            }
+        }
+
+        this.pendingCount = 0;
+    }
+
+    private void join(Player player) {
+        PlayerOverlay overlay = new PlayerOverlay(player);
+        this.removeStale(overlay);
+
+        for (int i = 0; i < this.permissions.length; i++) {
+            if (player.hasPermission(this.permissions[i])) {
+                overlay.profile = this.permissionProfiles[i];
+                break;
+            }
+        }
+
+        this.players.put(player.getUniqueId(), overlay);
+        this.mark(overlay);
+    }
+
+    private void mark(Player player) {
+        PlayerOverlay overlay = this.players.get(player.getUniqueId());
+        if (overlay != null) {
+            this.mark(overlay);
+        }
+    }
+
+    private void mark(PlayerOverlay overlay) {
+        if (overlay.pending || overlay.profile == null) {
+            return;
+        }
+
+        int index = this.pendingCount;
+        if (index == this.pending.length) {
+            this.pending = Arrays.copyOf(this.pending, index * 2);
+        }
+
+        this.pending[index] = overlay;
+        this.pendingCount = index + 1;
+        overlay.pending = true;
+    }
+
+    private void update(PlayerOverlay overlay) {
+        OverlayProfile profile = overlay.profile;
+        if (profile == null) {
+            return;
+        }
+
+        PlayerInventory inventory = overlay.player.getInventory();
+        for (int slot = 0; slot < OverlayProfile.SLOTS.length; slot++) {
+            int material = ordinal(inventory, slot);
+            int applied = overlay.applied[slot];
+            if (material == applied) {
+                continue;
+            }
+
+            if (applied != NONE) {
+                this.apply(overlay, profile.getAttributes(slot, applied), profile.getModifiers(slot, applied), false);
+            }
+
+            this.apply(overlay, profile.getAttributes(slot, material), profile.getModifiers(slot, material), true);
+            overlay.applied[slot] = material;
+        }
+    }
+
+    private void removeAll(PlayerOverlay overlay) {
+        OverlayProfile profile = overlay.profile;
+        if (profile != null && overlay.player.isValid()) {
+            for (int slot = 0; slot < OverlayProfile.SLOTS.length; slot++) {
+                int applied = overlay.applied[slot];
+                if (applied != NONE) {
+                    this.apply(overlay, profile.getAttributes(slot, applied), profile.getModifiers(slot, applied), false);
+                }
+            }
+        }
+
+        overlay.reset();
+    }
+
+    /**
+     * Removes modifiers left over after a crash, when they couldn't have
+     * been removed on quit. Modifiers returned by the instance have no slot,
+     * so they never equal ours, but removal matches by UUID and ignores
+     * modifiers which are absent.
+     */
+    private void removeStale(PlayerOverlay overlay) {
+        for (OverlayProfile profile : this.permissionProfiles) {
+            for (int slot = 0; slot < OverlayProfile.SLOTS.length; slot++) {
+                for (int material = 0; material < OverlayProfile.MATERIALS; material++) {
+                    Attribute[] attributes = profile.getAttributes(slot, material);
+                    AttributeModifier[] modifiers = profile.getModifiers(slot, material);
+
+                    for (int i = 0; i < modifiers.length; i++) {
+                        AttributeInstance instance = overlay.getAttribute(attributes[i]);
+                        if (instance != null) {
+                            instance.removeModifier(modifiers[i]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void apply(PlayerOverlay overlay, Attribute[] attributes, AttributeModifier[] modifiers, boolean add) {
+        for (int i = 0; i < modifiers.length; i++) {
+            AttributeInstance instance = overlay.getAttribute(attributes[i]);
+            if (instance == null) {
+                continue;
+            }
+
+            try {
+                if (add) {
+                    instance.addModifier(modifiers[i]);
+                } else {
+                    instance.removeModifier(modifiers[i]);
+                }
+            } catch (IllegalArgumentException e) {
+                logger.log(Level.WARNING, "Could not apply " + modifiers[i] + " to " + overlay.player.getName() + ".", e);
+            }
+        }
+    }
+
+    private static int ordinal(PlayerInventory inventory, int slot) {
+        ItemStack item;
+        switch (OverlayProfile.SLOTS[slot]) {
+            case HAND: item = inventory.getItemInMainHand(); break;
+            case OFF_HAND: item = inventory.getItemInOffHand(); break;
+            case HEAD: item = inventory.getHelmet(); break;
+            case CHEST: item = inventory.getChestplate(); break;
+            case LEGS: item = inventory.getLeggings(); break;
+            case FEET: item = inventory.getBoots(); break;
+            default: item = null;
+        }
+
+        return item == null ? DamageContext.AIR : item.getType().ordinal();
+    }
+
+    static final class PlayerOverlay {
+        final Player player;
+        final int[] applied = new int[OverlayProfile.SLOTS.length];
+
+        // wrappers looked up once per entity, indexed by attribute ordinal
+        final AttributeInstance[] instances = new AttributeInstance[ATTRIBUTES.length];
+
+        OverlayProfile profile;
+        boolean pending;
+
+        PlayerOverlay(Player player) {
+            this.player = Objects.requireNonNull(player, "player");
+            this.reset();
+        }
+
+        AttributeInstance getAttribute(Attribute attribute) {
+            AttributeInstance instance = this.instances[attribute.ordinal()];
+            if (instance == null) {
+                instance = this.player.getAttribute(attribute);
+                this.instances[attribute.ordinal()] = instance;
+            }
+
+            return instance;
+        }
+
+        void reset() {
+            Arrays.fill(this.applied, NONE);
+            Arrays.fill(this.instances, null);
+        }
+    }
+}
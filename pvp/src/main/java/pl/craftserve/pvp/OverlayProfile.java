@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.Multimap;
+import org.bukkit.Material;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeModifier;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.inventory.EquipmentSlot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.UUID;
+
+/**
+ * Attribute modifiers applied to players using this profile, precompiled
+ * per equipment slot and material ordinal so equipment changes only index
+ * arrays. Built from {@link AttributeTransformer}s of a profile file.
+ */
+public final class OverlayProfile {
+    static final EquipmentSlot[] SLOTS = EquipmentSlot.values();
+
+    static final int MATERIALS = Material.values().length;
+    private static final Attribute[] NO_ATTRIBUTES = new Attribute[0];
+    private static final AttributeModifier[] NO_MODIFIERS = new AttributeModifier[0];
+
+    private final String name;
+    private final Attribute[][][] attributes;
+    private final AttributeModifier[][][] modifiers;
+
+    private OverlayProfile(String name, Attribute[][][] attributes, AttributeModifier[][][] modifiers) {
+        this.name = Objects.requireNonNull(name, "name");
+        this.attributes = attributes;
+        this.modifiers = modifiers;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return attributes of {@link #getModifiers(int, int)} at the same
+     * indexes, must not be modified.
+     */
+    public Attribute[] getAttributes(int slot, int material) {
+        Attribute[] attributes = this.attributes[slot][material];
+        return attributes == null ? NO_ATTRIBUTES : attributes;
+    }
+
+    /**
+     * @return modifiers applied while the material is in the given slot,
+     * must not be modified.
+     */
+    public AttributeModifier[] getModifiers(int slot, int material) {
+        AttributeModifier[] modifiers = this.modifiers[slot][material];
+        return modifiers == null ? NO_MODIFIERS : modifiers;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", OverlayProfile.class.getSimpleName() + "[", "]")
+                .add("name=" + this.name)
+                .toString();
+    }
+
+    /**
+     * Modifiers without a slot apply to the main hand. Modifier UUIDs must
+     * be unique within the profile, since all of them may be applied to the
+     * same player at once.
+     */
+    public static OverlayProfile compile(String name, Multimap<Material, Transformer> transformers)
+            throws InvalidConfigurationException {
+        Objects.requireNonNull(name, "name");
+        Objects.requireNonNull(transformers, "transformers");
+
+        Attribute[][][] attributes = new Attribute[SLOTS.length][MATERIALS][];
+        AttributeModifier[][][] modifiers = new AttributeModifier[SLOTS.length][MATERIALS][];
+        Set<UUID> uniqueIds = new HashSet<>();
+
+        for (Map.Entry<Material, Transformer> entry : transformers.entries()) {
+            if (!(entry.getValue() instanceof AttributeTransformer)) {
+                continue;
+            }
+
+            int material = entry.getKey().ordinal();
+            Multimap<Attribute, AttributeModifier> attributeModifiers =
+                    ((AttributeTransformer) entry.getValue()).getAttributeModifiers();
+
+            for (EquipmentSlot equipmentSlot : SLOTS) {
+                List<Attribute> slotAttributes = new ArrayList<>();
+                List<AttributeModifier> slotModifiers = new ArrayList<>();
+
+                for (Map.Entry<Attribute, AttributeModifier> modifier : attributeModifiers.entries()) {
+                    EquipmentSlot modifierSlot = modifier.getValue().getSlot();
+                    if ((modifierSlot == null ? EquipmentSlot.HAND : modifierSlot) == equipmentSlot) {
+                        if (!uniqueIds.add(modifier.getValue().getUniqueId())) {
+                            throw new InvalidConfigurationException("Duplicate attribute modifier UUID " +
+                                    modifier.getValue().getUniqueId() + " in profile " + name + ".");
+                        }
+
+                        slotAttributes.add(modifier.getKey());
+                        slotModifiers.add(modifier.getValue());
+                    }
+                }
+
+                if (!slotModifiers.isEmpty()) {
+                    int slot = equipmentSlot.ordinal();
+                    attributes[slot][material] = concat(attributes[slot][material], slotAttributes.toArray(NO_ATTRIBUTES));
+                    modifiers[slot][material] = concat(modifiers[slot][material], slotModifiers.toArray(NO_MODIFIERS));
+                }
+            }
+        }
+
+        return new OverlayProfile(name, attributes, modifiers);
+    }
+
+    private static <T> T[] concat(T[] first, T[] second) {
+        if (first == null) {
+            return second;
+        }
+
+        T[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
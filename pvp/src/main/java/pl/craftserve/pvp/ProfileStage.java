@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Applies weapon, armor and weapon-vs-armor multipliers of the active
+ * {@link DamageProfile}. Profiles of {@link RegionIndex} regions containing
+ * the victim take precedence over the global one.
+ */
+public class ProfileStage implements DamageStage {
+    private final DamageInjector injector;
+    private final AtomicReference<RegionIndex> regions;
+
+    // last looked up world, only accessed from the main thread
+    private RegionIndex cachedIndex;
+    private World cachedWorld;
+    private RegionIndex.WorldIndex cachedWorldIndex;
+
+    public ProfileStage(DamageInjector injector) {
+        this(injector, new AtomicReference<>(RegionIndex.EMPTY));
+    }
+
+    public ProfileStage(DamageInjector injector, AtomicReference<RegionIndex> regions) {
+        this.injector = Objects.requireNonNull(injector, "injector");
+        this.regions = Objects.requireNonNull(regions, "regions");
+    }
+
+    @Override
+    public double apply(DamageContext context, double damage) {
+        DamageProfile profile = this.resolveProfile(context);
+        if (profile.isEmpty()) {
+            return damage;
+        }
+
+        return damage * profile.getMultiplier(context.getWeapon(), context.getArmor());
+    }
+
+    private DamageProfile resolveProfile(DamageContext context) {
+        RegionIndex index = this.regions.get();
+        if (index.isEmpty()) {
+            return this.injector.getProfile();
+        }
+
+        World world = context.getWorld();
+        if (index != this.cachedIndex || world != this.cachedWorld) {
+            this.cachedIndex = index;
+            this.cachedWorld = world;
+            this.cachedWorldIndex = index.getWorld(world.getName());
+        }
+
+        RegionIndex.WorldIndex worldIndex = this.cachedWorldIndex;
+        if (worldIndex != null) {
+            Location location = context.getLocation();
+            RegionIndex.Region region = worldIndex.resolve(
+                    location.getBlockX(), location.getBlockY(), location.getBlockZ());
+            if (region != null) {
+                return region.getProfile();
+            }
+        }
+
+        return this.injector.getProfile();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.Multimap;
+import org.bukkit.Material;
+
+/**
+ * Service registered in the {@link org.bukkit.plugin.ServicesManager} for
+ * plugins which need stats injected by this plugin, such as kits, shops or
+ * item tooltips. {@link TransformersChangeEvent} is called whenever the
+ * stats change, so they can be cached until then. All methods are safe to
+ * call from any thread.
+ */
+public interface PvpApi {
+    /**
+     * @return current state, replaced as a whole on every change. Read it
+     * once if several values must be consistent with each other.
+     */
+    TransformerState getState();
+
+    /**
+     * @return effective stats of injected transformers, {@link StatTable#EMPTY}
+     * if the server is not modified.
+     */
+    default StatTable getStats() {
+        return this.getState().getStats();
+    }
+
+    /**
+     * @return injected transformers, empty if the server is not modified.
+     */
+    default Multimap<Material, Transformer> getTransformers() {
+        return this.getState().getTransformers();
+    }
+
+    default boolean isModified() {
+        return this.getState().isModified();
+    }
+}
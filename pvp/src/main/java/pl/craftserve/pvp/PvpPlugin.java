@@ -16,57 +16,90 @@
 
 package pl.craftserve.pvp;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
-import com.google.common.io.Closer;
-import com.google.gson.JsonParser;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
 import org.bukkit.Registry;
 import org.bukkit.Server;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.entity.EntityType;
 import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitScheduler;
 import pl.craftserve.metrics.pluginmetricslite.MetricsLite;
 
-import java.io.BufferedInputStream;
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.lang.reflect.Constructor;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public final class PvpPlugin extends JavaPlugin {
+public final class PvpPlugin extends JavaPlugin implements PvpApi {
     static final Logger logger = Logger.getLogger(PvpPlugin.class.getName());
 
-    private static final long DAT_PROTOCOL_VERSION = 2721351624263755569L;
+    private static final String OVERRIDE_FILE = "transformers.yml";
+    private static final String HIT_LOG_DIRECTORY = "hits";
 
     private static final String REPOSITORY_OWNER = "Craftserve";
     private static final String REPOSITORY_NAME = "CraftservePVP";
     private static final URL REPOSITORY_URL;
+    private static final URL RELEASE_URL;
 
     static {
         try {
             REPOSITORY_URL = new URL("https://github.com/" + REPOSITORY_OWNER + "/" + REPOSITORY_NAME);
+            RELEASE_URL = Updater.latestRelease(REPOSITORY_OWNER, REPOSITORY_NAME);
         } catch (MalformedURLException e) {
             throw new Error(e);
         }
     }
 
     private Injector<Transformer> injector;
+    private CooldownInjector cooldownInjector;
+    private DamageInjector damageInjector;
+    private KnockbackInjector knockbackInjector;
+    private RangeInjector rangeInjector;
     private ModifierSession session;
+    private final AtomicReference<TransformerState> state = new AtomicReference<>(TransformerState.EMPTY);
     private Updater updater;
+    private JoinMessageDispatcher joinMessageDispatcher;
+    private CooldownListener cooldownListener;
+    private KnockbackListener knockbackListener;
+    private CombatTagger combatTagger;
+    private EntityStateStore entityStateStore;
+    private EntityAccessor entityAccessor;
+    private RegenerationEngine regenerationEngine;
+    private AttackChargeTracker attackChargeTracker;
+    private ArmorListener armorListener;
+    private IoExecutor ioExecutor;
+    private FileWatcher fileWatcher;
+    private OverlayListener overlayListener;
+    private LegacyCombatListener legacyCombatListener;
+    private AttackFilterListener attackFilterListener;
+    private DamageIndicatorListener damageIndicatorListener;
+    private HitRecorder hitRecorder;
+    private HitLog hitLog;
 
     @Override
     public void onEnable() {
@@ -77,8 +110,28 @@ public final class PvpPlugin extends JavaPlugin {
         PluginManager pluginManager = server.getPluginManager();
         BukkitScheduler scheduler = server.getScheduler();
 
+        this.ioExecutor = new IoExecutor(this.getName());
+        logger.info("Using " + (this.ioExecutor.isVirtual() ? "virtual" : "platform") + " threads for I/O.");
+
+        this.joinMessageDispatcher = new JoinMessageDispatcher(scheduler, this);
+        this.joinMessageDispatcher.start();
+        pluginManager.registerEvents(this.joinMessageDispatcher, this);
+
+        this.entityStateStore = new EntityStateStore(Math.max(1, server.getMaxPlayers()));
+        EntityStateListener entityStateListener = new EntityStateListener(server, this.entityStateStore);
+        entityStateListener.start();
+        pluginManager.registerEvents(entityStateListener, this);
+
+        this.cooldownInjector = new CooldownInjector();
+        this.damageInjector = new DamageInjector();
+        this.knockbackInjector = new KnockbackInjector();
+
         try {
-            this.injector = this.createInjector(serverVersion, this.getClass().getPackage());
+            this.injector = new Injector.Composite(this.createInjector(serverVersion, this.getClass().getPackage()),
+                    ImmutableMap.<Class<? extends Transformer>, Injector<? extends Transformer>>of(
+                            CooldownTransformer.class, this.cooldownInjector,
+                            DamageTransformer.class, this.damageInjector,
+                            KnockbackTransformer.class, this.knockbackInjector));
         } catch (ClassNotFoundException e) {
             logger.log(Level.SEVERE, "Your server version or implementation (" + fullServerVersion + ") is unsupported.", e);
             this.setEnabled(false);
@@ -91,24 +144,43 @@ public final class PvpPlugin extends JavaPlugin {
 
         logger.log(Level.INFO, "Using " + serverVersion + " injector.");
 
-        Instant loadInstant = Instant.now();
-        Multimap<Material, Transformer> transformers;
+        try {
+            this.rangeInjector = this.createAdapter(serverVersion, this.getClass().getPackage(),
+                    "AttributeRangeInjector", RangeInjector.class);
+        } catch (ReflectiveOperationException e) {
+            logger.log(Level.WARNING, "Could not create range injector for " + fullServerVersion +
+                    ", attribute ranges won't be modified.", e);
+        }
 
         try {
-            transformers = this.readJarDatFile(serverVersion + ".dat");
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Could not load transformers.", e);
-            transformers = ImmutableMultimap.of();
+            this.entityAccessor = this.createAdapter(serverVersion, this.getClass().getPackage(),
+                    "CraftEntityAccessor", EntityAccessor.class);
+        } catch (ReflectiveOperationException e) {
+            logger.log(Level.WARNING, "Could not create entity accessor for " + fullServerVersion +
+                    ", entities will be read through the Bukkit API.", e);
+            this.entityAccessor = EntityAccessor.API;
         }
 
-        Duration loadDuration = Duration.between(loadInstant, Instant.now());
-        logger.info("Loaded " + transformers.size() + " transformer(s) for " + transformers.keySet().size() +
-                " material(s), took " + loadDuration.toMillis() / 1000F + "s.");
+        this.saveDefaultConfig();
+
+        Map<Attribute, AttributeRangeTransformer> ranges;
+        try {
+            ranges = this.deserializeRanges(this.getConfig().getConfigurationSection("attribute-ranges"));
+        } catch (InvalidConfigurationException e) {
+            logger.log(Level.SEVERE, "Could not load attribute ranges.", e);
+            ranges = ImmutableMap.of();
+        }
 
-        if (!transformers.isEmpty()) {
+        if (this.rangeInjector == null && !ranges.isEmpty()) {
+            logger.warning("Ignoring " + ranges.size() + " attribute range(s), range injector is unavailable.");
+            ranges = ImmutableMap.of();
+        }
+
+        Multimap<Material, Transformer> transformers = this.loadTransformers(serverVersion);
+        if (!transformers.isEmpty() || !ranges.isEmpty()) {
             Instant injectInstant = Instant.now();
             try {
-                this.modifyServer(transformers);
+                this.modifyServer(transformers, ranges);
             } catch (Injector.InjectException e) {
                 logger.log(Level.SEVERE, "Could not inject transformers.", e);
                 this.setEnabled(false);
@@ -118,14 +190,46 @@ public final class PvpPlugin extends JavaPlugin {
             Duration injectDuration = Duration.between(injectInstant, Instant.now());
             logger.info("Injected, took " + injectDuration.toMillis() / 1000F + "s.");
 
-            pluginManager.registerEvents(new CraftserveListener(scheduler, this, REPOSITORY_URL), this);
+            this.joinMessageDispatcher.register(CraftserveMessage.DELAY, null)
+                    .set(CraftserveMessage.create(this.getName(), REPOSITORY_URL));
+        }
+
+        // registered even without cooldowns, they may be added by a later reload
+        this.cooldownListener = new CooldownListener(scheduler, this, this.cooldownInjector);
+        this.cooldownListener.start();
+        pluginManager.registerEvents(this.cooldownListener, this);
+
+        this.fileWatcher = new FileWatcher(this.ioExecutor);
+        if (this.isModified()) {
+            this.fileWatcher.watch(this.getDataFolder(), file -> file.getName().equals(OVERRIDE_FILE),
+                    () -> scheduler.runTask(this, () -> this.reloadTransformers(serverVersion)));
         }
 
-        JsonParser jsonParser = new JsonParser();
+        this.enableDamagePipeline(server, scheduler, pluginManager);
+        this.enablePlayerProfiles(scheduler, pluginManager);
+        this.enableLegacyCombat(scheduler, pluginManager);
+        this.enableKnockback(scheduler, pluginManager);
+        this.enableCombatTag(server, scheduler, pluginManager);
+        this.enableRegeneration(server, scheduler, pluginManager);
+        this.enableArmor(pluginManager, ranges);
+        this.enableAttackFilter(server, serverVersion, scheduler, pluginManager);
+        this.enableDamageIndicators(scheduler, pluginManager);
+        this.enableHitLog(server, serverVersion, scheduler, pluginManager);
+        this.fileWatcher.start();
+
+        // registered last, other MONITOR handlers read the charge before it is reset
+        if (this.attackChargeTracker != null) {
+            pluginManager.registerEvents(this.attackChargeTracker, this);
+        }
 
-        this.updater = new Updater(scheduler, this, jsonParser, REPOSITORY_OWNER, REPOSITORY_NAME);
+        String updaterDirectory = this.getConfig().getString("updater.cache-directory");
+        JoinMessageDispatcher.Message notification = this.joinMessageDispatcher.register(
+                Updater.NOTIFICATION_DELAY, Updater.NOTIFICATION_PERMISSION);
+        this.updater = new Updater(this, this.ioExecutor, notification, RELEASE_URL,
+                updaterDirectory == null ? this.getDataFolder() : new File(updaterDirectory));
         this.updater.start();
-        pluginManager.registerEvents(this.updater, this);
+
+        server.getServicesManager().register(PvpApi.class, this, this, ServicePriority.Normal);
 
         MetricsLite.start(this);
     }
@@ -139,6 +243,71 @@ public final class PvpPlugin extends JavaPlugin {
             this.updater = null;
         }
 
+        if (this.joinMessageDispatcher != null) {
+            this.joinMessageDispatcher.stop();
+            this.joinMessageDispatcher = null;
+        }
+
+        if (this.attackFilterListener != null) {
+            this.attackFilterListener.stop();
+            this.attackFilterListener = null;
+        }
+
+        if (this.hitRecorder != null) {
+            this.hitRecorder.stop();
+            this.hitRecorder = null;
+        }
+
+        if (this.hitLog != null) {
+            this.hitLog.stop();
+            this.hitLog = null;
+        }
+
+        if (this.damageIndicatorListener != null) {
+            this.damageIndicatorListener.stop();
+            this.damageIndicatorListener = null;
+        }
+
+        if (this.cooldownListener != null) {
+            this.cooldownListener.stop();
+            this.cooldownListener = null;
+        }
+
+        if (this.regenerationEngine != null) {
+            this.regenerationEngine.stop();
+            this.regenerationEngine = null;
+        }
+
+        if (this.attackChargeTracker != null) {
+            this.attackChargeTracker.stop();
+            this.attackChargeTracker = null;
+        }
+
+        if (this.combatTagger != null) {
+            this.combatTagger.stop();
+            this.combatTagger = null;
+        }
+
+        if (this.knockbackListener != null) {
+            this.knockbackListener.stop();
+            this.knockbackListener = null;
+        }
+
+        if (this.legacyCombatListener != null) {
+            this.legacyCombatListener.stop();
+            this.legacyCombatListener = null;
+        }
+
+        if (this.overlayListener != null) {
+            this.overlayListener.stop();
+            this.overlayListener = null;
+        }
+
+        if (this.fileWatcher != null) {
+            this.fileWatcher.stop();
+            this.fileWatcher = null;
+        }
+
         if (this.isModified()) {
             try {
                 this.restoreServer();
@@ -146,33 +315,515 @@ public final class PvpPlugin extends JavaPlugin {
                 logger.log(Level.SEVERE, "Could not restore the server to previous values.", e);
             }
         }
+
+        if (this.ioExecutor != null) {
+            this.ioExecutor.shutdown();
+            this.ioExecutor = null;
+        }
+    }
+
+    /**
+     * Reads transformers bundled for the server version, overridden by
+     * {@link #OVERRIDE_FILE} if it exists.
+     */
+    private Multimap<Material, Transformer> loadTransformers(String serverVersion) {
+        Objects.requireNonNull(serverVersion, "serverVersion");
+
+        Instant loadInstant = Instant.now();
+        Multimap<Material, Transformer> transformers;
+
+        try {
+            transformers = Transformers.readJarDatFile(this.getClass().getClassLoader(), serverVersion + ".dat");
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not load transformers.", e);
+            transformers = ImmutableMultimap.of();
+        }
+
+        File overrideFile = new File(this.getDataFolder(), OVERRIDE_FILE);
+        if (overrideFile.exists()) {
+            try {
+                Multimap<Material, Transformer> overrides = Transformers.readYaml(overrideFile);
+                transformers = Transformers.override(transformers, overrides);
+
+                logger.info("Overridden " + overrides.size() + " transformer(s) with " + overrideFile.getName() + ".");
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Could not load transformer overrides from " + overrideFile.getName() + ".", e);
+            }
+        }
+
+        Duration loadDuration = Duration.between(loadInstant, Instant.now());
+        logger.info("Loaded " + transformers.size() + " transformer(s) for " + transformers.keySet().size() +
+                " material(s), took " + loadDuration.toMillis() / 1000F + "s.");
+        return transformers;
+    }
+
+    private void reloadTransformers(String serverVersion) {
+        if (!this.isEnabled() || !this.isModified()) {
+            return;
+        }
+
+        Multimap<Material, Transformer> transformers = this.loadTransformers(serverVersion);
+        try {
+            this.changeServer(transformers);
+        } catch (Injector.InjectException e) {
+            logger.log(Level.SEVERE, "Could not inject reloaded transformers.", e);
+        }
+    }
+
+    private void enableDamagePipeline(Server server, BukkitScheduler scheduler, PluginManager pluginManager) {
+        Objects.requireNonNull(server, "server");
+        Objects.requireNonNull(scheduler, "scheduler");
+        Objects.requireNonNull(pluginManager, "pluginManager");
+
+        ImmutableList.Builder<DamageStage> stages = ImmutableList.builder();
+
+        // regions and rules are watched only if configured, so they can be reloaded later. The profile
+        // stage is always registered, damage transformers may be added by a later changeServer.
+        if (new File(this.getDataFolder(), RegionWatcher.REGIONS_FILE).exists()) {
+            RegionWatcher regionWatcher = new RegionWatcher(this.getDataFolder());
+            regionWatcher.start(this.fileWatcher);
+            stages.add(new ProfileStage(this.damageInjector, regionWatcher.getIndex()));
+        } else {
+            stages.add(new ProfileStage(this.damageInjector));
+        }
+
+        Map<String, Float> worldMultipliers = this.readMultipliers(
+                this.getConfig().getConfigurationSection("damage.world-multipliers"));
+        if (!worldMultipliers.isEmpty()) {
+            WorldMultiplierStage worldMultiplierStage = new WorldMultiplierStage(server, worldMultipliers);
+            pluginManager.registerEvents(worldMultiplierStage, this);
+            stages.add(worldMultiplierStage);
+        }
+
+        if (new File(this.getDataFolder(), RuleStage.RULES_FILE).exists()) {
+            RuleStage ruleStage = new RuleStage(this.getDataFolder(), this.startAttackChargeTracker(server, scheduler));
+            ruleStage.start(this.fileWatcher);
+            stages.add(ruleStage);
+        }
+
+        ConfigurationSection explosions = this.getConfig().getConfigurationSection("damage.explosions");
+        if (explosions != null) {
+            ExplosionStage explosionStage = this.createExplosionStage(explosions);
+            pluginManager.registerEvents(explosionStage, this);
+            stages.add(explosionStage);
+        }
+
+        DamageTracer tracer = null;
+        try {
+            tracer = new DamageTracer(pluginManager, this, this.getConfig().getInt("damage.trace-capacity", 256));
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Could not create damage tracer.", e);
+        }
+
+        if (tracer != null) {
+            PluginCommand command = this.getCommand("damagetrace");
+            if (command != null) {
+                DamageTraceCommand executor = new DamageTraceCommand(server, tracer);
+                command.setExecutor(executor);
+                command.setTabCompleter(executor);
+            }
+        }
+
+        DamagePipeline pipeline = new DamagePipeline(stages.build(), tracer, this.entityAccessor);
+        if (!pipeline.isEmpty()) {
+            pluginManager.registerEvents(pipeline, this);
+        }
+    }
+
+    private ExplosionStage createExplosionStage(ConfigurationSection section) {
+        Objects.requireNonNull(section, "section");
+
+        Map<EntityType, Float> multipliers = new LinkedHashMap<>();
+        this.readMultipliers(section.getConfigurationSection("multipliers")).forEach((name, multiplier) -> {
+            try {
+                multipliers.put(EntityType.valueOf(name.toUpperCase(Locale.ROOT)), multiplier);
+            } catch (IllegalArgumentException e) {
+                logger.warning("Unknown entity type of explosion multiplier: " + name);
+            }
+        });
+
+        return new ExplosionStage(multipliers, (float) section.getDouble("block-multiplier", 1D));
+    }
+
+    private void enablePlayerProfiles(BukkitScheduler scheduler, PluginManager pluginManager) {
+        Objects.requireNonNull(scheduler, "scheduler");
+        Objects.requireNonNull(pluginManager, "pluginManager");
+
+        List<String> names = this.getConfig().getStringList("player-profiles");
+        if (names.isEmpty()) {
+            return;
+        }
+
+        File profilesDirectory = new File(this.getDataFolder(), RegionWatcher.PROFILES_DIRECTORY);
+
+        Map<String, OverlayProfile> profiles = new LinkedHashMap<>();
+        for (String name : names) {
+            File file = new File(profilesDirectory, name + ".yml");
+            try {
+                profiles.put(name, OverlayProfile.compile(name, Transformers.readYaml(file)));
+            } catch (IOException | InvalidConfigurationException e) {
+                logger.log(Level.SEVERE, "Could not load player profile " + name + " from " + file.getName() + ".", e);
+            }
+        }
+
+        if (profiles.isEmpty()) {
+            return;
+        }
+
+        this.overlayListener = new OverlayListener(scheduler, this, profiles);
+        this.overlayListener.start();
+        pluginManager.registerEvents(this.overlayListener, this);
+
+        logger.info("Loaded " + profiles.size() + " player profile(s): " + profiles.keySet());
+    }
+
+    private void enableLegacyCombat(BukkitScheduler scheduler, PluginManager pluginManager) {
+        Objects.requireNonNull(scheduler, "scheduler");
+        Objects.requireNonNull(pluginManager, "pluginManager");
+
+        ConfigurationSection section = this.getConfig().getConfigurationSection("legacy-combat");
+        if (section == null) {
+            return;
+        }
+
+        CombatMode mode;
+        try {
+            mode = CombatMode.deserialize(section.getValues(false));
+        } catch (InvalidConfigurationException e) {
+            logger.log(Level.SEVERE, "Could not load legacy combat mode.", e);
+            return;
+        }
+
+        if (mode == null) {
+            return;
+        }
+
+        Set<String> worlds = ImmutableSet.copyOf(section.getStringList("worlds"));
+        this.legacyCombatListener = new LegacyCombatListener(scheduler, this, mode, worlds);
+        this.legacyCombatListener.start();
+        pluginManager.registerEvents(this.legacyCombatListener, this);
+
+        logger.info("Using legacy combat " + mode + (worlds.isEmpty() ? "" : " in " + worlds) + ".");
+    }
+
+    private void enableKnockback(BukkitScheduler scheduler, PluginManager pluginManager) {
+        Objects.requireNonNull(scheduler, "scheduler");
+        Objects.requireNonNull(pluginManager, "pluginManager");
+
+        ConfigurationSection section = this.getConfig().getConfigurationSection("knockback");
+        try {
+            if (section != null) {
+                this.knockbackInjector.setDefault(KnockbackTransformer.deserialize(
+                        ImmutableMap.of("knockback", section.getValues(false))));
+            }
+        } catch (InvalidConfigurationException e) {
+            logger.log(Level.SEVERE, "Could not load default knockback.", e);
+        }
+
+        // registered even without knockback, it may be added by a later reload
+        this.knockbackListener = new KnockbackListener(scheduler, this, this.knockbackInjector,
+                this.entityStateStore, this.entityAccessor);
+        this.knockbackListener.start();
+        pluginManager.registerEvents(this.knockbackListener, this);
+    }
+
+    private void enableCombatTag(Server server, BukkitScheduler scheduler, PluginManager pluginManager) {
+        Objects.requireNonNull(server, "server");
+        Objects.requireNonNull(scheduler, "scheduler");
+        Objects.requireNonNull(pluginManager, "pluginManager");
+
+        ConfigurationSection section = this.getConfig().getConfigurationSection("combat-tag");
+        if (section == null) {
+            return;
+        }
+
+        long duration = section.getLong("duration", 300L);
+        if (duration < 1L) {
+            logger.severe("Combat tag duration must be positive.");
+            return;
+        }
+
+        CombatTagger.Punishment punishment;
+        try {
+            punishment = CombatTagger.Punishment.parse(section.getString("punishment", "none"));
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Unknown combat tag punishment: " + section.getString("punishment"), e);
+            return;
+        }
+
+        this.combatTagger = new CombatTagger(server, scheduler, this, this.entityStateStore,
+                duration, punishment, section.getStringList("commands"));
+        this.combatTagger.start();
+        pluginManager.registerEvents(this.combatTagger, this);
+    }
+
+    private void enableRegeneration(Server server, BukkitScheduler scheduler, PluginManager pluginManager) {
+        Objects.requireNonNull(server, "server");
+        Objects.requireNonNull(scheduler, "scheduler");
+        Objects.requireNonNull(pluginManager, "pluginManager");
+
+        ConfigurationSection section = this.getConfig().getConfigurationSection("legacy-regeneration");
+        if (section == null) {
+            RegenerationEngine.restoreNaturalRegeneration(server, this.getDataFolder());
+            return;
+        }
+
+        try {
+            this.regenerationEngine = new RegenerationEngine(server, scheduler, this, this.entityStateStore,
+                    this.getDataFolder(),
+                    section.getInt("interval", 80),
+                    section.getDouble("amount", 1D),
+                    (float) section.getDouble("exhaustion", 3D),
+                    section.getInt("minimum-food-level", 18));
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Could not enable legacy regeneration.", e);
+            RegenerationEngine.restoreNaturalRegeneration(server, this.getDataFolder());
+            return;
+        }
+
+        this.regenerationEngine.start();
+        pluginManager.registerEvents(this.regenerationEngine, this);
+    }
+
+    private void enableArmor(PluginManager pluginManager, Map<Attribute, AttributeRangeTransformer> ranges) {
+        Objects.requireNonNull(pluginManager, "pluginManager");
+        Objects.requireNonNull(ranges, "ranges");
+
+        ConfigurationSection section = this.getConfig().getConfigurationSection("armor");
+        if (section == null) {
+            return;
+        }
+
+        ArmorFormula formula;
+        try {
+            formula = ArmorFormula.parse(section.getString("formula", "modern"));
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Unknown armor formula: " + section.getString("formula"), e);
+            return;
+        }
+
+        double perPoint = section.getDouble("reduction-per-point", ArmorFormula.VANILLA_PER_POINT);
+        double maximumReduction = section.getDouble("maximum-reduction", ArmorFormula.VANILLA_MAXIMUM_REDUCTION);
+        if (formula.isVanilla(perPoint, maximumReduction)) {
+            logger.info("Armor formula is the same as vanilla, it won't be replaced.");
+            return;
+        }
+
+        try {
+            this.armorListener = new ArmorListener(formula, perPoint, maximumReduction,
+                    section.getDouble("table-maximum-damage", 64D), ranges);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Could not compile armor formula.", e);
+            return;
+        }
+
+        pluginManager.registerEvents(this.armorListener, this);
+
+        logger.info("Using " + this.armorListener.getTable() + ".");
+    }
+
+    private void enableAttackFilter(Server server, String serverVersion, BukkitScheduler scheduler,
+                                    PluginManager pluginManager) {
+        Objects.requireNonNull(server, "server");
+        Objects.requireNonNull(serverVersion, "serverVersion");
+        Objects.requireNonNull(scheduler, "scheduler");
+        Objects.requireNonNull(pluginManager, "pluginManager");
+
+        ConfigurationSection section = this.getConfig().getConfigurationSection("attack-filter");
+        if (section == null) {
+            return;
+        }
+
+        String action = section.getString("action", "drop");
+        if (!action.equalsIgnoreCase("drop") && !action.equalsIgnoreCase("flag")) {
+            logger.severe("Unknown attack filter action: " + action);
+            return;
+        }
+
+        ConnectionInjector connectionInjector;
+        try {
+            connectionInjector = this.createAdapter(serverVersion, this.getClass().getPackage(),
+                    "AttackFilterInjector", ConnectionInjector.class);
+        } catch (ClassNotFoundException e) {
+            logger.warning("Attack filter is not supported on " + serverVersion + ", attack packets won't be filtered.");
+            return;
+        } catch (ReflectiveOperationException e) {
+            logger.log(Level.WARNING, "Could not create attack filter for " + server.getVersion() +
+                    ", attack packets won't be filtered.", e);
+            return;
+        }
+
+        try {
+            this.attackFilterListener = new AttackFilterListener(server, scheduler, this, connectionInjector,
+                    section.getInt("maximum-cps", 20),
+                    TimeUnit.MILLISECONDS.toNanos(section.getLong("minimum-interval", 0L)),
+                    action.equalsIgnoreCase("drop"));
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Could not enable attack filter.", e);
+            return;
+        }
+
+        this.attackFilterListener.start();
+        pluginManager.registerEvents(this.attackFilterListener, this);
+    }
+
+    private void enableDamageIndicators(BukkitScheduler scheduler, PluginManager pluginManager) {
+        Objects.requireNonNull(scheduler, "scheduler");
+        Objects.requireNonNull(pluginManager, "pluginManager");
+
+        ConfigurationSection section = this.getConfig().getConfigurationSection("damage-indicators");
+        if (section == null) {
+            return;
+        }
+
+        String format = section.getString("format", "&c-{damage} \u2764");
+        if (!format.contains(DamageIndicatorListener.DAMAGE_PLACEHOLDER)) {
+            logger.warning("Damage indicator format doesn't contain " + DamageIndicatorListener.DAMAGE_PLACEHOLDER + ".");
+        }
+
+        this.damageIndicatorListener = new DamageIndicatorListener(scheduler, this, this.entityStateStore, format);
+        this.damageIndicatorListener.start();
+        pluginManager.registerEvents(this.damageIndicatorListener, this);
+    }
+
+    private void enableHitLog(Server server, String serverVersion, BukkitScheduler scheduler, PluginManager pluginManager) {
+        Objects.requireNonNull(server, "server");
+        Objects.requireNonNull(serverVersion, "serverVersion");
+        Objects.requireNonNull(scheduler, "scheduler");
+        Objects.requireNonNull(pluginManager, "pluginManager");
+
+        ConfigurationSection section = this.getConfig().getConfigurationSection("hit-log");
+        if (section == null) {
+            return;
+        }
+
+        try {
+            HitRecorder recorder = new HitRecorder(scheduler, this, this.startAttackChargeTracker(server, scheduler),
+                    this.entityAccessor, section.getInt("buffer", 65536));
+            HitLog hitLog = new HitLog(this.ioExecutor, recorder, new File(this.getDataFolder(), HIT_LOG_DIRECTORY),
+                    (int) Math.min(Integer.MAX_VALUE, section.getLong("segment-size", 64L) * 1024L * 1024L),
+                    section.getInt("maximum-segments", 16), serverVersion);
+
+            this.hitRecorder = recorder;
+            this.hitLog = hitLog;
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Could not enable hit log.", e);
+            return;
+        }
+
+        this.hitRecorder.start();
+        this.hitLog.start();
+        pluginManager.registerEvents(this.hitRecorder, this);
+    }
+
+    /**
+     * @return tracker shared by rules and the hit log, started on first use.
+     */
+    private AttackChargeTracker startAttackChargeTracker(Server server, BukkitScheduler scheduler) {
+        if (this.attackChargeTracker == null) {
+            this.attackChargeTracker = new AttackChargeTracker(server, scheduler, this, this.entityStateStore);
+            this.attackChargeTracker.start();
+        }
+
+        return this.attackChargeTracker;
+    }
+
+    private Map<String, Float> readMultipliers(ConfigurationSection section) {
+        if (section == null) {
+            return ImmutableMap.of();
+        }
+
+        ImmutableMap.Builder<String, Float> builder = ImmutableMap.builder();
+        for (String key : section.getKeys(false)) {
+            if (section.isDouble(key) || section.isInt(key)) {
+                builder.put(key, (float) section.getDouble(key));
+            } else {
+                logger.warning("Multiplier for " + key + " in " + section.getCurrentPath() + " must be a number.");
+            }
+        }
+
+        return builder.build();
     }
 
     public Injector<Transformer> getInjector() {
         return this.injector;
     }
 
+    public EntityStateStore getEntityStateStore() {
+        return this.entityStateStore;
+    }
+
+    public Optional<AttackFilterListener> getAttackFilterListener() {
+        return Optional.ofNullable(this.attackFilterListener);
+    }
+
+    public Optional<ArmorListener> getArmorListener() {
+        return Optional.ofNullable(this.armorListener);
+    }
+
+    public Optional<CombatTagger> getCombatTagger() {
+        return Optional.ofNullable(this.combatTagger);
+    }
+
+    public Optional<OverlayListener> getOverlayListener() {
+        return Optional.ofNullable(this.overlayListener);
+    }
+
+    public Optional<RangeInjector> getRangeInjector() {
+        return Optional.ofNullable(this.rangeInjector);
+    }
+
+    /**
+     * @return current session, only safe to use on the main thread. Other
+     * threads should read {@link #getState()}.
+     */
     public Optional<ModifierSession> getSession() {
         return Optional.ofNullable(this.session);
     }
 
+    @Override
+    public TransformerState getState() {
+        return this.state.get();
+    }
+
     public void modifyServer(Multimap<Material, Transformer> transformers) throws Injector.InjectException {
+        this.modifyServer(transformers, ImmutableMap.of());
+    }
+
+    public void modifyServer(Multimap<Material, Transformer> transformers,
+                             Map<Attribute, AttributeRangeTransformer> ranges) throws Injector.InjectException {
         Objects.requireNonNull(transformers, "transformers");
+        Objects.requireNonNull(ranges, "ranges");
 
         if (this.session != null) {
             throw new IllegalStateException("Server is already modified.");
         }
 
-        ModifierSession session = new ModifierSession(this.injector, transformers);
         try {
-            session.modify();
+            this.inject(transformers, ranges);
         } finally {
-            this.session = session;
+            this.publishState(TransformersChangeEvent.Cause.INJECT);
         }
     }
 
-    public boolean isModified() {
-        return this.session != null;
+    /**
+     * Restores the server and injects other transformers, keeping attribute
+     * ranges of the current session.
+     */
+    public void changeServer(Multimap<Material, Transformer> transformers) throws Injector.InjectException {
+        Objects.requireNonNull(transformers, "transformers");
+
+        if (this.session == null) {
+            throw new IllegalStateException("Server is not modified.");
+        }
+
+        Map<Attribute, AttributeRangeTransformer> ranges = this.session.getRanges();
+        try {
+            this.restore();
+            this.inject(transformers, ranges);
+        } finally {
+            this.publishState(TransformersChangeEvent.Cause.CHANGE);
+        }
     }
 
     public void restoreServer() throws Injector.InjectException {
@@ -180,6 +831,24 @@ public final class PvpPlugin extends JavaPlugin {
             throw new IllegalStateException("Server is not modified.");
         }
 
+        try {
+            this.restore();
+        } finally {
+            this.publishState(TransformersChangeEvent.Cause.RESTORE);
+        }
+    }
+
+    private void inject(Multimap<Material, Transformer> transformers,
+                        Map<Attribute, AttributeRangeTransformer> ranges) throws Injector.InjectException {
+        ModifierSession session = new ModifierSession(this.injector, this.rangeInjector, transformers, ranges);
+        try {
+            session.modify();
+        } finally {
+            this.session = session;
+        }
+    }
+
+    private void restore() throws Injector.InjectException {
         try {
             this.session.restore();
         } finally {
@@ -187,39 +856,44 @@ public final class PvpPlugin extends JavaPlugin {
         }
     }
 
+    /**
+     * Called even if injection failed halfway, so the state never describes
+     * a session which is gone. Only the main thread publishes states.
+     */
+    private void publishState(TransformersChangeEvent.Cause cause) {
+        TransformerState previousState = this.state.get();
+        TransformerState state = previousState.next(this.session);
+
+        this.state.set(state);
+        this.getServer().getPluginManager().callEvent(new TransformersChangeEvent(cause, previousState, state));
+    }
+
     public Multimap<Material, Transformer> deserialize(Map<String, Object> transformers) throws InvalidConfigurationException {
-        Objects.requireNonNull(transformers, "transformers");
+        return Transformers.deserialize(transformers);
+    }
+
+    public Map<Attribute, AttributeRangeTransformer> deserializeRanges(ConfigurationSection section) throws InvalidConfigurationException {
+        if (section == null) {
+            return ImmutableMap.of();
+        }
 
-        ImmutableMultimap.Builder<Material, Transformer> builder = ImmutableMultimap.builder();
-        for (Map.Entry<String, Object> entry : transformers.entrySet()) {
-            NamespacedKey key = parseKey(entry.getKey());
+        ImmutableMap.Builder<Attribute, AttributeRangeTransformer> builder = ImmutableMap.builder();
+        for (String attributeKey : section.getKeys(false)) {
+            NamespacedKey key = parseKey(attributeKey);
 
-            Material material = Registry.MATERIAL.get(key);
-            if (material == null) {
-                throw new InvalidConfigurationException("Invalid material: " + key);
+            Attribute attribute = Registry.ATTRIBUTE.get(key);
+            if (attribute == null) {
+                throw new InvalidConfigurationException("Unknown attribute: " + key);
             }
 
-            Object value = entry.getValue();
-            if (!(value instanceof List<?>)) {
-                throw new InvalidConfigurationException("Transformers must be a list");
+            ConfigurationSection rangeSection = section.getConfigurationSection(attributeKey);
+            if (rangeSection == null) {
+                throw new InvalidConfigurationException("Attribute range must be a map.");
             }
 
-            for (Object transformer : (List<?>) value) {
-                if (transformer instanceof Map<?, ?>) {
-                    Map<String, Object> map = (Map<String, Object>) transformer;
-
-                    AttributeTransformer attributeTransformer = AttributeTransformer.deserialize(map);
-                    if (attributeTransformer != null) {
-                        builder.put(material, attributeTransformer);
-                    }
-
-                    FoodTransformer foodTransformer = FoodTransformer.deserialize(map);
-                    if (foodTransformer != null) {
-                        builder.put(material, foodTransformer);
-                    }
-                } else {
-                    throw new InvalidConfigurationException("Transformer must be a map.");
-                }
+            AttributeRangeTransformer range = AttributeRangeTransformer.deserialize(rangeSection.getValues(false));
+            if (range != null) {
+                builder.put(attribute, range);
             }
         }
 
@@ -236,59 +910,30 @@ public final class PvpPlugin extends JavaPlugin {
 
     private Injector<Transformer> createInjector(String serverVersion, Package from) throws ReflectiveOperationException {
         Objects.requireNonNull(serverVersion, "serverVersion");
+        return this.createAdapter(serverVersion, from, serverVersion.toUpperCase(), Injector.class);
+    }
+
+    private <T> T createAdapter(String serverVersion, Package from, String className, Class<? super T> type)
+            throws ReflectiveOperationException {
+        Objects.requireNonNull(serverVersion, "serverVersion");
         Objects.requireNonNull(from, "from");
+        Objects.requireNonNull(className, "className");
+        Objects.requireNonNull(type, "type");
 
         Class<?> clazz = Class.forName(String.format("%s.%s.%s",
                 from.getName(),
                 serverVersion,
-                serverVersion.toUpperCase()
+                className
         ));
 
-        if (!Injector.class.isAssignableFrom(clazz)) {
-            throw new ReflectiveOperationException(clazz + " is not an instance of " + Injector.class);
+        if (!type.isAssignableFrom(clazz)) {
+            throw new ReflectiveOperationException(clazz + " is not an instance of " + type);
         }
 
         Constructor<?> constructor = clazz.getDeclaredConstructor();
         constructor.setAccessible(true);
 
-        return (Injector<Transformer>) constructor.newInstance();
-    }
-
-    private Multimap<Material, Transformer> readJarDatFile(String filename) throws IOException {
-        Objects.requireNonNull(filename, "filename");
-        ClassLoader classLoader = this.getClass().getClassLoader();
-
-        Object transformers;
-        try (Closer closer = Closer.create()) {
-            InputStream inputStream = closer.register(classLoader.getResourceAsStream(filename));
-            if (inputStream == null) {
-                throw new FileNotFoundException("Missing " + filename + " file.");
-            }
-
-            BufferedInputStream bufferedInputStream = closer.register(new BufferedInputStream(inputStream));
-            ObjectInputStream objectInputStream = closer.register(new ObjectInputStream(bufferedInputStream));
-
-            long protocolVersion = objectInputStream.readLong();
-            if (protocolVersion != DAT_PROTOCOL_VERSION) {
-                throw new IOException("Unsupported protocol version: " + protocolVersion);
-            }
-
-            try {
-                transformers = objectInputStream.readObject();
-            } catch (ClassNotFoundException e) {
-                throw new IOException("Required class wasn't found.", e);
-            }
-        }
-
-        if (!(transformers instanceof Map<?, ?>)) {
-            throw new IOException("Root transformers object is not a map.");
-        }
-
-        try {
-            return this.deserialize((Map<String, Object>) transformers);
-        } catch (InvalidConfigurationException e) {
-            throw new IOException("Could not deserialize transformers.", e);
-        }
+        return (T) constructor.newInstance();
     }
 
     public static NamespacedKey parseKey(String input) throws InvalidConfigurationException {
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.attribute.Attribute;
+
+/**
+ * Counterpart of {@link Injector} for transformers keyed by {@link Attribute}
+ * instead of {@link org.bukkit.Material}.
+ */
+public interface RangeInjector {
+    AttributeRangeTransformer inject(Attribute attribute, AttributeRangeTransformer range) throws Injector.InjectException;
+
+    AttributeRangeTransformer eject(Attribute attribute) throws Injector.InjectException;
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.GameRule;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityRegainHealthEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Legacy (1.8) health regeneration. Vanilla regeneration from food is
+ * turned off with the {@link GameRule#NATURAL_REGENERATION} game rule while
+ * running, instead players with enough food heal every interval at the
+ * cost of exhaustion, without the saturation boost added in 1.9. The game
+ * rule is saved in the world, so worlds it was turned off in are listed in
+ * {@link #STATE_FILE} until it is restored, also on the next enable after a
+ * crash.
+ *
+ * All online players are swept by a single task every tick, with their
+ * regeneration timers stored in an {@link EntityStateStore} column. The
+ * store is locked only to update the timers, players are healed after.
+ */
+public class RegenerationEngine implements Listener, Runnable {
+    static final Logger logger = Logger.getLogger(RegenerationEngine.class.getName());
+
+    static final String STATE_FILE = "natural-regeneration.txt";
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Server server;
+    private final BukkitScheduler scheduler;
+    private final Plugin plugin;
+    private final EntityStateStore store;
+    private final EntityStateStore.IntColumn timers;
+    private final File stateFile;
+
+    private final int interval;
+    private final double amount;
+    private final float exhaustion;
+    private final int minimumFoodLevel;
+
+    // worlds which had natural regeneration before start, to restore it on stop
+    private final Set<String> naturalRegenerationWorlds = new HashSet<>();
+
+    private BukkitTask task;
+
+    private Player[] players = new Player[INITIAL_CAPACITY];
+    private int[] rows = new int[INITIAL_CAPACITY];
+    private boolean[] eligible = new boolean[INITIAL_CAPACITY];
+
+    public RegenerationEngine(Server server, BukkitScheduler scheduler, Plugin plugin, EntityStateStore store,
+                              File dataFolder, int interval, double amount, float exhaustion, int minimumFoodLevel) {
+        this.server = Objects.requireNonNull(server, "server");
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+        this.store = Objects.requireNonNull(store, "store");
+        this.stateFile = new File(Objects.requireNonNull(dataFolder, "dataFolder"), STATE_FILE);
+
+        if (interval < 1) {
+            throw new IllegalArgumentException("Interval must be positive.");
+        } else if (amount < 0D || exhaustion < 0F) {
+            throw new IllegalArgumentException("Amount and exhaustion must not be negative.");
+        }
+
+        this.interval = interval;
+        this.amount = amount;
+        this.exhaustion = exhaustion;
+        this.minimumFoodLevel = minimumFoodLevel;
+
+        this.timers = store.registerInt(0);
+    }
+
+    public void start() {
+        // left over if the server crashed, these still have it turned off
+        this.naturalRegenerationWorlds.addAll(readState(this.stateFile));
+
+        for (World world : this.server.getWorlds()) {
+            this.disableNaturalRegeneration(world);
+        }
+
+        this.task = this.scheduler.runTaskTimer(this.plugin, this, 1L, 1L);
+    }
+
+    public void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+
+        restore(this.server, this.naturalRegenerationWorlds);
+        writeState(this.stateFile, this.naturalRegenerationWorlds);
+        this.naturalRegenerationWorlds.clear();
+
+        Arrays.fill(this.players, null);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        if (this.task != null) {
+            this.disableNaturalRegeneration(event.getWorld());
+        }
+    }
+
+    /**
+     * Cancelling regeneration from food would still exhaust players, vanilla
+     * adds exhaustion regardless of the event, so it is turned off instead.
+     */
+    private void disableNaturalRegeneration(World world) {
+        if (Boolean.TRUE.equals(world.getGameRuleValue(GameRule.NATURAL_REGENERATION))) {
+            world.setGameRule(GameRule.NATURAL_REGENERATION, false);
+            this.naturalRegenerationWorlds.add(world.getName());
+            writeState(this.stateFile, this.naturalRegenerationWorlds);
+            logger.log(Level.INFO, "Disabled natural regeneration in " + world.getName() + " for legacy regeneration.");
+        }
+    }
+
+    /**
+     * Restores natural regeneration left turned off by a previous run, when
+     * legacy regeneration is no longer enabled.
+     */
+    public static void restoreNaturalRegeneration(Server server, File dataFolder) {
+        Objects.requireNonNull(server, "server");
+        Objects.requireNonNull(dataFolder, "dataFolder");
+
+        File stateFile = new File(dataFolder, STATE_FILE);
+        Set<String> worldNames = readState(stateFile);
+        if (!worldNames.isEmpty()) {
+            restore(server, worldNames);
+            writeState(stateFile, worldNames);
+        }
+    }
+
+    /**
+     * Restores natural regeneration in loaded worlds, leaving only the worlds
+     * which are not loaded in the set.
+     */
+    private static void restore(Server server, Set<String> worldNames) {
+        worldNames.removeIf(worldName -> {
+            World world = server.getWorld(worldName);
+            if (world == null) {
+                return false;
+            }
+
+            world.setGameRule(GameRule.NATURAL_REGENERATION, true);
+            logger.log(Level.INFO, "Restored natural regeneration in " + worldName + ".");
+            return true;
+        });
+    }
+
+    private static Set<String> readState(File stateFile) {
+        Set<String> worldNames = new HashSet<>();
+        if (!stateFile.exists()) {
+            return worldNames;
+        }
+
+        try {
+            for (String line : Files.readAllLines(stateFile.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    worldNames.add(line);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read " + stateFile.getName() + ".", e);
+        }
+
+        return worldNames;
+    }
+
+    /**
+     * Replaces the state file atomically, or deletes it if no world is left.
+     */
+    private static void writeState(File stateFile, Set<String> worldNames) {
+        Path path = stateFile.toPath();
+        try {
+            if (worldNames.isEmpty()) {
+                Files.deleteIfExists(path);
+                return;
+            }
+
+            Files.createDirectories(path.getParent());
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(temporary, worldNames, StandardCharsets.UTF_8);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write " + stateFile.getName() + ".", e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void run() {
+        EntityStateStore store = this.store;
+
+        int count = 0;
+        for (Player player : this.server.getOnlinePlayers()) {
+            int row = store.row(player.getEntityId());
+            if (row == EntityStateStore.NONE) {
+                continue;
+            }
+
+            if (count == this.players.length) {
+                this.players = Arrays.copyOf(this.players, count * 2);
+                this.rows = Arrays.copyOf(this.rows, count * 2);
+                this.eligible = Arrays.copyOf(this.eligible, count * 2);
+            }
+
+            // getMaxHealth() reads the handle directly, the attribute
+            // lookup would go through the registry for every player
+            this.players[count] = player;
+            this.rows[count] = row;
+            this.eligible[count] = !player.isDead() && player.getHealth() < player.getMaxHealth() &&
+                    player.getFoodLevel() >= this.minimumFoodLevel;
+            count++;
+        }
+
+        Player[] players = this.players;
+        this.updateTimers(count);
+
+        for (int i = 0; i < count; i++) {
+            Player player = players[i];
+            if (player != null) {
+                players[i] = null;
+                this.heal(player);
+            }
+        }
+    }
+
+    /**
+     * Advances timers of eligible players and resets the others, leaving in
+     * the batch only players which are due to heal.
+     */
+    private void updateTimers(int count) {
+        EntityStateStore.IntColumn timers = this.timers;
+        Player[] players = this.players;
+        int[] rows = this.rows;
+        boolean[] eligible = this.eligible;
+
+        long stamp = this.store.beginWrite();
+        try {
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                if (!eligible[i]) {
+                    timers.set(row, 0);
+                    players[i] = null;
+                    continue;
+                }
+
+                int timer = timers.get(row) + 1;
+                if (timer < this.interval) {
+                    timers.set(row, timer);
+                    players[i] = null;
+                } else {
+                    timers.set(row, 0);
+                }
+            }
+        } finally {
+            this.store.endWrite(stamp);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void heal(Player player) {
+        // vanilla uses SATIATED for regeneration from food, REGEN is for potions
+        EntityRegainHealthEvent event = new EntityRegainHealthEvent(player, this.amount,
+                EntityRegainHealthEvent.RegainReason.SATIATED);
+        this.server.getPluginManager().callEvent(event);
+
+        if (!event.isCancelled() && !player.isDead()) {
+            player.setHealth(Math.min(player.getMaxHealth(), player.getHealth() + event.getAmount()));
+        }
+
+        // same as vanilla, exhausted even if the event was cancelled
+        player.setExhaustion(player.getExhaustion() + this.exhaustion);
+    }
+}
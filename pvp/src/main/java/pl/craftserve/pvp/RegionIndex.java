@@ -0,0 +1,381 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Immutable spatial index of {@link DamageProfile}s scoped to worlds and
+ * axis-aligned regions. Regions are bucketed in a grid of chunks, unless
+ * they are too large, worlds without regions resolve in O(1). Replaced as a whole when reloaded, so
+ * lookups never lock.
+ */
+public final class RegionIndex {
+    static final Logger logger = Logger.getLogger(RegionIndex.class.getName());
+
+    public static final RegionIndex EMPTY = new RegionIndex(ImmutableMap.of());
+
+    private final Map<String, WorldIndex> worlds;
+
+    private RegionIndex(Map<String, WorldIndex> worlds) {
+        this.worlds = ImmutableMap.copyOf(worlds);
+    }
+
+    public boolean isEmpty() {
+        return this.worlds.isEmpty();
+    }
+
+    /**
+     * @return index of the given world, or {@code null} if the world has no
+     * profiles. Callers should cache it per world.
+     */
+    public WorldIndex getWorld(String worldName) {
+        return this.worlds.get(worldName);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", RegionIndex.class.getSimpleName() + "[", "]")
+                .add("worlds=" + this.worlds.keySet())
+                .toString();
+    }
+
+    public static RegionIndex load(File regionsFile, File profilesDirectory) throws IOException, InvalidConfigurationException {
+        Objects.requireNonNull(regionsFile, "regionsFile");
+        Objects.requireNonNull(profilesDirectory, "profilesDirectory");
+
+        if (!regionsFile.exists()) {
+            return EMPTY;
+        }
+
+        YamlConfiguration configuration = new YamlConfiguration();
+        configuration.load(regionsFile);
+
+        Map<String, DamageProfile> profiles = new HashMap<>();
+        Map<String, Region> worldProfiles = new LinkedHashMap<>();
+        Map<String, List<Region>> worldRegions = new LinkedHashMap<>();
+
+        ConfigurationSection worldsSection = configuration.getConfigurationSection("worlds");
+        if (worldsSection != null) {
+            for (String worldName : worldsSection.getKeys(false)) {
+                String profileName = worldsSection.getString(worldName);
+                if (profileName == null) {
+                    throw new InvalidConfigurationException("Missing profile for world " + worldName);
+                }
+
+                DamageProfile profile = loadProfile(profilesDirectory, profileName, profiles);
+                worldProfiles.put(worldName, new Region(worldName, worldName, profileName, profile, 0,
+                        Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE,
+                        Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+            }
+        }
+
+        ConfigurationSection regionsSection = configuration.getConfigurationSection("regions");
+        if (regionsSection != null) {
+            for (String name : regionsSection.getKeys(false)) {
+                ConfigurationSection section = regionsSection.getConfigurationSection(name);
+                if (section == null) {
+                    throw new InvalidConfigurationException("Region " + name + " must be a map.");
+                }
+
+                String worldName = section.getString("world");
+                String profileName = section.getString("profile");
+                if (worldName == null || profileName == null) {
+                    throw new InvalidConfigurationException("Region " + name + " requires world and profile.");
+                }
+
+                int[] from = readPoint(section, "from");
+                int[] to = readPoint(section, "to");
+
+                DamageProfile profile = loadProfile(profilesDirectory, profileName, profiles);
+                worldRegions.computeIfAbsent(worldName, key -> new ArrayList<>()).add(new Region(
+                        name, worldName, profileName, profile, section.getInt("priority"),
+                        Math.min(from[0], to[0]), Math.min(from[1], to[1]), Math.min(from[2], to[2]),
+                        Math.max(from[0], to[0]), Math.max(from[1], to[1]), Math.max(from[2], to[2])));
+            }
+        }
+
+        Map<String, WorldIndex> worlds = new LinkedHashMap<>();
+        worldProfiles.forEach((worldName, region) -> worlds.put(worldName, new WorldIndex(region, null)));
+        worldRegions.forEach((worldName, regions) -> {
+            worlds.put(worldName, new WorldIndex(worldProfiles.get(worldName), ChunkGrid.create(regions)));
+        });
+
+        return new RegionIndex(worlds);
+    }
+
+    private static int[] readPoint(ConfigurationSection section, String path) throws InvalidConfigurationException {
+        List<Integer> point = section.getIntegerList(path);
+        if (point.size() != 3) {
+            throw new InvalidConfigurationException(path + " of region " + section.getName() + " must be [x, y, z].");
+        }
+
+        return new int[] {point.get(0), point.get(1), point.get(2)};
+    }
+
+    /**
+     * Profiles are shared by name, only their {@link DamageTransformer}s
+     * apply since other transformers are global.
+     */
+    private static DamageProfile loadProfile(File directory, String name, Map<String, DamageProfile> cache)
+            throws IOException {
+        DamageProfile cached = cache.get(name);
+        if (cached != null) {
+            return cached;
+        }
+
+        File file = new File(directory, name + ".yml");
+        if (!file.exists()) {
+            throw new IOException("Missing profile file: " + file.getName());
+        }
+
+        Multimap<Material, Transformer> transformers = Transformers.readYaml(file);
+
+        Map<Material, DamageTransformer> damageTransformers = new LinkedHashMap<>();
+        transformers.forEach((material, transformer) -> {
+            if (transformer instanceof DamageTransformer) {
+                damageTransformers.put(material, (DamageTransformer) transformer);
+            }
+        });
+
+        DamageProfile profile = DamageProfile.compile(damageTransformers);
+        cache.put(name, profile);
+        return profile;
+    }
+
+    public static final class Region {
+        final String name;
+        final String worldName;
+        final String profileName;
+        final DamageProfile profile;
+        final int priority;
+
+        final int minX;
+        final int minY;
+        final int minZ;
+        final int maxX;
+        final int maxY;
+        final int maxZ;
+
+        Region(String name, String worldName, String profileName, DamageProfile profile, int priority,
+               int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            this.name = Objects.requireNonNull(name, "name");
+            this.worldName = worldName;
+            this.profileName = Objects.requireNonNull(profileName, "profileName");
+            this.profile = Objects.requireNonNull(profile, "profile");
+            this.priority = priority;
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.maxZ = maxZ;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getProfileName() {
+            return this.profileName;
+        }
+
+        public DamageProfile getProfile() {
+            return this.profile;
+        }
+
+        boolean contains(int x, int y, int z) {
+            return x >= this.minX && x <= this.maxX &&
+                    y >= this.minY && y <= this.maxY &&
+                    z >= this.minZ && z <= this.maxZ;
+        }
+
+        @Override
+        public String toString() {
+            return new StringJoiner(", ", Region.class.getSimpleName() + "[", "]")
+                    .add("name=" + this.name)
+                    .add("world=" + this.worldName)
+                    .add("profile=" + this.profileName)
+                    .add("priority=" + this.priority)
+                    .toString();
+        }
+    }
+
+    public static final class WorldIndex {
+        private final Region world;
+        private final ChunkGrid grid;
+
+        WorldIndex(Region world, ChunkGrid grid) {
+            this.world = world;
+            this.grid = grid;
+        }
+
+        /**
+         * @return region with the highest priority containing the given
+         * block, the whole world, or {@code null} if there is none.
+         */
+        public Region resolve(int x, int y, int z) {
+            if (this.grid != null) {
+                Region region = this.grid.resolve(x, y, z);
+                if (region != null) {
+                    return region;
+                }
+            }
+
+            return this.world;
+        }
+    }
+
+    /**
+     * Open addressing table from packed chunk coordinates to regions
+     * overlapping that chunk, sorted by priority. Regions spanning more than
+     * {@link #MAXIMUM_CHUNKS} chunks are not bucketed, they are checked one
+     * by one after the grid, since enumerating their chunks could exhaust
+     * memory.
+     */
+    static final class ChunkGrid {
+        static final int MAXIMUM_CHUNKS = 64 * 64;
+
+        private static final Region[] NO_REGIONS = new Region[0];
+        private static final Comparator<Region> BY_PRIORITY =
+                Comparator.comparingInt((Region region) -> region.priority).reversed();
+
+        private final long[] keys;
+        private final Region[][] values;
+        private final int mask;
+        private final Region[] oversized;
+
+        private ChunkGrid(long[] keys, Region[][] values, Region[] oversized) {
+            this.keys = keys;
+            this.values = values;
+            this.mask = keys.length - 1;
+            this.oversized = oversized;
+        }
+
+        Region resolve(int x, int y, int z) {
+            Region found = this.resolveChunk(x, y, z);
+
+            for (Region region : this.oversized) {
+                if (found != null && region.priority <= found.priority) {
+                    break;
+                } else if (region.contains(x, y, z)) {
+                    return region;
+                }
+            }
+
+            return found;
+        }
+
+        private Region resolveChunk(int x, int y, int z) {
+            long key = key(x >> 4, z >> 4);
+            int index = hash(key) & this.mask;
+
+            Region[] regions;
+            while (true) {
+                regions = this.values[index];
+                if (regions == null) {
+                    return null;
+                } else if (this.keys[index] == key) {
+                    break;
+                }
+
+                index = (index + 1) & this.mask;
+            }
+
+            for (Region region : regions) {
+                if (region.contains(x, y, z)) {
+                    return region;
+                }
+            }
+
+            return null;
+        }
+
+        static ChunkGrid create(List<Region> regions) {
+            Objects.requireNonNull(regions, "regions");
+
+            Map<Long, List<Region>> chunks = new HashMap<>();
+            List<Region> oversized = new ArrayList<>();
+            for (Region region : regions) {
+                long width = (long) (region.maxX >> 4) - (region.minX >> 4) + 1;
+                long length = (long) (region.maxZ >> 4) - (region.minZ >> 4) + 1;
+                if (width * length > MAXIMUM_CHUNKS) {
+                    RegionIndex.logger.log(Level.WARNING, "Region " + region.name + " spans " + (width * length) +
+                            " chunks, it will be checked on every hit in " + region.worldName + " instead of indexed.");
+                    oversized.add(region);
+                    continue;
+                }
+
+                for (int chunkX = region.minX >> 4; chunkX <= region.maxX >> 4; chunkX++) {
+                    for (int chunkZ = region.minZ >> 4; chunkZ <= region.maxZ >> 4; chunkZ++) {
+                        chunks.computeIfAbsent(key(chunkX, chunkZ), key -> new ArrayList<>()).add(region);
+                    }
+                }
+            }
+
+            // load factor of at most 0.5 keeps probe sequences short
+            int capacity = Integer.highestOneBit(Math.max(1, chunks.size()) * 2) * 2;
+            long[] keys = new long[capacity];
+            Region[][] values = new Region[capacity][];
+
+            chunks.forEach((key, chunkRegions) -> {
+                Region[] sorted = chunkRegions.toArray(NO_REGIONS);
+                Arrays.sort(sorted, BY_PRIORITY);
+
+                int index = hash(key) & (capacity - 1);
+                while (values[index] != null) {
+                    index = (index + 1) & (capacity - 1);
+                }
+
+                keys[index] = key;
+                values[index] = sorted;
+            });
+
+            Region[] sortedOversized = oversized.toArray(NO_REGIONS);
+            Arrays.sort(sortedOversized, BY_PRIORITY);
+            return new ChunkGrid(keys, values, sortedOversized);
+        }
+
+        private static long key(int chunkX, int chunkZ) {
+            return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+        }
+
+        private static int hash(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+}
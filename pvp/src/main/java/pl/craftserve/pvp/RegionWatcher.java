@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads {@link RegionIndex} from {@code regions.yml} and {@code profiles/}
+ * in the data folder and publishes a new one whenever they change.
+ */
+public class RegionWatcher {
+    static final Logger logger = Logger.getLogger(RegionWatcher.class.getName());
+
+    static final String REGIONS_FILE = "regions.yml";
+    static final String PROFILES_DIRECTORY = "profiles";
+
+    private final File regionsFile;
+    private final File profilesDirectory;
+    private final AtomicReference<RegionIndex> index = new AtomicReference<>(RegionIndex.EMPTY);
+
+    public RegionWatcher(File dataFolder) {
+        Objects.requireNonNull(dataFolder, "dataFolder");
+        this.regionsFile = new File(dataFolder, REGIONS_FILE);
+        this.profilesDirectory = new File(dataFolder, PROFILES_DIRECTORY);
+    }
+
+    public AtomicReference<RegionIndex> getIndex() {
+        return this.index;
+    }
+
+    public void start(FileWatcher fileWatcher) {
+        Objects.requireNonNull(fileWatcher, "fileWatcher");
+
+        this.reload();
+
+        if (!this.profilesDirectory.isDirectory() && !this.profilesDirectory.mkdirs()) {
+            logger.warning("Could not create " + this.profilesDirectory + " directory.");
+        }
+
+        // one instance for both, so a change to both is reloaded once, callbacks are deduplicated by identity
+        Runnable reload = this::reload;
+        fileWatcher.watch(this.regionsFile.getParentFile(), file -> file.getName().equals(REGIONS_FILE), reload);
+        fileWatcher.watch(this.profilesDirectory, file -> file.getName().endsWith(".yml"), reload);
+    }
+
+    public void reload() {
+        RegionIndex index;
+        try {
+            index = RegionIndex.load(this.regionsFile, this.profilesDirectory);
+        } catch (IOException | InvalidConfigurationException e) {
+            logger.log(Level.SEVERE, "Could not load regions, keeping previous ones.", e);
+            return;
+        }
+
+        this.index.set(index);
+        logger.info("Loaded regions: " + index);
+    }
+}
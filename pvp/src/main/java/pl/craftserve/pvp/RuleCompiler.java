@@ -0,0 +1,449 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.ImmutableList;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.Tag;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Waterlogged;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.potion.PotionEffectType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles damage rules into {@link MethodHandle} trees. Conditions are
+ * {@code (DamageContext, double)boolean} handles combined with
+ * {@link MethodHandles#guardWithTest}, actions and whole rules are
+ * {@code (DamageContext, double)double} handles folded into a chain.
+ *
+ * <pre>
+ * condition := or
+ * or        := and ("or" and)*
+ * and       := unary ("and" unary)*
+ * unary     := "not" unary | "(" or ")" | predicate
+ * predicate := "weapon" "is" materials | "armor" "has" materials
+ *            | "world" "is" names | "cause" "is" names
+ *            | "attacker" "is" "player" | "victim" "is" "player"
+ *            | "critical" | "blocking" | "true"
+ *            | "damage" (">" | ">=" | "<" | "<=") number
+ * materials := material ("," material)*, where #name is an item tag
+ * </pre>
+ */
+final class RuleCompiler {
+    private static final Pattern TOKEN = Pattern.compile("\\(|\\)|,|>=|<=|>|<|[^\\s(),<>=]+");
+    private static final List<Tag<Material>> TAGS = ImmutableList.of(ItemTags.ARMOR, ItemTags.AXES, ItemTags.HOES,
+            ItemTags.PICKAXES, ItemTags.SHOVELS, ItemTags.SWORDS, ItemTags.TRIDENTS);
+
+    // attacks must be charged more than this to be critical, as in vanilla
+    private static final float CRITICAL_CHARGE = 0.9F;
+
+    private static final MethodType CONDITION = MethodType.methodType(boolean.class, DamageContext.class, double.class);
+    private static final MethodType ACTION = MethodType.methodType(double.class, DamageContext.class, double.class);
+
+    static final MethodHandle IDENTITY;
+    private static final MethodHandle TRUE;
+    private static final MethodHandle FALSE;
+    private static final MethodHandle NOT;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            IDENTITY = MethodHandles.dropArguments(MethodHandles.identity(double.class), 0, DamageContext.class);
+            TRUE = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, true), 0, CONDITION.parameterList());
+            FALSE = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, false), 0, CONDITION.parameterList());
+            NOT = lookup.findStatic(RuleCompiler.class, "not", MethodType.methodType(boolean.class, boolean.class));
+        } catch (ReflectiveOperationException e) {
+            throw new Error(e);
+        }
+    }
+
+    private final AttackChargeTracker charges;
+    private final List<String> tokens;
+    private int position;
+
+    private RuleCompiler(String input, AttackChargeTracker charges) {
+        this.charges = Objects.requireNonNull(charges, "charges");
+        this.tokens = new ArrayList<>();
+
+        Matcher matcher = TOKEN.matcher(input);
+        while (matcher.find()) {
+            this.tokens.add(matcher.group());
+        }
+    }
+
+    /**
+     * @return rule applying its actions in order when the condition matches.
+     */
+    static MethodHandle compileRule(String condition, Map<String, Object> actions, AttackChargeTracker charges)
+            throws InvalidConfigurationException {
+        Objects.requireNonNull(condition, "condition");
+        Objects.requireNonNull(actions, "actions");
+        Objects.requireNonNull(charges, "charges");
+
+        MethodHandle action = IDENTITY;
+        for (Map.Entry<String, Object> entry : actions.entrySet()) {
+            if (!(entry.getValue() instanceof Number)) {
+                throw new InvalidConfigurationException("Rule action " + entry.getKey() + " must be a number.");
+            }
+
+            double value = ((Number) entry.getValue()).doubleValue();
+            action = chain(action, MethodHandles.insertArguments(findAction(entry.getKey()), 0, value));
+        }
+
+        return MethodHandles.guardWithTest(compileCondition(condition, charges), action, IDENTITY);
+    }
+
+    static MethodHandle compileCondition(String input, AttackChargeTracker charges) throws InvalidConfigurationException {
+        RuleCompiler compiler = new RuleCompiler(input, charges);
+        if (compiler.tokens.isEmpty()) {
+            throw new InvalidConfigurationException("Empty rule condition.");
+        }
+
+        MethodHandle condition = compiler.parseOr();
+        if (compiler.position != compiler.tokens.size()) {
+            throw new InvalidConfigurationException("Unexpected " + compiler.tokens.get(compiler.position) + " in: " + input);
+        }
+
+        return condition;
+    }
+
+    /**
+     * @return {@code (context, damage) -> second(context, first(context, damage))}
+     */
+    static MethodHandle chain(MethodHandle first, MethodHandle second) {
+        MethodHandle permuted = MethodHandles.permuteArguments(second,
+                MethodType.methodType(double.class, double.class, DamageContext.class, double.class), 1, 0);
+        return MethodHandles.foldArguments(permuted, first);
+    }
+
+    private MethodHandle parseOr() throws InvalidConfigurationException {
+        MethodHandle condition = this.parseAnd();
+        while (this.accept("or")) {
+            condition = MethodHandles.guardWithTest(condition, TRUE, this.parseAnd());
+        }
+
+        return condition;
+    }
+
+    private MethodHandle parseAnd() throws InvalidConfigurationException {
+        MethodHandle condition = this.parseUnary();
+        while (this.accept("and")) {
+            condition = MethodHandles.guardWithTest(condition, this.parseUnary(), FALSE);
+        }
+
+        return condition;
+    }
+
+    private MethodHandle parseUnary() throws InvalidConfigurationException {
+        if (this.accept("not")) {
+            return MethodHandles.filterReturnValue(this.parseUnary(), NOT);
+        } else if (this.accept("(")) {
+            MethodHandle condition = this.parseOr();
+            this.expect(")");
+            return condition;
+        }
+
+        return this.parsePredicate();
+    }
+
+    private MethodHandle parsePredicate() throws InvalidConfigurationException {
+        String token = this.next();
+        switch (token) {
+            case "true":
+                return TRUE;
+            case "critical":
+                return MethodHandles.insertArguments(findCondition("isCritical", AttackChargeTracker.class), 0, this.charges);
+            case "blocking":
+                return findCondition("isBlocking");
+            case "weapon":
+                this.expect("is");
+                return MethodHandles.insertArguments(findCondition("isWeapon", boolean[].class), 0, (Object) this.parseMaterials());
+            case "armor":
+                this.expect("has");
+                return MethodHandles.insertArguments(findCondition("hasArmor", boolean[].class), 0, (Object) this.parseMaterials());
+            case "world":
+                this.expect("is");
+                return MethodHandles.insertArguments(findCondition("isWorld", String[].class), 0, (Object) this.parseNames());
+            case "cause":
+                this.expect("is");
+                return MethodHandles.insertArguments(findCondition("isCause", boolean[].class), 0, (Object) this.parseCauses());
+            case "attacker":
+                this.expect("is");
+                this.expect("player");
+                return findCondition("isAttackerPlayer");
+            case "victim":
+                this.expect("is");
+                this.expect("player");
+                return findCondition("isVictimPlayer");
+            case "damage":
+                String operator = this.next();
+                double value = this.parseNumber();
+                switch (operator) {
+                    case ">": return MethodHandles.insertArguments(findCondition("isGreater", double.class), 0, value);
+                    case ">=": return MethodHandles.filterReturnValue(
+                            MethodHandles.insertArguments(findCondition("isLess", double.class), 0, value), NOT);
+                    case "<": return MethodHandles.insertArguments(findCondition("isLess", double.class), 0, value);
+                    case "<=": return MethodHandles.filterReturnValue(
+                            MethodHandles.insertArguments(findCondition("isGreater", double.class), 0, value), NOT);
+                    default: throw new InvalidConfigurationException("Unknown operator: " + operator);
+                }
+            default:
+                throw new InvalidConfigurationException("Unknown predicate: " + token);
+        }
+    }
+
+    private boolean[] parseMaterials() throws InvalidConfigurationException {
+        boolean[] materials = new boolean[Material.values().length];
+        for (String name : this.parseNames()) {
+            if (name.startsWith("#")) {
+                Tag<Material> tag = TAGS.stream()
+                        .filter(candidate -> candidate.getKey().getKey().equals(name.substring(1)))
+                        .findFirst()
+                        .orElseThrow(() -> new InvalidConfigurationException("Unknown item tag: " + name));
+                tag.getValues().forEach(material -> materials[material.ordinal()] = true);
+                continue;
+            }
+
+            NamespacedKey key = PvpPlugin.parseKey(name);
+            Material material = Registry.MATERIAL.get(key);
+            if (material == null) {
+                throw new InvalidConfigurationException("Invalid material: " + key);
+            }
+
+            materials[material.ordinal()] = true;
+        }
+
+        return materials;
+    }
+
+    private boolean[] parseCauses() throws InvalidConfigurationException {
+        boolean[] causes = new boolean[EntityDamageEvent.DamageCause.values().length];
+        for (String name : this.parseNames()) {
+            try {
+                causes[EntityDamageEvent.DamageCause.valueOf(name.toUpperCase(Locale.ROOT)).ordinal()] = true;
+            } catch (IllegalArgumentException e) {
+                throw new InvalidConfigurationException("Unknown damage cause: " + name);
+            }
+        }
+
+        return causes;
+    }
+
+    private String[] parseNames() throws InvalidConfigurationException {
+        List<String> names = new ArrayList<>();
+        do {
+            names.add(this.next());
+        } while (this.accept(","));
+
+        return names.toArray(new String[0]);
+    }
+
+    private double parseNumber() throws InvalidConfigurationException {
+        String token = this.next();
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            throw new InvalidConfigurationException("Expected number, got " + token);
+        }
+    }
+
+    private String next() throws InvalidConfigurationException {
+        if (this.position == this.tokens.size()) {
+            throw new InvalidConfigurationException("Unexpected end of rule condition.");
+        }
+
+        return this.tokens.get(this.position++);
+    }
+
+    private boolean accept(String token) {
+        if (this.position < this.tokens.size() && this.tokens.get(this.position).equals(token)) {
+            this.position++;
+            return true;
+        }
+
+        return false;
+    }
+
+    private void expect(String token) throws InvalidConfigurationException {
+        String actual = this.next();
+        if (!actual.equals(token)) {
+            throw new InvalidConfigurationException("Expected " + token + ", got " + actual);
+        }
+    }
+
+    private static MethodHandle findCondition(String name, Class<?>... bound) {
+        MethodType type = CONDITION;
+        for (int i = bound.length - 1; i >= 0; i--) {
+            type = type.insertParameterTypes(0, bound[i]);
+        }
+
+        return find(name, type);
+    }
+
+    private static MethodHandle findAction(String name) throws InvalidConfigurationException {
+        switch (name) {
+            case "multiply": return find("multiply", ACTION.insertParameterTypes(0, double.class));
+            case "add": return find("add", ACTION.insertParameterTypes(0, double.class));
+            case "minimum": return find("minimum", ACTION.insertParameterTypes(0, double.class));
+            case "maximum": return find("maximum", ACTION.insertParameterTypes(0, double.class));
+            default: throw new InvalidConfigurationException("Unknown rule action: " + name);
+        }
+    }
+
+    private static MethodHandle find(String name, MethodType type) {
+        try {
+            return MethodHandles.lookup().findStatic(RuleCompiler.class, name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new Error(e);
+        }
+    }
+
+    //
+    // Predicates and actions
+    //
+
+    private static boolean not(boolean value) {
+        return !value;
+    }
+
+    private static boolean isWeapon(boolean[] materials, DamageContext context, double damage) {
+        return materials[context.getWeapon()];
+    }
+
+    private static boolean hasArmor(boolean[] materials, DamageContext context, double damage) {
+        for (int armor : context.getArmor()) {
+            if (materials[armor]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isWorld(String[] names, DamageContext context, double damage) {
+        World world = context.getWorld();
+        if (world == null) {
+            return false;
+        }
+
+        String name = world.getName();
+        for (String candidate : names) {
+            if (candidate.equals(name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isCause(boolean[] causes, DamageContext context, double damage) {
+        return causes[context.getCause().ordinal()];
+    }
+
+    private static boolean isAttackerPlayer(DamageContext context, double damage) {
+        return context.getAttacker() instanceof Player;
+    }
+
+    private static boolean isVictimPlayer(DamageContext context, double damage) {
+        return context.getVictim() instanceof Player;
+    }
+
+    /**
+     * Same conditions as vanilla, a charged attack while falling, not on
+     * ground, climbing, in water, sprinting or riding and not blind.
+     */
+    @SuppressWarnings("deprecation") // the client reports whether it is on ground, just like vanilla trusts it
+    private static boolean isCritical(AttackChargeTracker charges, DamageContext context, double damage) {
+        LivingEntity attacker = context.getAttacker();
+        if (!(attacker instanceof Player) || context.getDamager() != attacker) {
+            return false;
+        }
+
+        Player player = (Player) attacker;
+        if (player.getFallDistance() <= 0F || player.isOnGround() || player.isSprinting() ||
+                player.isInsideVehicle() || charges.getCharge(player) <= CRITICAL_CHARGE ||
+                player.hasPotionEffect(PotionEffectType.BLINDNESS)) {
+            return false;
+        }
+
+        Block block = player.getLocation().getBlock();
+        return !Tag.CLIMBABLE.isTagged(block.getType()) && !isWater(block);
+    }
+
+    private static boolean isWater(Block block) {
+        switch (block.getType()) {
+            case WATER:
+            case BUBBLE_COLUMN:
+            case KELP:
+            case KELP_PLANT:
+            case SEAGRASS:
+            case TALL_SEAGRASS:
+                return true;
+            default:
+                BlockData data = block.getBlockData();
+                return data instanceof Waterlogged && ((Waterlogged) data).isWaterlogged();
+        }
+    }
+
+    private static boolean isBlocking(DamageContext context, double damage) {
+        LivingEntity victim = context.getVictim();
+        return victim instanceof HumanEntity && ((HumanEntity) victim).isBlocking();
+    }
+
+    private static boolean isGreater(double value, DamageContext context, double damage) {
+        return damage > value;
+    }
+
+    private static boolean isLess(double value, DamageContext context, double damage) {
+        return damage < value;
+    }
+
+    private static double multiply(double value, DamageContext context, double damage) {
+        return damage * value;
+    }
+
+    private static double add(double value, DamageContext context, double damage) {
+        return damage + value;
+    }
+
+    private static double minimum(double value, DamageContext context, double damage) {
+        return Math.max(damage, value);
+    }
+
+    private static double maximum(double value, DamageContext context, double damage) {
+        return Math.min(damage, value);
+    }
+}
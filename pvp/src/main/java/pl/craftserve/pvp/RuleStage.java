@@ -0,0 +1,93 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MutableCallSite;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies {@link DamageRules} from {@code rules.yml}, recompiled and
+ * swapped whenever the file changes.
+ *
+ * Rules are published through a {@link MutableCallSite} invoked by a
+ * constant handle, so the JIT inlines the compiled rules into hits like a
+ * hand-written stage and deoptimizes when they are swapped. The call site
+ * is static to be constant, there may be only one rule stage at a time.
+ */
+public class RuleStage implements DamageStage {
+    static final Logger logger = Logger.getLogger(RuleStage.class.getName());
+
+    static final String RULES_FILE = "rules.yml";
+
+    private static final MutableCallSite CALL_SITE = new MutableCallSite(DamageRules.EMPTY.getHandle());
+    private static final MethodHandle INVOKER = CALL_SITE.dynamicInvoker();
+
+    private final File rulesFile;
+    private final AttackChargeTracker charges;
+    private final AtomicReference<DamageRules> rules = new AtomicReference<>(DamageRules.EMPTY);
+
+    public RuleStage(File dataFolder, AttackChargeTracker charges) {
+        Objects.requireNonNull(dataFolder, "dataFolder");
+        this.rulesFile = new File(dataFolder, RULES_FILE);
+        this.charges = Objects.requireNonNull(charges, "charges");
+    }
+
+    public AtomicReference<DamageRules> getRules() {
+        return this.rules;
+    }
+
+    public void start(FileWatcher fileWatcher) {
+        Objects.requireNonNull(fileWatcher, "fileWatcher");
+
+        this.reload();
+        fileWatcher.watch(this.rulesFile.getParentFile(), file -> file.getName().equals(RULES_FILE), this::reload);
+    }
+
+    public void reload() {
+        DamageRules rules;
+        try {
+            rules = DamageRules.load(this.rulesFile, this.charges);
+        } catch (IOException | InvalidConfigurationException e) {
+            logger.log(Level.SEVERE, "Could not load damage rules, keeping previous ones.", e);
+            return;
+        }
+
+        this.rules.set(rules);
+        CALL_SITE.setTarget(rules.getHandle());
+        MutableCallSite.syncAll(new MutableCallSite[] {CALL_SITE});
+        logger.info("Loaded damage rules: " + rules);
+    }
+
+    @Override
+    public double apply(DamageContext context, double damage) {
+        try {
+            return (double) INVOKER.invokeExact(context, damage);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException(throwable);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.Multimap;
+import org.bukkit.Material;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeModifier;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Effective stats of injected transformers compiled into primitive tables
+ * indexed by {@link Material#ordinal()}. Immutable, lookups don't allocate,
+ * box or hash. Stats of materials without a transformer for them are their
+ * vanilla 1.16 values.
+ */
+public final class StatTable {
+    private static final int MATERIALS = Material.values().length;
+
+    public static final double PLAYER_ATTACK_DAMAGE = 1D;
+
+    /**
+     * Vanilla stats, without transformers.
+     */
+    public static final StatTable EMPTY = createVanilla();
+
+    private final double[] attackDamage;
+    private final double[] attackSpeed;
+    private final double[] armor;
+    private final double[] armorToughness;
+    private final double[] foodLevel;
+    private final double[] saturation;
+    private final DamageProfile damageProfile;
+    private final int size;
+
+    private StatTable(double[] attackDamage, double[] attackSpeed, double[] armor, double[] armorToughness,
+                      double[] foodLevel, double[] saturation, DamageProfile damageProfile, int size) {
+        this.attackDamage = attackDamage;
+        this.attackSpeed = attackSpeed;
+        this.armor = armor;
+        this.armorToughness = armorToughness;
+        this.foodLevel = foodLevel;
+        this.saturation = saturation;
+        this.damageProfile = damageProfile;
+        this.size = size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @return attack damage of a player holding the material.
+     */
+    public double getAttackDamage(Material material) {
+        return this.attackDamage[material.ordinal()];
+    }
+
+    /**
+     * @return attack speed of a player holding the material.
+     */
+    public double getAttackSpeed(Material material) {
+        return this.attackSpeed[material.ordinal()];
+    }
+
+    /**
+     * @return armor points of the material worn in its slot.
+     */
+    public double getArmor(Material material) {
+        return this.armor[material.ordinal()];
+    }
+
+    public double getArmorToughness(Material material) {
+        return this.armorToughness[material.ordinal()];
+    }
+
+    public double getFoodLevel(Material material) {
+        return this.foodLevel[material.ordinal()];
+    }
+
+    public double getSaturation(Material material) {
+        return this.saturation[material.ordinal()];
+    }
+
+    /**
+     * @return multiplier of damage dealt with or received wearing the
+     * material, 1 if it has none.
+     */
+    public float getDamageMultiplier(Material material) {
+        return this.damageProfile.getMultiplier(material.ordinal());
+    }
+
+    public DamageProfile getDamageProfile() {
+        return this.damageProfile;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", StatTable.class.getSimpleName() + "[", "]")
+                .add("size=" + this.size)
+                .toString();
+    }
+
+    /**
+     * Attribute transformers replace all modifiers of their item, so an
+     * attribute they don't modify has its base value. Food transformers
+     * keep vanilla values they don't define.
+     */
+    public static StatTable compile(Multimap<Material, Transformer> transformers) {
+        if (transformers == null || transformers.isEmpty()) {
+            return EMPTY;
+        }
+
+        double[] attackDamage = EMPTY.attackDamage.clone();
+        double[] attackSpeed = EMPTY.attackSpeed.clone();
+        double[] armor = EMPTY.armor.clone();
+        double[] armorToughness = EMPTY.armorToughness.clone();
+        double[] foodLevel = EMPTY.foodLevel.clone();
+        double[] saturation = EMPTY.saturation.clone();
+        Map<Material, DamageTransformer> damageTransformers = new LinkedHashMap<>();
+
+        transformers.forEach((material, transformer) -> {
+            int ordinal = material.ordinal();
+            if (transformer instanceof AttributeTransformer) {
+                Multimap<Attribute, AttributeModifier> modifiers = ((AttributeTransformer) transformer).getAttributeModifiers();
+                attackDamage[ordinal] = value(PLAYER_ATTACK_DAMAGE, modifiers.get(Attribute.GENERIC_ATTACK_DAMAGE));
+                attackSpeed[ordinal] = value(CombatMode.VANILLA_ATTACK_SPEED, modifiers.get(Attribute.GENERIC_ATTACK_SPEED));
+                armor[ordinal] = value(0D, modifiers.get(Attribute.GENERIC_ARMOR));
+                armorToughness[ordinal] = value(0D, modifiers.get(Attribute.GENERIC_ARMOR_TOUGHNESS));
+            } else if (transformer instanceof FoodTransformer) {
+                FoodTransformer food = (FoodTransformer) transformer;
+                if (food.getFoodLevel() != null) {
+                    foodLevel[ordinal] = food.getFoodLevel();
+                }
+                if (food.getSaturation() != null) {
+                    saturation[ordinal] = food.getSaturation();
+                }
+            } else if (transformer instanceof DamageTransformer) {
+                damageTransformers.put(material, (DamageTransformer) transformer);
+            }
+        });
+
+        return new StatTable(attackDamage, attackSpeed, armor, armorToughness, foodLevel, saturation,
+                DamageProfile.compile(damageTransformers), transformers.size());
+    }
+
+    /**
+     * Same order of operations as vanilla attribute instances.
+     */
+    public static double value(double base, Collection<AttributeModifier> modifiers) {
+        Objects.requireNonNull(modifiers, "modifiers");
+
+        double value = base;
+        for (AttributeModifier modifier : modifiers) {
+            if (modifier.getOperation() == AttributeModifier.Operation.ADD_NUMBER) {
+                value += modifier.getAmount();
+            }
+        }
+
+        double result = value;
+        for (AttributeModifier modifier : modifiers) {
+            if (modifier.getOperation() == AttributeModifier.Operation.ADD_SCALAR) {
+                result += value * modifier.getAmount();
+            }
+        }
+
+        for (AttributeModifier modifier : modifiers) {
+            if (modifier.getOperation() == AttributeModifier.Operation.MULTIPLY_SCALAR_1) {
+                result *= 1D + modifier.getAmount();
+            }
+        }
+
+        return result;
+    }
+
+    private static StatTable createVanilla() {
+        double[] attackDamage = new double[MATERIALS];
+        double[] attackSpeed = new double[MATERIALS];
+        Arrays.fill(attackDamage, PLAYER_ATTACK_DAMAGE);
+        Arrays.fill(attackSpeed, CombatMode.VANILLA_ATTACK_SPEED);
+
+        weapon(attackDamage, attackSpeed, Material.WOODEN_SWORD, 3D, -2.4D);
+        weapon(attackDamage, attackSpeed, Material.GOLDEN_SWORD, 3D, -2.4D);
+        weapon(attackDamage, attackSpeed, Material.STONE_SWORD, 4D, -2.4D);
+        weapon(attackDamage, attackSpeed, Material.IRON_SWORD, 5D, -2.4D);
+        weapon(attackDamage, attackSpeed, Material.DIAMOND_SWORD, 6D, -2.4D);
+        weapon(attackDamage, attackSpeed, Material.NETHERITE_SWORD, 7D, -2.4D);
+
+        weapon(attackDamage, attackSpeed, Material.WOODEN_AXE, 6D, -3.2D);
+        weapon(attackDamage, attackSpeed, Material.GOLDEN_AXE, 6D, -3D);
+        weapon(attackDamage, attackSpeed, Material.STONE_AXE, 8D, -3.2D);
+        weapon(attackDamage, attackSpeed, Material.IRON_AXE, 8D, -3.1D);
+        weapon(attackDamage, attackSpeed, Material.DIAMOND_AXE, 8D, -3D);
+        weapon(attackDamage, attackSpeed, Material.NETHERITE_AXE, 9D, -3D);
+
+        weapon(attackDamage, attackSpeed, Material.WOODEN_SHOVEL, 1.5D, -3D);
+        weapon(attackDamage, attackSpeed, Material.GOLDEN_SHOVEL, 1.5D, -3D);
+        weapon(attackDamage, attackSpeed, Material.STONE_SHOVEL, 2.5D, -3D);
+        weapon(attackDamage, attackSpeed, Material.IRON_SHOVEL, 3.5D, -3D);
+        weapon(attackDamage, attackSpeed, Material.DIAMOND_SHOVEL, 4.5D, -3D);
+        weapon(attackDamage, attackSpeed, Material.NETHERITE_SHOVEL, 5.5D, -3D);
+
+        weapon(attackDamage, attackSpeed, Material.WOODEN_PICKAXE, 1D, -2.8D);
+        weapon(attackDamage, attackSpeed, Material.GOLDEN_PICKAXE, 1D, -2.8D);
+        weapon(attackDamage, attackSpeed, Material.STONE_PICKAXE, 2D, -2.8D);
+        weapon(attackDamage, attackSpeed, Material.IRON_PICKAXE, 3D, -2.8D);
+        weapon(attackDamage, attackSpeed, Material.DIAMOND_PICKAXE, 4D, -2.8D);
+        weapon(attackDamage, attackSpeed, Material.NETHERITE_PICKAXE, 5D, -2.8D);
+
+        weapon(attackDamage, attackSpeed, Material.WOODEN_HOE, 0D, -3D);
+        weapon(attackDamage, attackSpeed, Material.GOLDEN_HOE, 0D, -3D);
+        weapon(attackDamage, attackSpeed, Material.STONE_HOE, 0D, -2D);
+        weapon(attackDamage, attackSpeed, Material.IRON_HOE, 0D, -1D);
+        weapon(attackDamage, attackSpeed, Material.DIAMOND_HOE, 0D, 0D);
+        weapon(attackDamage, attackSpeed, Material.NETHERITE_HOE, 0D, 0D);
+
+        weapon(attackDamage, attackSpeed, Material.TRIDENT, 8D, -2.9D);
+
+        double[] armor = new double[MATERIALS];
+        double[] armorToughness = new double[MATERIALS];
+
+        armor(armor, armorToughness, 0D, Material.LEATHER_HELMET, 1D, Material.LEATHER_CHESTPLATE, 3D,
+                Material.LEATHER_LEGGINGS, 2D, Material.LEATHER_BOOTS, 1D);
+        armor(armor, armorToughness, 0D, Material.GOLDEN_HELMET, 2D, Material.GOLDEN_CHESTPLATE, 5D,
+                Material.GOLDEN_LEGGINGS, 3D, Material.GOLDEN_BOOTS, 1D);
+        armor(armor, armorToughness, 0D, Material.CHAINMAIL_HELMET, 2D, Material.CHAINMAIL_CHESTPLATE, 5D,
+                Material.CHAINMAIL_LEGGINGS, 4D, Material.CHAINMAIL_BOOTS, 1D);
+        armor(armor, armorToughness, 0D, Material.IRON_HELMET, 2D, Material.IRON_CHESTPLATE, 6D,
+                Material.IRON_LEGGINGS, 5D, Material.IRON_BOOTS, 2D);
+        armor(armor, armorToughness, 2D, Material.DIAMOND_HELMET, 3D, Material.DIAMOND_CHESTPLATE, 8D,
+                Material.DIAMOND_LEGGINGS, 6D, Material.DIAMOND_BOOTS, 3D);
+        armor(armor, armorToughness, 3D, Material.NETHERITE_HELMET, 3D, Material.NETHERITE_CHESTPLATE, 8D,
+                Material.NETHERITE_LEGGINGS, 6D, Material.NETHERITE_BOOTS, 3D);
+        armor[Material.TURTLE_HELMET.ordinal()] = 2D;
+
+        double[] foodLevel = new double[MATERIALS];
+        double[] saturation = new double[MATERIALS];
+
+        food(foodLevel, saturation, Material.APPLE, 4, 0.3F);
+        food(foodLevel, saturation, Material.BAKED_POTATO, 5, 0.6F);
+        food(foodLevel, saturation, Material.BEEF, 3, 0.3F);
+        food(foodLevel, saturation, Material.BEETROOT, 1, 0.6F);
+        food(foodLevel, saturation, Material.BEETROOT_SOUP, 6, 0.6F);
+        food(foodLevel, saturation, Material.BREAD, 5, 0.6F);
+        food(foodLevel, saturation, Material.CARROT, 3, 0.6F);
+        food(foodLevel, saturation, Material.CHICKEN, 2, 0.3F);
+        food(foodLevel, saturation, Material.CHORUS_FRUIT, 4, 0.3F);
+        food(foodLevel, saturation, Material.COD, 2, 0.1F);
+        food(foodLevel, saturation, Material.COOKED_BEEF, 8, 0.8F);
+        food(foodLevel, saturation, Material.COOKED_CHICKEN, 6, 0.6F);
+        food(foodLevel, saturation, Material.COOKED_COD, 5, 0.6F);
+        food(foodLevel, saturation, Material.COOKED_MUTTON, 6, 0.8F);
+        food(foodLevel, saturation, Material.COOKED_PORKCHOP, 8, 0.8F);
+        food(foodLevel, saturation, Material.COOKED_RABBIT, 5, 0.6F);
+        food(foodLevel, saturation, Material.COOKED_SALMON, 6, 0.8F);
+        food(foodLevel, saturation, Material.COOKIE, 2, 0.1F);
+        food(foodLevel, saturation, Material.DRIED_KELP, 1, 0.3F);
+        food(foodLevel, saturation, Material.ENCHANTED_GOLDEN_APPLE, 4, 1.2F);
+        food(foodLevel, saturation, Material.GOLDEN_APPLE, 4, 1.2F);
+        food(foodLevel, saturation, Material.GOLDEN_CARROT, 6, 1.2F);
+        food(foodLevel, saturation, Material.HONEY_BOTTLE, 6, 0.1F);
+        food(foodLevel, saturation, Material.MELON_SLICE, 2, 0.3F);
+        food(foodLevel, saturation, Material.MUSHROOM_STEW, 6, 0.6F);
+        food(foodLevel, saturation, Material.MUTTON, 2, 0.3F);
+        food(foodLevel, saturation, Material.POISONOUS_POTATO, 2, 0.3F);
+        food(foodLevel, saturation, Material.PORKCHOP, 3, 0.3F);
+        food(foodLevel, saturation, Material.POTATO, 1, 0.3F);
+        food(foodLevel, saturation, Material.PUFFERFISH, 1, 0.1F);
+        food(foodLevel, saturation, Material.PUMPKIN_PIE, 8, 0.3F);
+        food(foodLevel, saturation, Material.RABBIT, 3, 0.3F);
+        food(foodLevel, saturation, Material.RABBIT_STEW, 10, 0.6F);
+        food(foodLevel, saturation, Material.ROTTEN_FLESH, 4, 0.1F);
+        food(foodLevel, saturation, Material.SALMON, 2, 0.1F);
+        food(foodLevel, saturation, Material.SPIDER_EYE, 2, 0.8F);
+        food(foodLevel, saturation, Material.SUSPICIOUS_STEW, 6, 0.6F);
+        food(foodLevel, saturation, Material.SWEET_BERRIES, 2, 0.1F);
+        food(foodLevel, saturation, Material.TROPICAL_FISH, 1, 0.1F);
+
+        return new StatTable(attackDamage, attackSpeed, armor, armorToughness, foodLevel, saturation,
+                DamageProfile.EMPTY, 0);
+    }
+
+    private static void weapon(double[] attackDamage, double[] attackSpeed, Material material, double damage, double speed) {
+        attackDamage[material.ordinal()] = PLAYER_ATTACK_DAMAGE + damage;
+        attackSpeed[material.ordinal()] = CombatMode.VANILLA_ATTACK_SPEED + speed;
+    }
+
+    private static void armor(double[] armor, double[] armorToughness, double pieceToughness,
+                              Material helmet, double helmetArmor, Material chestplate, double chestplateArmor,
+                              Material leggings, double leggingsArmor, Material boots, double bootsArmor) {
+        armor[helmet.ordinal()] = helmetArmor;
+        armor[chestplate.ordinal()] = chestplateArmor;
+        armor[leggings.ordinal()] = leggingsArmor;
+        armor[boots.ordinal()] = bootsArmor;
+
+        for (Material piece : new Material[] {helmet, chestplate, leggings, boots}) {
+            armorToughness[piece.ordinal()] = pieceToughness;
+        }
+    }
+
+    /**
+     * @param modifier saturation modifier, as in {@link FoodTransformer#getSaturation()}.
+     */
+    private static void food(double[] foodLevel, double[] saturation, Material material, int food, float modifier) {
+        foodLevel[material.ordinal()] = food;
+        saturation[material.ordinal()] = modifier;
+    }
+}
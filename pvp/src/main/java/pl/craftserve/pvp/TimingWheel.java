@@ -0,0 +1,192 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Hierarchical timing wheel of int handles advanced once per tick.
+ * Scheduling, rescheduling and cancelling are O(1), expiry is amortized
+ * O(1). Timers are stored in intrusive lists of primitive arrays, so
+ * timers never allocate once the capacity is reached.
+ *
+ * Not thread-safe, meant to be used from the main thread only.
+ */
+public final class TimingWheel {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private static final int NONE = -1;
+
+    private final int[] heads = new int[LEVELS * SLOTS];
+
+    private long[] deadlines;
+    private int[] next;
+    private int[] prev;
+    private int[] buckets;
+
+    private long tick;
+
+    public TimingWheel(int initialCapacity) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("Initial capacity must be positive.");
+        }
+
+        Arrays.fill(this.heads, NONE);
+        this.deadlines = new long[initialCapacity];
+        this.next = new int[initialCapacity];
+        this.prev = new int[initialCapacity];
+        this.buckets = new int[initialCapacity];
+        Arrays.fill(this.buckets, NONE);
+    }
+
+    public long getTick() {
+        return this.tick;
+    }
+
+    public boolean isScheduled(int handle) {
+        return handle < this.buckets.length && this.buckets[handle] != NONE;
+    }
+
+    /**
+     * @return tick the handle expires at, or {@code -1} if not scheduled.
+     */
+    public long getDeadline(int handle) {
+        return this.isScheduled(handle) ? this.deadlines[handle] : NONE;
+    }
+
+    /**
+     * Schedules the handle to expire after the given number of ticks,
+     * replacing its previous deadline.
+     */
+    public void schedule(int handle, long delay) {
+        if (handle < 0) {
+            throw new IllegalArgumentException("Handle must not be negative.");
+        }
+
+        this.ensureCapacity(handle + 1);
+        this.unlink(handle);
+
+        this.deadlines[handle] = this.tick + Math.max(1L, delay);
+        this.link(handle);
+    }
+
+    public void cancel(int handle) {
+        if (handle < this.buckets.length) {
+            this.unlink(handle);
+        }
+    }
+
+    /**
+     * Advances the wheel by one tick and passes handles which expired to the
+     * consumer. The consumer may schedule handles again.
+     */
+    public void advance(IntConsumer expired) {
+        long tick = ++this.tick;
+
+        // cascade higher levels whenever the lower one wraps around
+        for (int level = 1; level < LEVELS; level++) {
+            if ((tick & ((1L << (BITS * level)) - 1)) != 0) {
+                break;
+            }
+
+            int bucket = level * SLOTS + (int) ((tick >>> (BITS * level)) & MASK);
+            int handle = this.heads[bucket];
+            this.heads[bucket] = NONE;
+
+            while (handle != NONE) {
+                int following = this.next[handle];
+                this.buckets[handle] = NONE;
+                this.link(handle);
+                handle = following;
+            }
+        }
+
+        int bucket = (int) (tick & MASK);
+        int handle = this.heads[bucket];
+        while (handle != NONE) {
+            int following = this.next[handle];
+            if (this.deadlines[handle] <= tick) {
+                this.unlink(handle);
+                expired.accept(handle);
+            }
+
+            handle = following;
+        }
+    }
+
+    private void link(int handle) {
+        long delta = this.deadlines[handle] - this.tick;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+
+        // deadlines beyond the last level wait there and cascade again
+        long deadline = Math.min(this.deadlines[handle], this.tick + (1L << (BITS * LEVELS)) - 1);
+        int bucket = level * SLOTS + (int) ((deadline >>> (BITS * level)) & MASK);
+
+        int head = this.heads[bucket];
+        this.next[handle] = head;
+        this.prev[handle] = NONE;
+        if (head != NONE) {
+            this.prev[head] = handle;
+        }
+
+        this.heads[bucket] = handle;
+        this.buckets[handle] = bucket;
+    }
+
+    private void unlink(int handle) {
+        int bucket = this.buckets[handle];
+        if (bucket == NONE) {
+            return;
+        }
+
+        int previous = this.prev[handle];
+        int following = this.next[handle];
+        if (previous == NONE) {
+            this.heads[bucket] = following;
+        } else {
+            this.next[previous] = following;
+        }
+
+        if (following != NONE) {
+            this.prev[following] = previous;
+        }
+
+        this.buckets[handle] = NONE;
+    }
+
+    private void ensureCapacity(int capacity) {
+        int length = this.buckets.length;
+        if (capacity <= length) {
+            return;
+        }
+
+        int newLength = Math.max(capacity, length * 2);
+        this.deadlines = Arrays.copyOf(this.deadlines, newLength);
+        this.next = Arrays.copyOf(this.next, newLength);
+        this.prev = Arrays.copyOf(this.prev, newLength);
+        this.buckets = Arrays.copyOf(this.buckets, newLength);
+        Arrays.fill(this.buckets, length, newLength, NONE);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+import org.bukkit.Material;
+import org.bukkit.attribute.Attribute;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Immutable snapshot of injected transformers, published as a whole after
+ * every injection and restoration. Safe to read from any thread, derived
+ * data can be cached by {@link #getVersion()}.
+ */
+public final class TransformerState {
+    public static final TransformerState EMPTY = new TransformerState(0L, false,
+            ImmutableMultimap.of(), ImmutableMap.of(), StatTable.EMPTY);
+
+    private final long version;
+    private final boolean modified;
+    private final Multimap<Material, Transformer> transformers;
+    private final Map<Attribute, AttributeRangeTransformer> ranges;
+    private final StatTable stats;
+
+    private TransformerState(long version, boolean modified, Multimap<Material, Transformer> transformers,
+                             Map<Attribute, AttributeRangeTransformer> ranges, StatTable stats) {
+        this.version = version;
+        this.modified = modified;
+        this.transformers = ImmutableMultimap.copyOf(transformers);
+        this.ranges = ImmutableMap.copyOf(ranges);
+        this.stats = Objects.requireNonNull(stats, "stats");
+    }
+
+    /**
+     * @return number increased with every published state.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    public boolean isModified() {
+        return this.modified;
+    }
+
+    public Multimap<Material, Transformer> getTransformers() {
+        return this.transformers;
+    }
+
+    public Map<Attribute, AttributeRangeTransformer> getRanges() {
+        return this.ranges;
+    }
+
+    public StatTable getStats() {
+        return this.stats;
+    }
+
+    /**
+     * @return state following this one, describing the session or an
+     * unmodified server if it is {@code null}.
+     */
+    public TransformerState next(ModifierSession session) {
+        if (session == null) {
+            return new TransformerState(this.version + 1, false,
+                    ImmutableMultimap.of(), ImmutableMap.of(), StatTable.EMPTY);
+        }
+
+        return new TransformerState(this.version + 1, true, session.getTransformers(), session.getRanges(),
+                StatTable.compile(session.getTransformers()));
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", TransformerState.class.getSimpleName() + "[", "]")
+                .add("version=" + this.version)
+                .add("modified=" + this.modified)
+                .add("transformers=" + this.transformers.size())
+                .add("ranges=" + this.ranges.keySet())
+                .toString();
+    }
+}
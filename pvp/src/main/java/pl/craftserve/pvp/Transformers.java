@@ -0,0 +1,190 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.io.Closer;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reading of transformer profiles, independent of the running server.
+ */
+public final class Transformers {
+    static final long DAT_PROTOCOL_VERSION = 2721351624263755569L;
+
+    private Transformers() {
+    }
+
+    public static Multimap<Material, Transformer> deserialize(Map<String, Object> transformers) throws InvalidConfigurationException {
+        Objects.requireNonNull(transformers, "transformers");
+
+        ImmutableMultimap.Builder<Material, Transformer> builder = ImmutableMultimap.builder();
+        for (Map.Entry<String, Object> entry : transformers.entrySet()) {
+            NamespacedKey key = PvpPlugin.parseKey(entry.getKey());
+
+            Material material = Registry.MATERIAL.get(key);
+            if (material == null) {
+                throw new InvalidConfigurationException("Invalid material: " + key);
+            }
+
+            Object value = entry.getValue();
+            if (!(value instanceof List<?>)) {
+                throw new InvalidConfigurationException("Transformers must be a list");
+            }
+
+            for (Object transformer : (List<?>) value) {
+                if (transformer instanceof Map<?, ?>) {
+                    Map<String, Object> map = (Map<String, Object>) transformer;
+
+                    AttributeTransformer attributeTransformer = AttributeTransformer.deserialize(map);
+                    if (attributeTransformer != null) {
+                        builder.put(material, attributeTransformer);
+                    }
+
+                    FoodTransformer foodTransformer = FoodTransformer.deserialize(map);
+                    if (foodTransformer != null) {
+                        builder.put(material, foodTransformer);
+                    }
+
+                    CooldownTransformer cooldownTransformer = CooldownTransformer.deserialize(map);
+                    if (cooldownTransformer != null) {
+                        builder.put(material, cooldownTransformer);
+                    }
+
+                    DamageTransformer damageTransformer = DamageTransformer.deserialize(map);
+                    if (damageTransformer != null) {
+                        builder.put(material, damageTransformer);
+                    }
+
+                    KnockbackTransformer knockbackTransformer = KnockbackTransformer.deserialize(map);
+                    if (knockbackTransformer != null) {
+                        builder.put(material, knockbackTransformer);
+                    }
+                } else {
+                    throw new InvalidConfigurationException("Transformer must be a map.");
+                }
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Reads transformers serialized into a {@code .dat} resource, such as
+     * the ones bundled for every supported server version.
+     */
+    public static Multimap<Material, Transformer> readJarDatFile(ClassLoader classLoader, String filename) throws IOException {
+        Objects.requireNonNull(classLoader, "classLoader");
+        Objects.requireNonNull(filename, "filename");
+
+        Object transformers;
+        try (Closer closer = Closer.create()) {
+            InputStream inputStream = closer.register(classLoader.getResourceAsStream(filename));
+            if (inputStream == null) {
+                throw new FileNotFoundException("Missing " + filename + " file.");
+            }
+
+            BufferedInputStream bufferedInputStream = closer.register(new BufferedInputStream(inputStream));
+            ObjectInputStream objectInputStream = closer.register(new ObjectInputStream(bufferedInputStream));
+
+            long protocolVersion = objectInputStream.readLong();
+            if (protocolVersion != DAT_PROTOCOL_VERSION) {
+                throw new IOException("Unsupported protocol version: " + protocolVersion);
+            }
+
+            try {
+                transformers = objectInputStream.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Required class wasn't found.", e);
+            }
+        }
+
+        if (!(transformers instanceof Map<?, ?>)) {
+            throw new IOException("Root transformers object is not a map.");
+        }
+
+        try {
+            return deserialize((Map<String, Object>) transformers);
+        } catch (InvalidConfigurationException e) {
+            throw new IOException("Could not deserialize transformers.", e);
+        }
+    }
+
+    public static Multimap<Material, Transformer> readYaml(File file) throws IOException {
+        Objects.requireNonNull(file, "file");
+
+        Object transformers;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            transformers = new Yaml().load(reader);
+        } catch (YAMLException e) {
+            throw new IOException("Invalid YAML syntax.", e);
+        }
+
+        if (transformers == null) {
+            return ImmutableMultimap.of();
+        } else if (!(transformers instanceof Map<?, ?>)) {
+            throw new IOException("Root transformers object is not a map.");
+        }
+
+        try {
+            return deserialize((Map<String, Object>) transformers);
+        } catch (InvalidConfigurationException e) {
+            throw new IOException("Could not deserialize transformers.", e);
+        }
+    }
+
+    /**
+     * Overrides transformers of the same type for the same material, leaving
+     * other transformers untouched.
+     */
+    public static Multimap<Material, Transformer> override(Multimap<Material, Transformer> transformers,
+                                                           Multimap<Material, Transformer> overrides) {
+        Objects.requireNonNull(transformers, "transformers");
+        Objects.requireNonNull(overrides, "overrides");
+
+        ImmutableMultimap.Builder<Material, Transformer> builder = ImmutableMultimap.builder();
+        transformers.forEach((material, transformer) -> {
+            boolean overridden = overrides.get(material).stream()
+                    .anyMatch(override -> override.getClass().equals(transformer.getClass()));
+            if (!overridden) {
+                builder.put(material, transformer);
+            }
+        });
+
+        return builder.putAll(overrides).build();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package pl.craftserve.pvp;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Called on the main thread after transformers are injected, replaced with
+ * other ones, or restored to vanilla values.
+ */
+public class TransformersChangeEvent extends Event {
+    private static final HandlerList handlers = new HandlerList();
+
+    private final Cause cause;
+    private final TransformerState previousState;
+    private final TransformerState state;
+
+    public TransformersChangeEvent(Cause cause, TransformerState previousState, TransformerState state) {
+        this.cause = Objects.requireNonNull(cause, "cause");
+        this.previousState = Objects.requireNonNull(previousState, "previousState");
+        this.state = Objects.requireNonNull(state, "state");
+    }
+
+    public Cause getCause() {
+        return this.cause;
+    }
+
+    public TransformerState getPreviousState() {
+        return this.previousState;
+    }
+
+    public TransformerState getState() {
+        return this.state;
+    }
+
+    public StatTable getPreviousStats() {
+        return this.previousState.getStats();
+    }
+
+    public StatTable getStats() {
+        return this.state.getStats();
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return handlers;
+    }
+
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", TransformersChangeEvent.class.getSimpleName() + "[", "]")
+                .add("cause=" + this.cause)
+                .add("state=" + this.state)
+                .toString();
+    }
+
+    public enum Cause {
+        /**
+         * Transformers were injected into an unmodified server.
+         */
+        INJECT,
+
+        /**
+         * Injected transformers were replaced with other ones.
+         */
+        CHANGE,
+
+        /**
+         * Transformers were restored to vanilla values.
+         */
+        RESTORE,
+        ;
+    }
+}
@@ -16,122 +16,148 @@
 
 package pl.craftserve.pvp;
 
-import com.google.common.io.Closer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonIOException;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import net.md_5.bungee.api.ChatColor;
-import net.md_5.bungee.api.ChatMessageType;
 import net.md_5.bungee.api.chat.BaseComponent;
 import net.md_5.bungee.api.chat.ClickEvent;
 import net.md_5.bungee.api.chat.ComponentBuilder;
 import net.md_5.bungee.api.chat.HoverEvent;
 import net.md_5.bungee.api.chat.hover.content.Text;
-import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.EventPriority;
-import org.bukkit.event.Listener;
-import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.plugin.Plugin;
-import org.bukkit.scheduler.BukkitScheduler;
-import org.bukkit.scheduler.BukkitTask;
 
-import javax.net.ssl.HttpsURLConnection;
 import java.awt.Color;
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class Updater implements Listener {
+/**
+ * Checks for new releases on an {@link IoExecutor} task, scheduled again
+ * after every check. Requests are conditional on the ETag of the last response,
+ * so unchanged releases are not downloaded again, and failures back off
+ * exponentially. The last result is cached in a file, so restarts don't
+ * request it again.
+ *
+ * <p>The cache directory can be shared by servers on the same host. The
+ * server holding its lock file requests the release while others read the
+ * result once the cache is modified, so the host makes one request per
+ * interval. Failures are written to the cache too, so all servers back off
+ * until the next check of the server which failed. Checks are jittered, so
+ * servers restarted together drift apart.
+ */
+public class Updater {
     static final Logger logger = Logger.getLogger(Updater.class.getName());
 
+    static final String CACHE_FILE = "updater.json";
+    static final String LOCK_FILE = "updater.lock";
+
     private static final ChatColor COLOR = ChatColor.of(new Color(92, 184, 92));
     private static final Duration INTERVAL = Duration.ofHours(1);
-    private static final Duration NOTIFICATION_DELAY = Duration.ofSeconds(15);
+    private static final Duration MINIMUM_BACKOFF = Duration.ofMinutes(1);
+    private static final Duration MINIMUM_JITTER = Duration.ofSeconds(30);
+    private static final Duration LOCK_RETRY = Duration.ofSeconds(30);
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration NOTIFICATION_DELAY = Duration.ofSeconds(15);
+    public static final String NOTIFICATION_PERMISSION = "craftservepvp.update";
 
-    private final BukkitScheduler scheduler;
     private final Plugin plugin;
-    private final JsonParser jsonParser;
-
-    private final String repositoryOwner;
-    private final String repositoryName;
-
-    private BukkitTask updaterTask;
-    private Resource resource;
+    private final IoExecutor ioExecutor;
+    private final JoinMessageDispatcher.Message notification;
+    private final URL endpoint;
+    private final Duration timeout;
+    private final File cacheFile;
+    private final File lockFile;
+
+    private IoExecutor.Task updaterTask;
+    private boolean stopped;
+    private volatile Resource resource;
+
+    // only accessed by the task, which is never scheduled twice at a time
+    private String etag;
+    private Instant checkedAt;
+    private FileTime cacheModified;
+    private Instant failedAt;
+    private Duration backoff;
+
+    /**
+     * @param notification message to players with {@link #NOTIFICATION_PERMISSION},
+     * set while there is a newer release.
+     * @param endpoint URL of the latest release in the format of GitHub's
+     * REST API, see {@link #latestRelease(String, String)}.
+     * @param cacheDirectory directory of the cache, which can be shared by
+     * servers on the same host.
+     */
+    public Updater(Plugin plugin, IoExecutor ioExecutor, JoinMessageDispatcher.Message notification,
+                   URL endpoint, File cacheDirectory) {
+        this(plugin, ioExecutor, notification, endpoint, cacheDirectory, TIMEOUT);
+    }
 
-    public Updater(BukkitScheduler scheduler, Plugin plugin, JsonParser jsonParser,
-                   String repositoryOwner, String repositoryName) {
-        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+    /**
+     * @param timeout connect and read timeout of requests.
+     */
+    Updater(Plugin plugin, IoExecutor ioExecutor, JoinMessageDispatcher.Message notification,
+            URL endpoint, File cacheDirectory, Duration timeout) {
         this.plugin = Objects.requireNonNull(plugin, "plugin");
-        this.jsonParser = Objects.requireNonNull(jsonParser, "jsonParser");
-
-        this.repositoryOwner = Objects.requireNonNull(repositoryOwner, "repositoryOwner");
-        this.repositoryName = Objects.requireNonNull(repositoryName, "repositoryName");
+        this.ioExecutor = Objects.requireNonNull(ioExecutor, "ioExecutor");
+        this.notification = Objects.requireNonNull(notification, "notification");
+        this.endpoint = Objects.requireNonNull(endpoint, "endpoint");
+        this.timeout = Objects.requireNonNull(timeout, "timeout");
+
+        Objects.requireNonNull(cacheDirectory, "cacheDirectory");
+        this.cacheFile = new File(cacheDirectory, CACHE_FILE);
+        this.lockFile = new File(cacheDirectory, LOCK_FILE);
     }
 
     public void start() {
-        this.updaterTask = this.scheduler.runTaskTimerAsynchronously(
-                this.plugin, this::checkForUpdates, 1L, INTERVAL.toMillis() / 50L);
+        this.schedule(jitter(Duration.ZERO));
     }
 
-    public void stop() {
+    public synchronized void stop() {
+        this.stopped = true;
+
         if (this.updaterTask != null) {
             this.updaterTask.cancel();
             this.updaterTask = null;
         }
     }
 
-    @EventHandler(priority = EventPriority.MONITOR)
-    public void sendNotification(PlayerJoinEvent event) {
-        Resource resource = this.resource;
-        if (resource == null) {
-            return;
+    private synchronized void schedule(Duration delay) {
+        if (!this.stopped) {
+            this.updaterTask = this.ioExecutor.schedule(this::checkForUpdates, delay);
         }
-
-        String currentVersion = this.plugin.getDescription().getVersion();
-        if (resource.test(currentVersion)) {
-            // already up to date
-            return;
-        }
-
-        Player player = event.getPlayer();
-        if (!player.hasPermission("craftservepvp.update")) {
-            return;
-        }
-
-        this.scheduler.runTaskLater(this.plugin, () -> {
-            if (player.isOnline()) {
-                Player.Spigot spigot = player.spigot();
-
-                this.createNotification(resource, currentVersion).forEach(components -> {
-                    spigot.sendMessage(ChatMessageType.SYSTEM, components);
-                });
-            }
-        }, NOTIFICATION_DELAY.toMillis() / 50L);
     }
 
-    private Iterable<BaseComponent[]> createNotification(Resource resource, String currentVersion) {
+    private BaseComponent[][] createNotification(Resource resource, String currentVersion) {
         Objects.requireNonNull(resource, "resource");
         String publishedAt = resource.publishedAt.format(DateTimeFormatter.ISO_DATE);
 
-        return Arrays.asList(
+        return new BaseComponent[][] {
                 new ComponentBuilder()
                         .append("You are running an outdated version of " + this.plugin.getName())
                         .color(COLOR)
@@ -158,114 +184,302 @@ public class Updater implements Listener {
                                 .event(new ClickEvent(ClickEvent.Action.OPEN_URL, resource.htmlUrl.toString()))
                                 .create())
                         .create()
-        );
+        };
     }
 
-    private void checkForUpdates() {
-        URL url;
+    void checkForUpdates() {
+        Duration delay;
         try {
-            url = new URL(String.format("https://api.github.com/repos/%s/%s/releases/latest",
-                    this.repositoryOwner, this.repositoryName));
-        } catch (MalformedURLException e) {
-            logger.log(Level.SEVERE, "Invalid URL for updater, won't check for updates. :(", e);
-            return;
-        }
-
-        String jsonString;
-        try (InputStream inputStream = this.requestReleaseJson(url)) {
-            jsonString = this.inputStreamToString(inputStream);
+            delay = this.check();
         } catch (IOException e) {
-            logger.log(Level.SEVERE, "An I/O exception occurred while checking for updates.", e);
-            return;
+            // the lock could not be taken, so the failure is not shared
+            this.fail(e);
+            delay = jitter(this.backoff);
         }
 
-        JsonElement rootElement;
-        try {
-            rootElement = this.jsonParser.parse(jsonString);
-        } catch (JsonIOException e) {
-            logger.log(Level.SEVERE, "An I/O exception occurred while parsing JSON response.", e);
-            return;
-        } catch (JsonSyntaxException e) {
-            logger.log(Level.SEVERE, "Invalid JSON syntax in JSON response.", e);
-            return;
+        this.schedule(delay);
+    }
+
+    private void fail(IOException e) {
+        this.failedAt = Instant.now();
+        this.backoff = this.backoff == null ? MINIMUM_BACKOFF : this.backoff.multipliedBy(2L);
+        if (this.backoff.compareTo(INTERVAL) > 0) {
+            this.backoff = INTERVAL;
         }
 
-        JsonObject rootObject;
-        if (rootElement instanceof JsonObject) {
-            rootObject = (JsonObject) rootElement;
-        } else {
-            logger.log(Level.SEVERE, "Root element is not an object.");
-            return;
+        logger.log(Level.WARNING, "Could not check for updates, trying again in " +
+                this.backoff.getSeconds() + "s.", e);
+    }
+
+    /**
+     * @return backoff of the next check after a failure, or {@code null}
+     * if the last check succeeded.
+     */
+    Duration getBackoff() {
+        return this.backoff;
+    }
+
+    /**
+     * @return delay of the next check.
+     */
+    private Duration check() throws IOException {
+        Duration remaining = this.readCache();
+        if (remaining != null) {
+            return jitter(remaining);
         }
 
-        Resource resource;
-        try {
-            resource = Resource.create(rootObject);
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Could not create resource from JSON response.", e);
-            return;
+        Files.createDirectories(this.lockFile.toPath().getParent());
+        try (FileChannel channel = FileChannel.open(this.lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            if (lock == null) {
+                // another server is checking, read its result soon
+                return jitter(LOCK_RETRY);
+            }
+
+            // it could have finished checking right before we locked
+            remaining = this.readCache();
+            if (remaining != null) {
+                return jitter(remaining);
+            }
+
+            Resource resource;
+            try {
+                resource = this.requestRelease();
+            } catch (IOException e) {
+                this.fail(e);
+                this.writeCache();
+                return jitter(this.backoff);
+            }
+
+            this.checkedAt = Instant.now();
+            this.failedAt = null;
+            this.backoff = null;
+            this.update(resource);
+            this.writeCache();
         }
 
+        return jitter(INTERVAL);
+    }
+
+    /**
+     * Logs and builds the notification only if the release has changed.
+     */
+    private void update(Resource resource) {
+        Resource previous = this.resource;
         this.resource = resource;
 
-        if (resource.test(this.plugin.getDescription().getVersion())) {
+        if (previous != null && previous.version.equals(resource.version)) {
+            return;
+        }
+
+        String currentVersion = this.plugin.getDescription().getVersion();
+        if (resource.test(currentVersion)) {
             logger.info(this.plugin.getName() + " is up to date.");
+            this.notification.clear();
         } else {
             logger.warning("A new update for " + this.plugin.getName() +
                     " is available. Download it from: " + resource.htmlUrl.toString());
+            this.notification.set(this.createNotification(resource, currentVersion));
         }
     }
 
-    private InputStream requestReleaseJson(URL url) throws IOException {
-        Objects.requireNonNull(url, "url");
-
-        URLConnection urlConnection = url.openConnection();
-        if (!(urlConnection instanceof HttpsURLConnection)) {
-            throw new IOException("Connection is not an instance of " + HttpsURLConnection.class);
+    /**
+     * @return the cached resource if the release has not changed since the
+     * last response.
+     */
+    private Resource requestRelease() throws IOException {
+        URLConnection urlConnection = this.endpoint.openConnection();
+        if (!(urlConnection instanceof HttpURLConnection)) {
+            throw new IOException("Connection is not an instance of " + HttpURLConnection.class);
         }
 
-        HttpsURLConnection connection = (HttpsURLConnection) urlConnection;
-        connection.setDoInput(true);
+        HttpURLConnection connection = (HttpURLConnection) urlConnection;
+        connection.setConnectTimeout((int) this.timeout.toMillis());
+        connection.setReadTimeout((int) this.timeout.toMillis());
+        connection.setUseCaches(false);
 
         connection.setRequestMethod("GET");
         connection.setRequestProperty("Accept", "application/vnd.github.v3+json");
 
-        do {
-            try {
-                connection.connect();
-                break;
-            } catch (SocketTimeoutException e) {
-                // try again
+        Resource cached = this.resource;
+        if (cached != null && this.etag != null) {
+            connection.setRequestProperty("If-None-Match", this.etag);
+        }
+
+        try {
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                return cached;
+            } else if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Request returned " + responseCode + ", " + HttpURLConnection.HTTP_OK + " was expected.");
             }
-        } while (true);
 
-        int responseCode = connection.getResponseCode();
-        if (responseCode != HttpsURLConnection.HTTP_OK) {
-            throw new IOException("Request returned " + responseCode + ", " + HttpsURLConnection.HTTP_OK + " was expected.");
+            Resource resource;
+            try (InputStream inputStream = connection.getInputStream();
+                 JsonReader reader = new JsonReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+                resource = Resource.read(reader);
+            }
+
+            this.etag = connection.getHeaderField("ETag");
+            return resource;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Parses the cache only if it was modified since it was last read, which
+     * makes polling it cheap.
+     *
+     * @return time until the cached result or the backoff after a failure
+     * expires, or {@code null} if there is no fresh one.
+     */
+    private Duration readCache() {
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(this.cacheFile.toPath());
+        } catch (IOException e) {
+            // no cache yet
+            return this.getRemaining();
         }
 
-        return connection.getInputStream();
+        if (modified.equals(this.cacheModified)) {
+            return this.getRemaining();
+        }
+
+        this.cacheModified = modified;
+
+        String etag = null;
+        Instant checkedAt = null;
+        Resource resource = null;
+        Instant failedAt = null;
+        Duration backoff = null;
+
+        try (Reader fileReader = Files.newBufferedReader(this.cacheFile.toPath(), StandardCharsets.UTF_8);
+             JsonReader reader = new JsonReader(fileReader)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "etag":
+                        etag = readString(reader);
+                        break;
+                    case "checked-at":
+                        checkedAt = Instant.parse(reader.nextString());
+                        break;
+                    case "release":
+                        resource = Resource.read(reader);
+                        break;
+                    case "failed-at":
+                        failedAt = Instant.parse(reader.nextString());
+                        break;
+                    case "backoff":
+                        backoff = Duration.ofSeconds(reader.nextLong());
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException | DateTimeParseException e) {
+            logger.log(Level.WARNING, "Could not read " + this.cacheFile.getName() + ", checking for updates now.", e);
+            return null;
+        }
+
+        if (checkedAt == null || resource == null) {
+            checkedAt = null;
+            resource = null;
+        }
+
+        if (failedAt == null || backoff == null || backoff.isNegative()) {
+            failedAt = null;
+            backoff = null;
+        }
+
+        if (checkedAt == null && failedAt == null) {
+            return null;
+        }
+
+        this.etag = etag;
+        this.checkedAt = checkedAt;
+        this.failedAt = failedAt;
+        this.backoff = backoff;
+        if (resource != null) {
+            this.update(resource);
+        }
+
+        return this.getRemaining();
     }
 
-    private String inputStreamToString(InputStream inputStream) throws IOException {
-        Objects.requireNonNull(inputStream, "inputStream");
+    private Duration getRemaining() {
+        if (this.failedAt != null) {
+            // the last check failed, back off even if the cached result is fresh
+            Duration remaining = this.backoff.minus(Duration.between(this.failedAt, Instant.now()));
+            return remaining.isNegative() || remaining.compareTo(this.backoff) > 0 ? null : remaining;
+        } else if (this.checkedAt == null) {
+            return null;
+        }
 
-        try (Closer closer = Closer.create()) {
-            InputStreamReader inputStreamReader = closer.register(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
-            BufferedReader bufferedReader = closer.register(new BufferedReader(inputStreamReader));
+        Duration remaining = INTERVAL.minus(Duration.between(this.checkedAt, Instant.now()));
+        return remaining.isNegative() || remaining.compareTo(INTERVAL) > 0 ? null : remaining;
+    }
 
-            StringBuilder jsonBuilder = new StringBuilder();
-            do {
-                String line = bufferedReader.readLine();
-                if (line == null) {
-                    break;
+    private void writeCache() {
+        Resource resource = this.resource;
+
+        Path path = this.cacheFile.toPath();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.getParent());
+
+            try (Writer fileWriter = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8);
+                 JsonWriter writer = new JsonWriter(fileWriter)) {
+                writer.setIndent("  ");
+                writer.beginObject();
+                writer.name("etag").value(this.etag);
+                if (this.checkedAt != null && resource != null) {
+                    writer.name("checked-at").value(this.checkedAt.toString());
+                    writer.name("release");
+                    resource.write(writer);
+                }
+                if (this.failedAt != null) {
+                    writer.name("failed-at").value(this.failedAt.toString());
+                    writer.name("backoff").value(this.backoff.getSeconds());
                 }
+                writer.endObject();
+            }
 
-                jsonBuilder.append(line);
-            } while (true);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.cacheModified = Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write " + this.cacheFile.getName() + ".", e);
+        }
+    }
+
+    /**
+     * @return delay extended by up to a tenth of it, at least by up to
+     * {@link #MINIMUM_JITTER}.
+     */
+    private static Duration jitter(Duration delay) {
+        long spread = Math.max(MINIMUM_JITTER.toMillis(), delay.toMillis() / 10L);
+        return delay.plusMillis(ThreadLocalRandom.current().nextLong(spread));
+    }
 
-            return jsonBuilder.toString();
+    private static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
         }
+
+        return reader.nextString();
+    }
+
+    public static URL latestRelease(String repositoryOwner, String repositoryName) throws MalformedURLException {
+        Objects.requireNonNull(repositoryOwner, "repositoryOwner");
+        Objects.requireNonNull(repositoryName, "repositoryName");
+
+        return new URL(String.format("https://api.github.com/repos/%s/%s/releases/latest",
+                repositoryOwner, repositoryName));
     }
 
     private static class Resource implements Predicate<String> {
@@ -285,22 +499,59 @@ public class Updater implements Listener {
             return this.version.equalsIgnoreCase(string.trim());
         }
 
-        public static Resource create(JsonObject object) throws IOException {
-            Objects.requireNonNull(object, "object");
+        void write(JsonWriter writer) throws IOException {
+            Objects.requireNonNull(writer, "writer");
 
-            JsonElement nameElement = object.get("name");
-            if (nameElement == null || !nameElement.isJsonPrimitive()) {
-                throw new IOException("Missing name string.");
-            }
-            String name = nameElement.getAsString();
+            writer.beginObject();
+            writer.name("name").value("v" + this.version);
+            writer.name("published_at").value(this.publishedAt.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            writer.name("html_url").value(this.htmlUrl.toString());
+            writer.endObject();
+        }
 
-            JsonElement publishedAtElement = object.get("published_at");
-            if (publishedAtElement == null || !publishedAtElement.isJsonPrimitive()) {
-                throw new IOException("Missing published_at string.");
+        /**
+         * Streams the release object, skipping all fields other than the
+         * three needed ones without building a tree.
+         */
+        public static Resource read(JsonReader reader) throws IOException {
+            Objects.requireNonNull(reader, "reader");
+
+            String name = null;
+            String publishedAtString = null;
+            String htmlUrlString = null;
+
+            try {
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    throw new IOException("Root element is not an object.");
+                }
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "name":
+                            name = readString(reader);
+                            break;
+                        case "published_at":
+                            publishedAtString = readString(reader);
+                            break;
+                        case "html_url":
+                            htmlUrlString = readString(reader);
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+            } catch (IllegalStateException e) {
+                throw new IOException("Invalid JSON response.", e);
             }
 
-            JsonElement htmlUrlElement = object.get("html_url");
-            if (htmlUrlElement == null || !htmlUrlElement.isJsonPrimitive()) {
+            if (name == null) {
+                throw new IOException("Missing name string.");
+            } else if (publishedAtString == null) {
+                throw new IOException("Missing published_at string.");
+            } else if (htmlUrlString == null) {
                 throw new IOException("Missing html_url string.");
             }
 
@@ -313,14 +564,14 @@ public class Updater implements Listener {
 
             LocalDateTime publishedAt;
             try {
-                publishedAt = LocalDateTime.parse(publishedAtElement.getAsString(), DateTimeFormatter.ISO_DATE_TIME);
+                publishedAt = LocalDateTime.parse(publishedAtString, DateTimeFormatter.ISO_DATE_TIME);
             } catch (DateTimeParseException e) {
                 throw new IOException("Invalid date format for published_at.", e);
             }
 
             URL htmlUrl;
             try {
-                htmlUrl = new URL(htmlUrlElement.getAsString());
+                htmlUrl = new URL(htmlUrlString);
             } catch (MalformedURLException e) {
                 throw new IOException("Invalid URL for html_url.", e);
             }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.ImmutableMap;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Multiplies damage of every hit in configured worlds. Loaded worlds are
+ * resolved up front and compared by identity, there are only a few of them.
+ */
+public class WorldMultiplierStage implements DamageStage, Listener {
+    private final Server server;
+    private final Map<String, Float> multipliers;
+
+    private World[] worlds = new World[0];
+    private float[] worldMultipliers = new float[0];
+
+    public WorldMultiplierStage(Server server, Map<String, Float> multipliers) {
+        this.server = Objects.requireNonNull(server, "server");
+        this.multipliers = ImmutableMap.copyOf(Objects.requireNonNull(multipliers, "multipliers"));
+
+        this.resolve(null);
+    }
+
+    @Override
+    public double apply(DamageContext context, double damage) {
+        World world = context.getWorld();
+
+        World[] worlds = this.worlds;
+        for (int i = 0; i < worlds.length; i++) {
+            if (worlds[i] == world) {
+                return damage * this.worldMultipliers[i];
+            }
+        }
+
+        return damage;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        this.resolve(null);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        this.resolve(event.getWorld());
+    }
+
+    private void resolve(World unloading) {
+        List<World> worlds = new ArrayList<>();
+        List<Float> multipliers = new ArrayList<>();
+
+        for (World world : this.server.getWorlds()) {
+            Float multiplier = this.multipliers.get(world.getName());
+            if (multiplier != null && world != unloading) {
+                worlds.add(world);
+                multipliers.add(multiplier);
+            }
+        }
+
+        float[] worldMultipliers = new float[multipliers.size()];
+        for (int i = 0; i < worldMultipliers.length; i++) {
+            worldMultipliers[i] = multipliers.get(i);
+        }
+
+        this.worldMultipliers = worldMultipliers;
+        this.worlds = worlds.toArray(new World[0]);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.common.collect.ImmutableMap;
+import org.bukkit.Server;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RuleCompilerTest {
+    private AttackChargeTracker charges;
+
+    @Before
+    public void setUp() {
+        this.charges = new AttackChargeTracker(stub(Server.class), stub(BukkitScheduler.class), stub(Plugin.class),
+                new EntityStateStore(1));
+    }
+
+    @Test
+    public void notBindsTighterThanAnd() throws Throwable {
+        MethodHandle condition = this.compile("not damage > 5 and damage > 2");
+        assertTrue(test(condition, 3));
+        assertFalse(test(condition, 1));
+        assertFalse(test(condition, 6));
+    }
+
+    @Test
+    public void andBindsTighterThanOr() throws Throwable {
+        MethodHandle condition = this.compile("damage > 5 or damage > 1 and damage < 2");
+        assertTrue(test(condition, 6));
+        assertTrue(test(condition, 1.5));
+        assertFalse(test(condition, 3));
+    }
+
+    @Test
+    public void parenthesesOverridePrecedence() throws Throwable {
+        MethodHandle condition = this.compile("(damage > 5 or damage > 1) and damage < 2");
+        assertTrue(test(condition, 1.5));
+        assertFalse(test(condition, 6));
+        assertFalse(test(condition, 0.5));
+    }
+
+    @Test
+    public void notAppliesToParentheses() throws Throwable {
+        MethodHandle condition = this.compile("not (damage < 1 or damage > 5)");
+        assertTrue(test(condition, 3));
+        assertFalse(test(condition, 0.5));
+        assertFalse(test(condition, 6));
+    }
+
+    @Test
+    public void comparesInclusively() throws Throwable {
+        MethodHandle greaterOrEqual = this.compile("damage >= 5");
+        assertTrue(test(greaterOrEqual, 5));
+        assertTrue(test(greaterOrEqual, 6));
+        assertFalse(test(greaterOrEqual, 4.9));
+
+        MethodHandle lessOrEqual = this.compile("damage <= 5");
+        assertTrue(test(lessOrEqual, 5));
+        assertTrue(test(lessOrEqual, 4));
+        assertFalse(test(lessOrEqual, 5.1));
+    }
+
+    @Test
+    public void comparesExclusively() throws Throwable {
+        assertFalse(test(this.compile("damage > 5"), 5));
+        assertFalse(test(this.compile("damage < 5"), 5));
+    }
+
+    @Test
+    public void acceptsOperatorsWithoutWhitespace() throws Throwable {
+        MethodHandle condition = this.compile("damage>=2 and(damage<=3)");
+        assertTrue(test(condition, 2));
+        assertTrue(test(condition, 3));
+        assertFalse(test(condition, 3.5));
+    }
+
+    @Test
+    public void matchesAlways() throws Throwable {
+        assertTrue(test(this.compile("true"), 0));
+        assertFalse(test(this.compile("not true"), 0));
+    }
+
+    @Test
+    public void resolvesItemTags() throws InvalidConfigurationException {
+        this.compile("weapon is #swords, #axes, minecraft:trident");
+        this.compile("armor has #armor");
+        this.assertError("weapon is #unknown", "Unknown item tag: #unknown");
+    }
+
+    @Test
+    public void rejectsInvalidConditions() {
+        this.assertError("", "Empty rule condition.");
+        this.assertError("damage >", "Unexpected end of rule condition.");
+        this.assertError("damage > x", "Expected number, got x");
+        this.assertError("damage ! 5", "Unknown operator: !");
+        this.assertError("foo", "Unknown predicate: foo");
+        this.assertError("(damage > 1", "Unexpected end of rule condition.");
+        this.assertError("damage > 1 )", "Unexpected ) in: damage > 1 )");
+        this.assertError("damage > 1 damage < 2", "Unexpected damage in: damage > 1 damage < 2");
+        this.assertError("weapon has minecraft:stone", "Expected is, got has");
+        this.assertError("weapon is minecraft:no_such_item", "Invalid material: minecraft:no_such_item");
+        this.assertError("cause is falling", "Unknown damage cause: falling");
+    }
+
+    @Test
+    public void appliesActionsWhenMatched() throws Throwable {
+        MethodHandle rule = RuleCompiler.compileRule("damage > 2",
+                ImmutableMap.<String, Object>of("multiply", 2, "add", 1.5), this.charges);
+        assertEquals(7.5, (double) rule.invokeExact((DamageContext) null, 3.0), 0.0);
+        assertEquals(2.0, (double) rule.invokeExact((DamageContext) null, 2.0), 0.0);
+    }
+
+    @Test
+    public void rejectsInvalidActions() {
+        try {
+            RuleCompiler.compileRule("true", ImmutableMap.<String, Object>of("divide", 2), this.charges);
+            fail("Expected an error");
+        } catch (InvalidConfigurationException e) {
+            assertEquals("Unknown rule action: divide", e.getMessage());
+        }
+
+        try {
+            RuleCompiler.compileRule("true", ImmutableMap.<String, Object>of("multiply", "two"), this.charges);
+            fail("Expected an error");
+        } catch (InvalidConfigurationException e) {
+            assertEquals("Rule action multiply must be a number.", e.getMessage());
+        }
+    }
+
+    private MethodHandle compile(String condition) throws InvalidConfigurationException {
+        return RuleCompiler.compileCondition(condition, this.charges);
+    }
+
+    private void assertError(String condition, String message) {
+        try {
+            this.compile(condition);
+            fail("Expected an error for: " + condition);
+        } catch (InvalidConfigurationException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    // the damage predicates don't read the context
+    private static boolean test(MethodHandle condition, double damage) throws Throwable {
+        return (boolean) condition.invokeExact((DamageContext) null, damage);
+    }
+
+    private static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(RuleCompilerTest.class.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                }));
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2021 Aleksander Jagiełło <themolkapl@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package pl.craftserve.pvp;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UpdaterTest {
+    private static final String ETAG = "\"release-9.9\"";
+    private static final String RELEASE = "{\"name\": \"v9.9\", \"published_at\": \"2021-06-01T12:00:00Z\"," +
+            " \"html_url\": \"https://github.com/Craftserve/CraftservePVP/releases/tag/v9.9\", \"assets\": []}";
+    private static final String CACHED_RELEASE = "{\"name\": \"v9.9\", \"published_at\": \"2021-06-01T12:00:00\"," +
+            " \"html_url\": \"https://github.com/Craftserve/CraftservePVP/releases/tag/v9.9\"}";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> requestEtags = new CopyOnWriteArrayList<>();
+    private volatile long responseDelay;
+
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+    private IoExecutor ioExecutor;
+    private JoinMessageDispatcher.Message notification;
+    private Updater updater;
+    private File cacheDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        this.serverExecutor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/releases/latest", this::handle);
+        this.server.setExecutor(this.serverExecutor);
+        this.server.start();
+
+        this.ioExecutor = new IoExecutor("UpdaterTest");
+        this.cacheDirectory = this.folder.newFolder("cache");
+        this.notification = new JoinMessageDispatcher.Message(0L, null);
+        this.updater = this.createUpdater(Duration.ofSeconds(5));
+    }
+
+    @After
+    public void tearDown() {
+        this.updater.stop();
+        this.ioExecutor.shutdown();
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void requestsRelease() throws IOException {
+        this.updater.checkForUpdates();
+
+        assertEquals(1, this.requestEtags.size());
+        assertEquals("", this.requestEtags.get(0));
+        assertNull(this.updater.getBackoff());
+        assertNotNull("outdated version is notified", this.notification.lines);
+
+        JsonObject cache = this.readCache();
+        assertEquals(ETAG, cache.get("etag").getAsString());
+        assertEquals("v9.9", cache.getAsJsonObject("release").get("name").getAsString());
+    }
+
+    @Test
+    public void reusesNotModifiedRelease() throws IOException {
+        Instant checkedAt = Instant.now().minus(Duration.ofHours(2));
+        this.writeCache(ETAG, checkedAt);
+
+        this.updater.checkForUpdates();
+
+        assertEquals(1, this.requestEtags.size());
+        assertEquals(ETAG, this.requestEtags.get(0));
+        assertNull(this.updater.getBackoff());
+        assertNotNull(this.notification.lines);
+
+        JsonObject cache = this.readCache();
+        assertEquals(ETAG, cache.get("etag").getAsString());
+        assertTrue(Instant.parse(cache.get("checked-at").getAsString()).isAfter(checkedAt));
+        assertEquals("v9.9", cache.getAsJsonObject("release").get("name").getAsString());
+    }
+
+    @Test
+    public void backsOffAfterTimeout() throws IOException {
+        this.updater.stop();
+        this.updater = this.createUpdater(Duration.ofMillis(100));
+        this.responseDelay = 1000L;
+
+        this.updater.checkForUpdates();
+        assertEquals(1, this.requestEtags.size());
+        assertEquals(Duration.ofMinutes(1), this.updater.getBackoff());
+        assertNull(this.notification.lines);
+
+        JsonObject cache = this.readCache();
+        assertEquals(60L, cache.get("backoff").getAsLong());
+        assertFalse(cache.has("release"));
+
+        this.updater.checkForUpdates();
+        assertEquals("backoff is not over yet", 1, this.requestEtags.size());
+        assertEquals(Duration.ofMinutes(1), this.updater.getBackoff());
+    }
+
+    @Test
+    public void honorsSharedBackoff() throws IOException {
+        this.responseDelay = 1000L;
+        this.writeFailure(Instant.now(), Duration.ofMinutes(1));
+
+        this.updater.checkForUpdates();
+        assertTrue("another server has failed just now", this.requestEtags.isEmpty());
+        assertEquals(Duration.ofMinutes(1), this.updater.getBackoff());
+
+        this.updater.stop();
+        this.updater = this.createUpdater(Duration.ofMillis(100));
+        this.writeFailure(Instant.now().minus(Duration.ofMinutes(2)), Duration.ofMinutes(1));
+
+        this.updater.checkForUpdates();
+        assertEquals(1, this.requestEtags.size());
+        assertEquals(Duration.ofMinutes(2), this.updater.getBackoff());
+        assertEquals(120L, this.readCache().get("backoff").getAsLong());
+    }
+
+    @Test
+    public void restartsFromCache() throws IOException {
+        this.writeCache(ETAG, Instant.now().minus(Duration.ofMinutes(10)));
+
+        this.updater.checkForUpdates();
+
+        assertTrue("fresh cache is not requested again", this.requestEtags.isEmpty());
+        assertNull(this.updater.getBackoff());
+        assertNotNull(this.notification.lines);
+    }
+
+    private Updater createUpdater(Duration timeout) throws IOException {
+        URL endpoint = new URL("http", this.server.getAddress().getHostString(),
+                this.server.getAddress().getPort(), "/releases/latest");
+        return new Updater(createPlugin(), this.ioExecutor, this.notification, endpoint, this.cacheDirectory, timeout);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+            this.requestEtags.add(etag == null ? "" : etag);
+
+            if (this.responseDelay > 0L) {
+                try {
+                    Thread.sleep(this.responseDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            if (ETAG.equals(etag)) {
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1L);
+                return;
+            }
+
+            byte[] body = RELEASE.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void writeCache(String etag, Instant checkedAt) throws IOException {
+        this.writeCache("{\"etag\": \"" + etag.replace("\"", "\\\"") + "\", \"checked-at\": \"" + checkedAt +
+                "\", \"release\": " + CACHED_RELEASE + "}");
+    }
+
+    private void writeFailure(Instant failedAt, Duration backoff) throws IOException {
+        this.writeCache("{\"etag\": null, \"failed-at\": \"" + failedAt + "\", \"backoff\": " + backoff.getSeconds() + "}");
+    }
+
+    private void writeCache(String json) throws IOException {
+        Files.write(new File(this.cacheDirectory, Updater.CACHE_FILE).toPath(), json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private JsonObject readCache() throws IOException {
+        try (Reader reader = Files.newBufferedReader(new File(this.cacheDirectory, Updater.CACHE_FILE).toPath(),
+                StandardCharsets.UTF_8)) {
+            return new JsonParser().parse(reader).getAsJsonObject();
+        }
+    }
+
+    private static Plugin createPlugin() {
+        PluginDescriptionFile description = new PluginDescriptionFile("CraftservePVP", "1.2", PvpPlugin.class.getName());
+        return (Plugin) Proxy.newProxyInstance(UpdaterTest.class.getClassLoader(), new Class<?>[] {Plugin.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getName":
+                            return description.getName();
+                        case "getDescription":
+                            return description;
+                        case "toString":
+                            return description.getFullName();
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}